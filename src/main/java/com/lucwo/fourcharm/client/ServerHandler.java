@@ -8,16 +8,20 @@ import com.lucwo.fourcharm.controller.FourCharmController;
 import com.lucwo.fourcharm.exception.ServerConnectionException;
 import com.lucwo.fourcharm.model.Game;
 import com.lucwo.fourcharm.model.ai.GameStrategy;
+import com.lucwo.fourcharm.model.ai.RandomStrategy;
 import com.lucwo.fourcharm.model.board.BinaryBoard;
 import com.lucwo.fourcharm.model.player.ASyncPlayer;
 import com.lucwo.fourcharm.model.player.LocalAIPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
 import com.lucwo.fourcharm.model.player.Player;
+import com.lucwo.fourcharm.util.BinaryProtocol;
 import com.lucwo.fourcharm.util.ExtensionFactory;
+import com.lucwo.fourcharm.util.Threads;
 import nl.woutertimmermans.connect4.protocol.constants.ErrorCodes;
 import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidCommandError;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidMoveError;
+import nl.woutertimmermans.connect4.protocol.exceptions.InvalidParameterError;
 import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatClient;
 import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatServer;
 import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreClient;
@@ -31,6 +35,8 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -41,6 +47,10 @@ import java.util.Set;
  * Handles the connection to the server from the perspective of the client.
  * This class makes use of the Protocol classes, the Board Model classes and the
  * strategy classes to achieve its responsibilities.
+ * <p>
+ * When the server accepts the Binary extension, the moves are sent as binary frames. The
+ * server may then send the core game commands as {@link BinaryProtocol} frames, which are
+ * recognized by their first byte and mixed with the text lines.
  *
  * @author Luce Sandfort and Wouter Timmermans.
  */
@@ -49,13 +59,16 @@ public class ServerHandler implements CoreClient.Iface,
         ChatClient.Iface, LobbyClient.Iface, Runnable {
 
     private static final int GROUP_NUMBER = 23;
+    private static final String CHAT_KEYWORD = "message ";
+    private static final String LOBBY_KEYWORD = "state_change ";
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerHandler.class);
 
 // ------------------ Instance variables ----------------
 
     private String name;
-    private BufferedReader in;
+    private DataInputStream in;
     private BufferedWriter out;
+    private OutputStream binaryOut;
     private CoreServer.Client coreServerClient;
     private ChatServer.Client chatServerClient;
     private CoreClient.Processor<ServerHandler> coreProcessor;
@@ -63,10 +76,13 @@ public class ServerHandler implements CoreClient.Iface,
     private LobbyClient.Processor<ServerHandler> lobbyProcessor;
     private FourCharmController controller;
     private Map<String, ASyncPlayer> playerMap;
+    // The names of the player ids of binary frames
+    private Map<Integer, String> playerNames;
     private GameStrategy strategy;
     private Player ai;
     private Game game;
     private boolean running;
+    private boolean binaryEnabled;
     private Set<Extension> extensions;
     private Socket sock;
 
@@ -88,15 +104,15 @@ public class ServerHandler implements CoreClient.Iface,
         controller = contr;
         name = namepie;
         playerMap = new HashMap<>();
+        playerNames = new HashMap<>();
 
         try {
             InetAddress host = InetAddress.getByName(hostString);
             int port = Integer.parseInt(portString);
             sock = new Socket(host, port);
-            in = new BufferedReader(new InputStreamReader(sock.getInputStream(),
-                    StandardCharsets.UTF_8));
-            out = new BufferedWriter(
-                    new OutputStreamWriter(sock.getOutputStream(), StandardCharsets.UTF_8));
+            in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+            binaryOut = sock.getOutputStream();
+            out = new BufferedWriter(new OutputStreamWriter(binaryOut, StandardCharsets.UTF_8));
             coreProcessor = new CoreClient.Processor<>(this);
             chatProcessor = new ChatClient.Processor<>(this);
             lobbyProcessor = new LobbyClient.Processor<>(this);
@@ -162,18 +178,14 @@ public class ServerHandler implements CoreClient.Iface,
      */
     public void handleServerCommands() {
         try {
-            String input = in.readLine();
-            while (running && input != null) {
-                LOGGER.debug("Processing input {}", input);
-                boolean processed = coreProcessor.process(input);
-                if (!processed) {
-                    processed = chatProcessor.process(input);
-                }
-                if (!processed) {
-                    processed = lobbyProcessor.process(input);
+            int first = in.read();
+            while (running && first != -1) {
+                if (BinaryProtocol.isFrameType((byte) first)) {
+                    processFrame((byte) first);
+                } else {
+                    processLine(readLine(first));
                 }
-                input = in.readLine();
-
+                first = in.read();
             }
         } catch (IOException e) {
             LOGGER.trace("handleServerCommands", e);
@@ -187,6 +199,99 @@ public class ServerHandler implements CoreClient.Iface,
         }
     }
 
+    /**
+     * Reads the rest of a text line.
+     *
+     * @param first The first byte of the line, which has been read already.
+     * @return The decoded line, without the line end.
+     * @throws IOException When reading fails.
+     */
+    private String readLine(int first) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int next = first;
+        while (next != -1 && next != '\n') {
+            line.write(next);
+            next = in.read();
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void processLine(String input) throws C4Exception {
+        LOGGER.debug("Processing input {}", input);
+        // The keyword decides which processor the line belongs to
+        if (input.startsWith(CHAT_KEYWORD)) {
+            chatProcessor.process(input);
+        } else if (input.startsWith(LOBBY_KEYWORD)) {
+            lobbyProcessor.process(input);
+        } else {
+            coreProcessor.process(input);
+        }
+    }
+
+    /**
+     * Reads the rest of a binary frame and handles the command in it.
+     *
+     * @param type The type of the frame, which has been read already.
+     * @throws IOException When reading fails.
+     * @throws C4Exception When the command is not valid.
+     */
+    private void processFrame(byte type) throws IOException, C4Exception {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        ByteBuffer payload = ByteBuffer.wrap(bytes);
+        try {
+            processFrame(type, payload);
+        } catch (BufferUnderflowException e) {
+            LOGGER.trace("processFrame", e);
+            throw new InvalidCommandError("Frame of type " + type + " is too short");
+        }
+    }
+
+    private void processFrame(byte type, ByteBuffer payload) throws C4Exception {
+        int id = payload.getInt();
+        LOGGER.debug("Processing frame {} of player {}", type, id);
+        switch (type) {
+            case BinaryProtocol.PLAYER:
+                playerNames.put(id, StandardCharsets.UTF_8.decode(payload).toString());
+                break;
+            case BinaryProtocol.DONE_MOVE:
+                doneMove(playerName(id), payload.get());
+                break;
+            case BinaryProtocol.REQUEST_MOVE:
+                requestMove(playerName(id));
+                break;
+            case BinaryProtocol.GAME_END:
+                gameEnd(id == BinaryProtocol.NO_PLAYER ? null : playerName(id));
+                break;
+            case BinaryProtocol.STATE_CHANGE:
+                int ordinal = payload.get() & 0xFF;
+                if (ordinal >= LobbyState.values().length) {
+                    throw new InvalidParameterError("Lobby state " + ordinal + " is not valid");
+                }
+                LobbyState state = LobbyState.values()[ordinal];
+                stateChange(playerName(id), state);
+                if (state == LobbyState.OFFLINE) {
+                    playerNames.remove(id);
+                }
+                break;
+            default:
+                throw new InvalidCommandError("Frame of type " + type + " is not recognized");
+        }
+    }
+
+    private String playerName(int id) throws C4Exception {
+        String result = playerNames.get(id);
+        if (result == null) {
+            throw new InvalidCommandError("Player " + id + " is not known");
+        }
+        return result;
+    }
+
     /**
      * Accepts a client. If the client is accepted, his state will change to the 'ready' state.
      *
@@ -198,6 +303,7 @@ public class ServerHandler implements CoreClient.Iface,
         if (exts != null && exts.contains(ExtensionFactory.chat())) {
             chatServerClient = new ChatServer.Client(out);
         }
+        binaryEnabled = exts != null && exts.contains(ExtensionFactory.binary());
     }
 
     public void sendReady() throws C4Exception {
@@ -241,36 +347,61 @@ public class ServerHandler implements CoreClient.Iface,
     }
 
     /**
-     * Requests a move from the given player. The method starts a new Thread to do so.
+     * Requests a move from the given player. The AI searches the move on the search
+     * executor, a human is asked for the move on a new thread, which is a virtual thread
+     * when the virtual thread mode of {@link Threads} is enabled. The move is sent to the
+     * server as soon as it is known. When the search of the AI fails a random move is sent,
+     * so the game does not wait for a move which never comes.
      *
      * @param player The player that needs to do a move.
      */
     @Override
     public void requestMove(String player) {
 
-        new Thread(() -> handleRequestMove(player)).start();
+        if (name.equals(player)) {
+            if (ai != null) {
+                ai.determineMoveAsync(game.getBoard())
+                        .exceptionally(this::fallbackMove)
+                        .thenAccept(this::sendMove);
+            } else {
+                Threads.newThread(() -> sendMove(controller.getHumanPlayerMove()),
+                        "RequestMove-" + player).start();
+            }
+        }
+
+    }
 
+    /**
+     * Gives a random move for the AI when its search failed.
+     *
+     * @param e The reason the search failed.
+     * @return A random legal move.
+     */
+    private int fallbackMove(Throwable e) {
+        LOGGER.warn("Could not determine a move, doing a random move", e);
+        return new RandomStrategy().determineMove(game.getBoard(), ai.getMark());
     }
 
     /**
-     * Handles the request move method. The method will use the AI if there is one,
-     * otherwise the serverHandler will get the move from the controller.
+     * Sends a move of this client to the server. A binary move is written under the lock
+     * of the text writer after flushing it, so it is never written in the middle of a
+     * command or before a command which was written earlier.
      *
-     * @param player The player whose turn it is.
+     * @param move The column of the move.
      */
-    private void handleRequestMove(String player) {
-        if (name.equals(player)) {
-            int move;
-            if (ai != null) {
-                move = ai.determineMove(game.getBoard());
+    private void sendMove(int move) {
+        try {
+            if (binaryEnabled) {
+                synchronized (out) {
+                    out.flush();
+                    binaryOut.write(BinaryProtocol.doMove(move));
+                    binaryOut.flush();
+                }
             } else {
-                move = controller.getHumanPlayerMove();
-            }
-            try {
                 coreServerClient.doMove(move);
-            } catch (C4Exception e) {
-                LOGGER.trace("requestMove", e);
             }
+        } catch (C4Exception | IOException e) {
+            LOGGER.trace("requestMove", e);
         }
     }
 
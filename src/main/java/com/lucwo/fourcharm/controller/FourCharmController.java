@@ -14,6 +14,7 @@ import com.lucwo.fourcharm.model.player.LocalAIPlayer;
 import com.lucwo.fourcharm.model.player.LocalHumanPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
 import com.lucwo.fourcharm.model.player.Player;
+import com.lucwo.fourcharm.util.Threads;
 import com.lucwo.fourcharm.view.FourCharmGUI;
 import com.lucwo.fourcharm.view.FourCharmTUI;
 import com.lucwo.fourcharm.view.FourCharmView;
@@ -80,6 +81,11 @@ public class FourCharmController implements Observer {
         for (String arg : args) {
             server = "-s".equals(arg) || server;
         }
+        for (String arg : args) {
+            if ("-v".equals(arg)) {
+                Threads.setVirtualThreads(true);
+            }
+        }
 
         if (server) {
             FourCharmServerController con = new FourCharmServerController();
@@ -162,7 +168,8 @@ public class FourCharmController implements Observer {
     }
 
     /**
-     * Sets a game and starts the game in a new Thread.
+     * Sets a game and starts the game. The game has no thread of its own, the moves are
+     * made when the players have completed them.
      *
      * @param g The game that needs to be started.
      */
@@ -170,9 +177,7 @@ public class FourCharmController implements Observer {
         game = g;
         game.addObserver(this);
         view.showGame(game);
-        Thread gameThread = new Thread(game);
-        gameThread.setName("GameThread");
-        gameThread.start();
+        game.playAsync();
     }
 
     public void gameEnd(String player) {
@@ -247,19 +252,31 @@ public class FourCharmController implements Observer {
      */
     private void handlePlayerTurn(Player player) {
         if (player instanceof LocalHumanPlayer) {
-            view.enableHint();
-            // Keep requesting moves from the human player until a valid move has been entered.
-            int move;
-            do {
-                view.enableInput();
-                move = view.requestMove();
-            } while (move < 0 || move >= game.getBoard().getColumns() || !game.getBoard().columnHasFreeSpace(move));
-
-            ((LocalHumanPlayer) player).queueMove(move);
-            view.disableHint();
+            // The view blocks until the human has entered a move, so do not wait for it on
+            // the thread which notified the turn.
+            Threads.newThread(() -> requestHumanMove((LocalHumanPlayer) player),
+                    "HumanMove-" + player.getName()).start();
         }
     }
 
+    /**
+     * Asks the view for the move of a human player and completes the move of the player.
+     *
+     * @param player The human player whose turn it is.
+     */
+    private void requestHumanMove(LocalHumanPlayer player) {
+        view.enableHint();
+        // Keep requesting moves from the human player until a valid move has been entered.
+        int move;
+        do {
+            view.enableInput();
+            move = view.requestMove();
+        } while (move < 0 || move >= game.getBoard().getColumns() || !game.getBoard().columnHasFreeSpace(move));
+
+        view.disableHint();
+        player.queueMove(move);
+    }
+
     public boolean inLobby() {
         return serverClient != null;
     }
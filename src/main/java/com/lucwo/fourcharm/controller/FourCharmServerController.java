@@ -51,6 +51,17 @@ public class FourCharmServerController {
 
     }
 
+    /**
+     * Shows the metrics of the running server.
+     */
+    public void showStats() {
+        if (server != null) {
+            view.showMessage(server.getMetrics().toString());
+        } else {
+            view.showError("There was no server running");
+        }
+    }
+
     public void stopServer() {
         if (server != null) {
             server.stop();
@@ -12,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Observable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The Game class models a game of Connect4. This class makes use of Observable
@@ -19,6 +20,13 @@ import java.util.Observable;
  * so a new board will be made for this specific game. Using these classes and
  * interfaces, the main priority of this Game class is to create, play and end
  * a game of Connect4.
+ * <p>
+ * A game does not need a thread of its own. {@link #playAsync()} asks every player for a
+ * move with {@link Player#determineMoveAsync(Board)} and makes the move on the thread
+ * which completes it, {@link #play()} does the same but waits until the game has ended.
+ * A game which is only started with {@link #start()} waits for the moves to be handed to
+ * {@link #makeMove(Player, int)}, which applies the move and notifies the observers on
+ * the thread of the caller.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
@@ -30,8 +38,8 @@ public class Game extends Observable implements Runnable {
     private Player winner;
     private Player player1;
     private Player player2;
-    private Player current;
-    private boolean running;
+    private volatile Player current;
+    private volatile boolean running;
     private boolean moveMade;
 
     /**
@@ -73,31 +81,93 @@ public class Game extends Observable implements Runnable {
      */
     public void play() {
 
-        notifyObservers();
-        boolean fairplay = true;
+        playAsync().join();
 
-        while (running && fairplay && !hasFinished()) {
-            current = nextPlayer();
-            moveMade = true;
-            setChanged();
-            notifyObservers();
-            try {
-                current.doMove(board);
-            } catch (InvalidMoveException e) {
-                LOGGER.trace("player", e);
-                fairplay = false;
-            }
+    }
+
+    /**
+     * Starts the game and asks the players for their moves until the game has ended. Every
+     * move is made on the thread which completes the move of the player, no thread waits
+     * for the players.
+     *
+     * @return A future which is completed with the winner when the game has ended, or
+     * with null when the game ended without a winner.
+     */
+    public CompletableFuture<Player> playAsync() {
+        CompletableFuture<Player> result = new CompletableFuture<>();
+        start();
+        requestMove(result);
+        return result;
+    }
 
+    /**
+     * Asks the current player for a move. When the move is completed it is made, after
+     * which the next player is asked.
+     */
+    private void requestMove(CompletableFuture<Player> result) {
+        Player player = current;
+        if (running && !hasFinished()) {
+            player.determineMoveAsync(board.deepCopy()).whenComplete((col, error) -> {
+                    boolean fairplay = error == null;
+                    if (fairplay) {
+                        try {
+                            makeMove(player, col);
+                        } catch (InvalidMoveException e) {
+                            LOGGER.trace("player", e);
+                            fairplay = false;
+                        }
+                    } else {
+                        LOGGER.trace("player", error);
+                    }
+                    if (fairplay) {
+                        requestMove(result);
+                    } else {
+                        result.complete(winner);
+                    }
+                });
+        } else {
+            result.complete(winner);
         }
+    }
+
+    /**
+     * Starts the game without running it on a thread. The observers are notified that the
+     * first player has to move, the moves are made with {@link #makeMove(Player, int)}.
+     */
+    public synchronized void start() {
+        if (!moveMade) {
+            nextTurn();
+        }
+    }
 
-        if (hasWinner()) {
-            winner = current;
+    /**
+     * Makes a move for the player whose turn it is. When the move ends the game the winner
+     * is set, otherwise the turn passes to the other player. In both cases the observers
+     * are notified on the calling thread.
+     *
+     * @param player The player who makes the move.
+     * @param col    The column of the move.
+     * @throws InvalidMoveException When the game has ended, it is not the turn of the
+     *                              player or the move is not allowed on the board.
+     */
+    /*@
+        requires player != null;
+     */
+    public synchronized void makeMove(Player player, int col) throws InvalidMoveException {
+        if (player != current || !isValidMove(col)) {
+            throw new InvalidMoveException("Move " + col + " of " + player + " is not allowed");
+        }
+        board.makemove(col, player.getMark());
+        if (hasFinished()) {
+            if (hasWinner()) {
+                winner = current;
+            }
             setChanged();
             notifyObservers();
+            LOGGER.info("Game ended, winner: {}", winner);
+        } else {
+            nextTurn();
         }
-
-        LOGGER.info("Game ended, winner: {}", winner);
-
     }
 
     /**
@@ -112,6 +182,18 @@ public class Game extends Observable implements Runnable {
 
     }
 
+    /**
+     * Returns whether a move in the given column can be made now. A move is not possible
+     * after the game has ended or has been shut down.
+     *
+     * @param col The column of the move.
+     * @return true if the game is running and the column has free space; otherwise false
+     */
+    public synchronized boolean isValidMove(int col) {
+        return running && moveMade && !hasFinished() && col >= 0 && col < board.getColumns()
+                && board.columnHasFreeSpace(col);
+    }
+
     /**
      * Returns whether or not an player has won the game. If this method returns
      * true the player wich has won the game is the last player to make a move
@@ -158,6 +240,16 @@ public class Game extends Observable implements Runnable {
         return board.deepCopy();
     }
 
+    /**
+     * Gives the turn to the next player and notifies the observers.
+     */
+    private void nextTurn() {
+        current = nextPlayer();
+        moveMade = true;
+        setChanged();
+        notifyObservers();
+    }
+
     /**
      * Gives the next player.
      *
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+
+/**
+ * Evaluates positions of a {@link BinaryBoard} directly on the bitboards of the players.
+ * <p>
+ * The heuristic of {@link NegaMaxStrategy} gives every spot a value and sums, for every spot
+ * of the board, the values of the spots within the winning streak horizontally, vertically
+ * and on both diagonals. Every spot is therefore counted a fixed number of times, its weight,
+ * which only depends on where the spot is on the board. This class computes those weights once
+ * by walking the same windows and stores them as bit planes: plane b holds the spots whose
+ * weight has bit b set. The weighted amount of spots of a player is then a handful of popcounts
+ * and shifts, giving exactly the same value as the per spot calculation.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class BitboardEvaluator {
+
+    private final long[] planes;
+    private final int totalWeight;
+    private final int friendlyValue;
+    private final int foeValue;
+    private final int emptyValue;
+
+    /**
+     * Creates an evaluator for boards with the dimensions of the given board.
+     *
+     * @param layout        Board whose columns, rows and winning streak are used.
+     * @param friendlyValue Value of a spot occupied by the current player.
+     * @param foeValue      Value of a spot occupied by the other player.
+     * @param emptyValue    Value of an empty spot.
+     */
+    public BitboardEvaluator(Board layout, int friendlyValue, int foeValue, int emptyValue) {
+        this.friendlyValue = friendlyValue;
+        this.foeValue = foeValue;
+        this.emptyValue = emptyValue;
+
+        int cols = layout.getColumns();
+        int rows = layout.getRows();
+        int[][] weights = spotWeights(cols, rows, layout.getWinStreak());
+
+        int maxWeight = 0;
+        int total = 0;
+        for (int col = 0; col < cols; col++) {
+            for (int row = 0; row < rows; row++) {
+                maxWeight = Math.max(maxWeight, weights[col][row]);
+                total += weights[col][row];
+            }
+        }
+        totalWeight = total;
+
+        planes = new long[Integer.SIZE - Integer.numberOfLeadingZeros(maxWeight)];
+        for (int col = 0; col < cols; col++) {
+            for (int row = 0; row < rows; row++) {
+                for (int bit = 0; bit < planes.length; bit++) {
+                    if ((weights[col][row] & (1 << bit)) != 0) {
+                        planes[bit] |= 1L << BinaryBoard.bitIndex(col, row);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the heuristic value of a position from the perspective of the current
+     * player. Won positions are not recognized, the caller should check for those first.
+     *
+     * @param own   Bitboard of the current player.
+     * @param other Bitboard of the other player.
+     * @return The heuristic value of the position.
+     */
+    public int evaluate(long own, long other) {
+        return (friendlyValue - emptyValue) * weightedCount(own)
+                + (foeValue - emptyValue) * weightedCount(other)
+                + emptyValue * totalWeight;
+    }
+
+    /**
+     * Sums the weights of all spots set in the given bitboard.
+     *
+     * @param bitboard Bitboard of a player.
+     * @return The sum of the weights of the occupied spots.
+     */
+    private int weightedCount(long bitboard) {
+        int count = 0;
+        for (int bit = 0; bit < planes.length; bit++) {
+            count += Long.bitCount(bitboard & planes[bit]) << bit;
+        }
+        return count;
+    }
+
+    /**
+     * Counts for every spot how many times it is part of the horizontal, vertical and
+     * diagonal windows of the spots of the board, using the same windows as
+     * {@link NegaMaxStrategy}.
+     */
+    private static int[][] spotWeights(int cols, int rows, int streak) {
+        int[][] weights = new int[cols][rows];
+
+        for (int vCol = 0; vCol < cols; vCol++) {
+            for (int vRow = 0; vRow < rows; vRow++) {
+                // Horizontal
+                for (int col = Math.max(vCol - streak + 1, 0);
+                     col < vCol + streak && col < cols; col++) {
+                    weights[col][vRow]++;
+                }
+                // Vertical
+                for (int row = Math.max(vRow - streak + 1, 0);
+                     row < vRow + streak && row < rows; row++) {
+                    weights[vCol][row]++;
+                }
+                // Up and left
+                for (int col = vCol, row = vRow; col > vCol - streak && col >= 0
+                        && row < vRow + streak && row < rows; row++, col--) {
+                    weights[col][row]++;
+                }
+                // Down and right
+                for (int col = vCol, row = vRow; col < cols && col < vCol + streak
+                        && row >= 0 && row > vRow - streak; col++, row--) {
+                    weights[col][row]++;
+                }
+                // Down and left
+                for (int col = vCol, row = vRow; col >= 0 && col > vCol - streak
+                        && row >= 0 && row > vRow - streak; row--, col--) {
+                    weights[col][row]++;
+                }
+                // Up and right
+                for (int col = vCol, row = vRow; col < cols && col < vCol + streak
+                        && row < rows && row < vRow + streak; col++, row++) {
+                    weights[col][row]++;
+                }
+            }
+        }
+
+        return weights;
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Strategy which plays the moves of an {@link OpeningBook} as long as the position is in
+ * the book and asks another strategy for the move otherwise. The strategy counts how many
+ * of its moves in the current game came from the book. A new game is detected when the
+ * board has no more moves than the board of the previous move, at which point the hit rate
+ * of the finished game is logged and the counters start again.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class BookStrategy implements GameStrategy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookStrategy.class);
+    private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
+
+    // ------------------ Instance variables ----------------
+
+    private final OpeningBook book;
+    private final GameStrategy fallback;
+    private int lastPlies = Integer.MAX_VALUE;
+    private int lookups;
+    private int hits;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a book strategy using the given book.
+     *
+     * @param book     The opening book.
+     * @param fallback The strategy used for positions which are not in the book.
+     */
+    /*@
+     * requires book != null && fallback != null;
+     */
+    public BookStrategy(OpeningBook book, GameStrategy fallback) {
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Wraps a strategy in a book strategy using the default opening book.
+     *
+     * @param strategy The strategy to wrap, may be {@code null}.
+     * @return The wrapped strategy, or the given strategy when it is {@code null} or there
+     * is no default opening book.
+     */
+    public static GameStrategy withDefaultBook(GameStrategy strategy) {
+        OpeningBook book = OpeningBook.getDefault();
+        GameStrategy result = strategy;
+        if (strategy != null && book != null) {
+            result = new BookStrategy(book, strategy);
+        }
+        return result;
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Plays the move of the opening book, when the position is not in the book the
+     * move of the fallback strategy.
+     *
+     * @param board The current board.
+     * @param mark  The mark of the current player.
+     * @return The move to make.
+     */
+    @Override
+    public int determineMove(Board board, Mark mark) {
+        int move;
+        synchronized (this) {
+            int plies = board.getPlieCount();
+            if (plies <= lastPlies) {
+                logHitRate();
+                lookups = 0;
+                hits = 0;
+            }
+            lastPlies = plies;
+            lookups++;
+            move = book.lookup(board);
+            if (move != -1) {
+                hits++;
+            }
+        }
+        if (move == -1) {
+            move = fallback.determineMove(board, mark);
+        }
+        return move;
+    }
+
+    /**
+     * Gives the amount of moves asked in the current game.
+     *
+     * @return The amount of book lookups.
+     */
+    public synchronized int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Gives the amount of moves in the current game which were found in the book.
+     *
+     * @return The amount of book hits.
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Gives the fraction of the moves in the current game which were found in the book.
+     *
+     * @return The book hit rate, 0 when no moves were asked.
+     */
+    public synchronized double getHitRate() {
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private void logHitRate() {
+        if (lookups > 0) {
+            LOGGER.info(AI_INFO, "Opening book hits: {}/{} ({}%)", hits, lookups,
+                    hits * 100 / lookups);
+        }
+    }
+
+    /**
+     * Gives the name of the strategy.
+     *
+     * @return The name of the wrapped strategy.
+     */
+    @Override
+    public String toString() {
+        return fallback.toString();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+/**
+ * Token used to stop a search. A token is cancelled explicitly with {@link #cancel()} or
+ * when its deadline has passed. Checking whether the token is cancelled is a single
+ * volatile read. The deadline is only compared with the clock in {@link #checkDeadline()},
+ * which searches call every so many nodes, so reading the clock does not slow down
+ * every node.
+ * <p>
+ * Once cancelled a token stays cancelled. A search which sees a cancelled token returns
+ * as fast as possible and must not store any of its results, because they are incomplete.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class CancellationToken {
+
+    /**
+     * Deadline of a token which never expires.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final long deadline;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token without a deadline, which is only cancelled by {@link #cancel()}.
+     */
+    public CancellationToken() {
+        this(NO_DEADLINE);
+    }
+
+    /**
+     * Creates a token which is cancelled once the given time has passed.
+     *
+     * @param deadline The deadline in milliseconds since the epoch, as returned by
+     *                 {@link System#currentTimeMillis()}.
+     */
+    public CancellationToken(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the token.
+     */
+    //@ ensures isCancelled();
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the token has been cancelled. Does not look at the deadline.
+     *
+     * @return {@code true} if the token is cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the token when its deadline has passed.
+     *
+     * @return {@code true} if the token is cancelled.
+     */
+    public boolean checkDeadline() {
+        if (!cancelled && deadline != NO_DEADLINE && System.currentTimeMillis() >= deadline) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    /**
+     * Gives the time left until the deadline.
+     *
+     * @return The time left in milliseconds, 0 when the deadline has passed or the token
+     * is cancelled.
+     */
+    public long remaining() {
+        long remaining;
+        if (cancelled) {
+            remaining = 0;
+        } else if (deadline == NO_DEADLINE) {
+            remaining = Long.MAX_VALUE;
+        } else {
+            remaining = Math.max(0, deadline - System.currentTimeMillis());
+        }
+        return remaining;
+    }
+}
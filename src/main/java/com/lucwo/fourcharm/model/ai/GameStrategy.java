@@ -7,10 +7,15 @@ package com.lucwo.fourcharm.model.ai;
 import com.lucwo.fourcharm.model.board.Board;
 import com.lucwo.fourcharm.model.player.Mark;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The strategy used by a computer player. This class makes use of the Mark class
  * and the Board classes to achieve its responsibilities. The game strategy can
  * be used by the hint function to return the most optimal move to the human player.
+ * <p>
+ * {@link #determineMoveAsync(Board, Mark)} searches the move on the bounded
+ * {@link SearchExecutor}, so the caller does not have to wait for the search.
  *
  * @author Luce Sandfort and Wouter Timmermans.
  */
@@ -18,4 +23,17 @@ public interface GameStrategy {
 
     public int determineMove(Board board, Mark mark);
 
+    /**
+     * Determines a move without blocking the caller. The move is searched on the
+     * {@link SearchExecutor}.
+     *
+     * @param board The board to search a move for, it must not be changed until the
+     *              returned future has completed.
+     * @param mark  The mark of the player who has to move.
+     * @return A future which is completed with the move.
+     */
+    public default CompletableFuture<Integer> determineMoveAsync(Board board, Mark mark) {
+        return SearchExecutor.search(this, board, mark);
+    }
+
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parallel search strategy using Lazy SMP. Every search thread runs its own iterative
+ * deepening NegaMax search from the same root. The threads do not divide the work between
+ * them, instead they all share the transposition table of {@link NegaMaxStrategy} and
+ * profit from the entries stored by the others. To make sure the threads do not all walk
+ * the tree in the same way every thread starts at a different column and the odd threads
+ * start one ply deeper.
+ * <p>
+ * The calling thread waits until the thinking time is up or the position is solved and
+ * then returns the best move of the deepest search which was completed by any thread.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class LazySMPStrategy implements GameStrategy {
+
+    /**
+     * Default amount of search threads, one for every available processor.
+     */
+    public static final int DEF_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazySMPStrategy.class);
+    private static final Marker AI_DEBUG = MarkerFactory.getMarker("AI_DEBUG");
+    private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
+
+    private static final int DEF_DURATION = 10;
+    private static final long THREAD_KEEP_ALIVE = 60L;
+
+    // ------------------ Instance variables ----------------
+
+    private final long duration;
+    private final int threads;
+    private final ThreadPoolExecutor pool;
+    private volatile long nodeCount;
+    private volatile int achievedDepth;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a Lazy SMP strategy with the default thinking time and thread count.
+     */
+    public LazySMPStrategy() {
+        this(DEF_DURATION);
+    }
+
+    /**
+     * Constructs a Lazy SMP strategy with the given thinking time which uses the
+     * default amount of threads.
+     *
+     * @param time The thinking time in seconds.
+     */
+    public LazySMPStrategy(long time) {
+        this(time, DEF_THREADS);
+    }
+
+    /**
+     * Constructs a Lazy SMP strategy with the given thinking time and amount of threads.
+     *
+     * @param time    The thinking time in seconds.
+     * @param threads The amount of search threads.
+     */
+    /*@
+     * requires time > 0 && threads > 0;
+     */
+    public LazySMPStrategy(long time, int threads) {
+        duration = time * 1000L;
+        this.threads = threads;
+        pool = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "LazySMP");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Determines the best move within the thinking time.
+     *
+     * @param board The current board state used to determine the best move.
+     * @param mark  The mark of the current player.
+     * @return The best move found by the deepest completed search.
+     */
+    @Override
+    public int determineMove(Board board, Mark mark) {
+        return determineMove(board, mark, board.getSpotCount() - board.getPlieCount());
+    }
+
+    /**
+     * Determines the best move within the thinking time, searching no deeper than
+     * the given depth. The search stops as soon as any thread completes the given depth.
+     *
+     * @param board    The current board state used to determine the best move.
+     * @param mark     The mark of the current player.
+     * @param maxDepth The maximum search depth.
+     * @return The best move found by the deepest completed search.
+     */
+    /*@
+     * requires maxDepth >= 1;
+     */
+    public int determineMove(Board board, Mark mark, int maxDepth) {
+        long endTime = System.currentTimeMillis() + duration;
+        int depthLimit = Math.min(maxDepth, board.getSpotCount() - board.getPlieCount());
+        SearchResult best = new SearchResult();
+        CountDownLatch finished = new CountDownLatch(1);
+        NegaMaxStrategy[] searches = new NegaMaxStrategy[threads];
+
+        for (int i = 0; i < threads; i++) {
+            searches[i] = new NegaMaxStrategy(depthLimit, i);
+        }
+        searches[0].newSearch();
+        for (int i = 0; i < threads; i++) {
+            NegaMaxStrategy search = searches[i];
+            Board copy = board.deepCopy();
+            int firstDepth = 1 + i % 2;
+            pool.execute(() -> iterate(search, copy, mark, firstDepth, depthLimit,
+                    best, finished));
+        }
+
+        try {
+            finished.await(Math.max(0, endTime - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            LOGGER.trace("determineMove", e);
+            Thread.currentThread().interrupt();
+        }
+
+        long nodes = 0;
+        for (NegaMaxStrategy search : searches) {
+            search.abort();
+            nodes += search.getCounter();
+        }
+        nodeCount = nodes;
+
+        int bestMove;
+        synchronized (best) {
+            bestMove = best.move;
+            achievedDepth = best.depth;
+            LOGGER.debug(AI_DEBUG, "Evaluated nodes: {}", nodes);
+            LOGGER.debug(AI_DEBUG, "Search achieved a depth of {}", best.depth);
+            LOGGER.debug(AI_DEBUG, "Best move value {}", best.value);
+        }
+        if (bestMove == -1) {
+            bestMove = new RandomStrategy().determineMove(board, mark);
+        }
+        LOGGER.debug(AI_INFO, "Best move {}", bestMove);
+
+        return bestMove;
+    }
+
+    /**
+     * Runs the iterative deepening search of one thread. After every completed depth the
+     * result is reported, the next depth is one deeper than the deepest completed search
+     * of all threads.
+     *
+     * @param search     The NegaMax search of this thread.
+     * @param board      The board of this thread.
+     * @param mark       The mark of the current player.
+     * @param firstDepth The first depth to search.
+     * @param depthLimit The maximum depth to search.
+     * @param best       The best result of all threads.
+     * @param finished   Latch which is released when the position is solved.
+     */
+    private void iterate(NegaMaxStrategy search, Board board, Mark mark, int firstDepth,
+                         int depthLimit, SearchResult best, CountDownLatch finished) {
+        int depth = firstDepth;
+        while (depth <= depthLimit && !search.isAborted()) {
+            NegaMaxStrategy.Result result = search.negaMax(board, mark,
+                    -NegaMaxStrategy.INFINITY, NegaMaxStrategy.INFINITY, depth);
+            if (!search.isAborted()) {
+                best.update(depth, result);
+                if (depth == depthLimit || NegaMaxStrategy.isWin(result.value)
+                        || NegaMaxStrategy.isWin(-result.value)) {
+                    finished.countDown();
+                }
+            }
+            depth = Math.max(depth, best.getDepth()) + 1;
+        }
+    }
+
+    /**
+     * Returns the amount of nodes evaluated by all threads during the last search.
+     *
+     * @return The amount of evaluated nodes.
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the deepest depth completed during the last search.
+     *
+     * @return The achieved depth.
+     */
+    public int getAchievedDepth() {
+        return achievedDepth;
+    }
+
+    /**
+     * The name of the strategy.
+     *
+     * @return The name of the strategy.
+     */
+    @Override
+    public String toString() {
+        return "LazySMPStrategy";
+    }
+
+    /**
+     * The best result completed by the search threads.
+     */
+    private static class SearchResult {
+        private int depth;
+        private int move = -1;
+        private int value;
+
+        /**
+         * Replaces the result when the given result was searched deeper.
+         *
+         * @param resultDepth The depth of the completed search.
+         * @param result      The result of the completed search.
+         */
+        synchronized void update(int resultDepth, NegaMaxStrategy.Result result) {
+            if (resultDepth > depth && result.column != -1) {
+                depth = resultDepth;
+                move = result.column;
+                value = result.value;
+            }
+        }
+
+        synchronized int getDepth() {
+            return depth;
+        }
+    }
+}
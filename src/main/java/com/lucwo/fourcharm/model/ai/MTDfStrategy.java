@@ -12,9 +12,12 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This MTDfStrategy class makes use of the interface GameStrategy. This
@@ -33,7 +36,7 @@ public class MTDfStrategy implements GameStrategy {
     private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
 
     private static final int DEF_DURATION = 10;
-    private static final double FIRST_GUESS = 17880;
+    private static final int FIRST_GUESS = 17880;
     private static final int[] COLS = new int[]{3, 4, 2, 5, 1, 6, 0};
     private static final int DEPTH_STEP = 2;
     private static final int TIMEOUT = 10;
@@ -41,10 +44,10 @@ public class MTDfStrategy implements GameStrategy {
     private static final ExecutorService POOL = Executors.newFixedThreadPool(6);
 
     // ------------------ Instance variables ----------------
-    private long endTime;
-    private Double prevValue;
+    private int prevValue;
     //private final NegaMaxStrategy nega;
     private final long duration;
+    private final ExecutorService pool;
 
     // --------------------- Constructors -------------------
 
@@ -56,9 +59,21 @@ public class MTDfStrategy implements GameStrategy {
     }
 
     public MTDfStrategy(long time) {
+        this(time, POOL);
+    }
+
+    /**
+     * Constructs the MTDf strategy which runs its searches on the given pool instead of the
+     * pool shared by all MTDf strategies.
+     *
+     * @param time The thinking time in seconds.
+     * @param pool The pool which runs the searches.
+     */
+    MTDfStrategy(long time, ExecutorService pool) {
         System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "2");
         duration = time * 1000L;
         prevValue = FIRST_GUESS;
+        this.pool = pool;
     }
 
 
@@ -75,62 +90,92 @@ public class MTDfStrategy implements GameStrategy {
     @Override
     public int determineMove(Board board, Mark mark) {
         LOGGER.debug("Starting negamax with timeout {}", duration);
-        NegaMaxStrategy strategy = new NegaMaxStrategy();
-        endTime = System.currentTimeMillis() + duration;
+        return determineMove(board, mark,
+                new CancellationToken(System.currentTimeMillis() + duration));
+    }
+
+    /**
+     * Determines the next move, searching until the token is cancelled or the board has been
+     * searched completely. The token is cancelled and the searches which are still running
+     * have stopped when the move is returned.
+     *
+     * @param board        The current board state used to determine the best move.
+     * @param mark         The mark of the current player.
+     * @param cancellation The token which stops the search.
+     * @return The best move found.
+     */
+    /*@
+        requires board != null && mark != null && cancellation != null;
+        ensures cancellation.isCancelled();
+     */
+    int determineMove(Board board, Mark mark, CancellationToken cancellation) {
+        NegaMaxStrategy strategy = new NegaMaxStrategy(NegaMaxStrategy.DEF_DEPTH, 0,
+                cancellation);
         int freeSpots = board.getSpotCount() - board.getPlieCount();
-        double bestValue = Double.NEGATIVE_INFINITY;
+        int bestValue = -NegaMaxStrategy.INFINITY;
         int bestMove = -1;
         int achievedDepth = 0;
+        Map<Integer, Future<Integer>> valueFutures;
+        List<SearchTask> tasks = new ArrayList<>();
 
-        for (int depth = DEPTH_STEP - 1; System.currentTimeMillis() < endTime;
-             depth += DEPTH_STEP) {
+        for (int depth = DEPTH_STEP - 1; achievedDepth < freeSpots
+                && !cancellation.checkDeadline(); depth += DEPTH_STEP) {
             int bestMoveCurrentIteration = -1;
-            double bestValueCurrentIteration = Double.NEGATIVE_INFINITY;
+            int bestValueCurrentIteration = -NegaMaxStrategy.INFINITY;
             final int mtDepth = depth - 1;
 
-            Map<Integer, Future<Double>> valueFutures = new TreeMap<>();
-
+            valueFutures = new TreeMap<>();
 
             for (int col : COLS) {
                 if (board.columnHasFreeSpace(col)) {
                     try {
                         Board cBoard = board.deepCopy();
                         cBoard.makemove(col, mark);
-                        Future<Double> valFut = POOL
-                                .submit(() -> -mtdf(strategy, cBoard, mark.other(), mtDepth));
+                        SearchTask valFut = new SearchTask(() ->
+                                -mtdf(strategy, cBoard, mark.other(), mtDepth, cancellation));
+                        pool.execute(valFut);
                         valueFutures.put(col, valFut);
+                        tasks.add(valFut);
                     } catch (InvalidMoveException e) {
                         LOGGER.trace("determineMove", e);
                     }
                 }
             }
             try {
-                for (Map.Entry<Integer, Future<Double>> valFut : valueFutures.entrySet()) {
-                    long waitTime = endTime - System.currentTimeMillis();
+                for (Map.Entry<Integer, Future<Integer>> valFut : valueFutures.entrySet()) {
+                    long waitTime = cancellation.remaining();
                     if (waitTime <= 0) {
                         throw new TimeoutException("Time's up");
                     }
-                    double value = valFut.getValue().get(waitTime, TimeUnit.MILLISECONDS);
+                    int value = valFut.getValue().get(waitTime, TimeUnit.MILLISECONDS);
                     if (value > bestValueCurrentIteration) {
                         bestMoveCurrentIteration = valFut.getKey();
                         bestValueCurrentIteration = value;
                     }
                     LOGGER.debug(AI_DEBUG, "Depth: {} Col: {} Value: {}",
-                            achievedDepth, valFut.getKey(), value);
+                            depth, valFut.getKey(), value);
                 }
-                bestMove = bestMoveCurrentIteration;
-                bestValue = bestValueCurrentIteration;
-                achievedDepth = depth;
-                if(bestValue == Double.POSITIVE_INFINITY){
-                    // We found a winning move, no sense in looking further
-                    break;
+                // Values of an iteration which was cancelled halfway are incomplete
+                if (!cancellation.isCancelled()) {
+                    bestMove = bestMoveCurrentIteration;
+                    bestValue = bestValueCurrentIteration;
+                    achievedDepth = depth;
+                    if (NegaMaxStrategy.isWin(bestValue)) {
+                        // We found a winning move, no sense in looking further
+                        break;
+                    }
                 }
-
-            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            } catch (InterruptedException e) {
+                LOGGER.trace("determineMove", e);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
                 LOGGER.trace("determineMove", e);
             }
 
         }
+        stopSearch(cancellation, tasks);
+
         if (bestMove == -1) {
             bestMove = new RandomStrategy().determineMove(board, mark);
         } else {
@@ -140,30 +185,62 @@ public class MTDfStrategy implements GameStrategy {
         LOGGER.debug(AI_DEBUG, "Search achieved a depth of {}", achievedDepth);
         LOGGER.debug(AI_INFO, "Best move {}", bestMove);
         LOGGER.debug(AI_DEBUG, "Best move value {}", bestValue);
-        strategy.abort();
         return bestMove;
     }
 
+    /**
+     * Stops the searches which are still running and waits until they have returned, so no
+     * search of this move keeps a thread of the pool busy. Tasks which did not start yet
+     * never start searching, running searches see the cancelled token within
+     * {@link NegaMaxStrategy#DEADLINE_CHECK_NODES} nodes and return without storing
+     * anything in the transposition table.
+     *
+     * @param cancellation The token of the search.
+     * @param tasks        The tasks of every iteration.
+     */
+    private void stopSearch(CancellationToken cancellation, List<SearchTask> tasks) {
+        cancellation.cancel();
+        boolean interrupted = false;
+        for (SearchTask task : tasks) {
+            if (!task.skip()) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    LOGGER.trace("stopSearch", e);
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    LOGGER.trace("stopSearch", e);
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 
     /**
      * The method gives the NegaMax value in less steps than the NegaMax algorithm
      * by using a zero width alpha beta window.
      *
-     * @param board The board that is used by the game.
-     * @param mark  The mark of the current player.
-     * @param depth The maximum search depth of the algorithm.
-     * @return The NegaMax value of the current board.
+     * @param board        The board that is used by the game.
+     * @param mark         The mark of the current player.
+     * @param depth        The maximum search depth of the algorithm.
+     * @param cancellation The token which stops the search.
+     * @return The NegaMax value of the current board, incomplete when the token was
+     * cancelled.
      */
-    private double mtdf(NegaMaxStrategy strategy, Board board, Mark mark, int depth) {
-        double guess = prevValue;
+    private int mtdf(NegaMaxStrategy strategy, Board board, Mark mark, int depth,
+                     CancellationToken cancellation) {
+        int guess = prevValue;
 
         //@ invariant upperBound > lowerBound;
-        double upperBound = Double.POSITIVE_INFINITY;
+        int upperBound = NegaMaxStrategy.INFINITY;
         //@ invariant lowerBound < upperBound;
-        double lowerBound = Double.NEGATIVE_INFINITY;
+        int lowerBound = -NegaMaxStrategy.INFINITY;
 
-        while (lowerBound < upperBound && System.currentTimeMillis() < endTime + 100L) {
-            double beta;
+        while (lowerBound < upperBound && !cancellation.isCancelled()) {
+            int beta;
 
             if (guess == lowerBound) {
                 beta = guess + 1;
@@ -185,6 +262,39 @@ public class MTDfStrategy implements GameStrategy {
         return guess;
     }
 
+    /**
+     * Search of a single column which can be skipped as long as it did not start.
+     */
+    private static final class SearchTask extends FutureTask<Integer> {
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        SearchTask(Callable<Integer> search) {
+            super(search);
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                super.run();
+            }
+        }
+
+        /**
+         * Makes sure the search never starts.
+         *
+         * @return Whether the search did not start yet, when false the search is running or
+         * has finished.
+         */
+        boolean skip() {
+            boolean skipped = started.compareAndSet(false, true);
+            if (skipped) {
+                cancel(false);
+            }
+            return skipped;
+        }
+    }
+
     /**
      * The name of the strategy.
      *
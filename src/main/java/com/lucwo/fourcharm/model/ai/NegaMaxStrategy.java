@@ -5,6 +5,8 @@
 package com.lucwo.fourcharm.model.ai;
 
 import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.ai.TranspositionTable.Flag;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
 import com.lucwo.fourcharm.model.board.Board;
 import com.lucwo.fourcharm.model.player.Mark;
 import org.slf4j.Logger;
@@ -12,10 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -24,6 +23,12 @@ import java.util.concurrent.atomic.AtomicLong;
  * the computer player able to win games by foreseeing moves. The algorithm used by the
  * NegaMaxStrategy class is the NegaMax algorithm. This implementation makes use of Alpha-Beta
  * pruning and a transposition table to optimize performance.
+ * <p>
+ * Alpha-Beta pruning works best when the best move is searched first, so the moves of every
+ * node are ordered before they are searched: the move stored in the transposition table
+ * first, then moves which win immediately, moves which block an immediate win of the
+ * opponent, the killer moves of the ply and finally the moves by their history score. Moves
+ * which are equal in all of this are searched center first.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
@@ -33,19 +38,58 @@ public class NegaMaxStrategy implements GameStrategy {
      * Default search depth for the NegaMax algorithm.
      */
     public static final int DEF_DEPTH = 10;
+    /**
+     * Score of a position in which the current player has won. A win found deeper in the
+     * search scores one less for every ply it is away from the root, so faster wins are
+     * preferred over slower ones and slower losses over faster ones.
+     */
+    public static final int WIN_SCORE = 1_000_000_000;
+    /**
+     * Score bound which is larger than any score returned by the search.
+     */
+    public static final int INFINITY = WIN_SCORE + 1;
+    /**
+     * Amount of nodes a search visits between two checks of the deadline of its
+     * cancellation token.
+     */
+    public static final int DEADLINE_CHECK_NODES = 1 << 10;
+    /**
+     * Scores within this distance of {@link #WIN_SCORE} are wins at a known distance.
+     */
+    private static final int MAX_WIN_DISTANCE = 1_000;
+    /**
+     * Columns from the center to the sides, the order in which equal moves are searched.
+     */
+    static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    private static final int TT_MOVE_ORDER = Integer.MAX_VALUE;
+    private static final int WIN_MOVE_ORDER = TT_MOVE_ORDER - 1;
+    private static final int BLOCK_MOVE_ORDER = TT_MOVE_ORDER - 2;
+    private static final int KILLER_MOVE_ORDER = TT_MOVE_ORDER - 3;
+    private static final int KILLER_MOVES = 2;
+    /**
+     * History scores are halved when one of them grows beyond this limit, so they stay
+     * below the order of the killer moves and recent cutoffs weigh more than old ones.
+     */
+    private static final int HISTORY_LIMIT = 1 << 24;
     private static final Logger LOGGER = LoggerFactory.getLogger(MTDfStrategy.class);
     private static final Marker AI_DEBUG = MarkerFactory.getMarker("AI_DEBUG");
     private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
     private static final int FOE_POS_VALUE = -1000;
     private static final int FRIENDLY_POS_VALUE = 1000;
     private static final int EMPTY_POS_VALUE = 10;
-    private static final int POS_TABLE_SIZE = 20_000_000;
-    private static final Map<Long, TransPosEntry> TRANS_POS_TABLE = new ConcurrentSkipListMap<>();
+    private static final double TRANS_POS_HEAP_FRACTION = 0.125;
+    private static final TranspositionTable TRANS_POS_TABLE =
+            TranspositionTable.forHeapBudget(TRANS_POS_HEAP_FRACTION);
+    private static final BitboardEvaluator EVALUATOR = new BitboardEvaluator(new BinaryBoard(),
+            FRIENDLY_POS_VALUE, FOE_POS_VALUE, EMPTY_POS_VALUE);
 
     private final AtomicLong nodeCounter = new AtomicLong();
+    private final ThreadLocal<SearchStack> stacks = new ThreadLocal<>();
+    private volatile int generation;
 
     private final int searchDept;
-    private final CountDownLatch no_abort_received;
+    private final int columnOffset;
+    private final CancellationToken cancellation;
 
     /**
      * Constructs a new NegaMaxStrategy. Uses the default search depth.
@@ -63,8 +107,40 @@ public class NegaMaxStrategy implements GameStrategy {
      * requires depth >= 1;
      */
     public NegaMaxStrategy(int depth) {
+        this(depth, 0);
+    }
+
+    /**
+     * Constructs a new NegaMaxStrategy with the given depth which breaks ties in the move
+     * order starting at a different column. Searches sharing the transposition table can
+     * use different offsets so they walk the tree in a different order.
+     *
+     * @param depth        The depth the NegaMaxStrategy will use.
+     * @param columnOffset The amount of places the center first column order is rotated.
+     */
+    /*@
+     * requires depth >= 1 && columnOffset >= 0;
+     */
+    public NegaMaxStrategy(int depth, int columnOffset) {
+        this(depth, columnOffset, new CancellationToken());
+    }
+
+    /**
+     * Constructs a new NegaMaxStrategy with the given depth which stops searching when
+     * the given token is cancelled. The deadline of the token is checked every
+     * {@link #DEADLINE_CHECK_NODES} nodes.
+     *
+     * @param depth        The depth the NegaMaxStrategy will use.
+     * @param columnOffset The amount of places the center first column order is rotated.
+     * @param cancellation Token which stops the search.
+     */
+    /*@
+     * requires depth >= 1 && columnOffset >= 0 && cancellation != null;
+     */
+    public NegaMaxStrategy(int depth, int columnOffset, CancellationToken cancellation) {
         searchDept = depth;
-        no_abort_received = new CountDownLatch(1);
+        this.columnOffset = columnOffset;
+        this.cancellation = cancellation;
     }
 
     /**
@@ -90,11 +166,11 @@ public class NegaMaxStrategy implements GameStrategy {
      */
     public int determineMove(Board board, Mark mark, int depth) {
         resetCounter();
+        newSearch();
         // Best and worst move are not know yet so use -infinity for alpha and infinity for beta
-        Result result = negaMax(board, mark, Double.NEGATIVE_INFINITY,
-                Double.POSITIVE_INFINITY, depth);
+        Result result = negaMax(board, mark, -INFINITY, INFINITY, depth);
         int bestMove = result.column;
-        Double bestValue = result.value;
+        int bestValue = result.value;
         LOGGER.debug(AI_DEBUG, "Calculated nodes: {}", nodeCounter.get());
         LOGGER.debug(AI_INFO, "Best move: {} Value: {}", bestMove, bestValue);
         if (bestMove == -1) {
@@ -106,13 +182,15 @@ public class NegaMaxStrategy implements GameStrategy {
     }
 
     public Result startNegaMax(Board board, Mark mark,
-                               double alphaOrig, double betaOrig, int depth) {
+                               int alphaOrig, int betaOrig, int depth) {
         return negaMax(board, mark, alphaOrig, betaOrig, depth);
     }
 
     /**
      * Finds the best move on a {@link com.lucwo.fourcharm.model.board.Board}
-     * for a given {@link com.lucwo.fourcharm.model.player.Mark}.
+     * for a given {@link com.lucwo.fourcharm.model.player.Mark}. The search is performed
+     * on the given board itself, every move made during the search is taken back before
+     * this method returns.
      *
      * @param board     Board on which the NegaMax search will be performed.
      * @param mark      The mark of the current player.
@@ -121,90 +199,231 @@ public class NegaMaxStrategy implements GameStrategy {
      * @param depth     Depth at which will be searched for the best move
      * @return The negamax value of the current board state and the best move
      */
-    public Result negaMax(Board board, Mark mark, double alphaOrig, double betaOrig, int depth) {
-        double alpha = alphaOrig;
-        double beta = betaOrig;
+    public Result negaMax(Board board, Mark mark, int alphaOrig, int betaOrig, int depth) {
+        int maxPly = Math.min(depth, board.getSpotCount() - board.getPlieCount());
+        SearchStack stack = searchStack(maxPly);
+        int value = negaMax(board, mark, alphaOrig, betaOrig, depth, 0, stack);
+        return new Result(stack.bestMove[0], value);
+    }
+
+    /**
+     * Searches a node which lies the given amount of plies below the root of a larger
+     * search, so wins and losses are scored relative to that root. Used by searches which
+     * split the tree themselves and only hand the lower part of it to this strategy.
+     *
+     * @param board Board on which the NegaMax search will be performed.
+     * @param mark  The mark of the current player.
+     * @param alpha The value of the worst move that has been found for the maximizing player.
+     * @param beta  The value of the best move that has been found for the minimizing player.
+     * @param depth Depth at which will be searched.
+     * @param ply   Distance of the board node to the root of the larger search.
+     * @return The negamax value of the current board state.
+     */
+    /*@
+     * requires depth >= 0 && ply >= 0;
+     */
+    int negaMax(Board board, Mark mark, int alpha, int beta, int depth, int ply) {
+        int maxPly = ply + Math.min(depth, board.getSpotCount() - board.getPlieCount());
+        return negaMax(board, mark, alpha, beta, depth, ply, searchStack(maxPly));
+    }
+
+    /**
+     * Gives the search stack of the current thread, so the killer moves and history scores
+     * found by earlier calls of this thread are used again. The stack is replaced by a
+     * larger one when it can not hold the given amount of plies and is aged when
+     * {@link #newSearch()} was called since the thread last used it.
+     *
+     * @param maxPly The largest ply the search will reach.
+     * @return The search stack of the current thread.
+     */
+    private SearchStack searchStack(int maxPly) {
+        SearchStack stack = stacks.get();
+        int current = generation;
+        if (stack == null || stack.bestMove.length <= maxPly) {
+            stack = new SearchStack(maxPly, stack);
+            stacks.set(stack);
+        }
+        if (stack.generation != current) {
+            stack.age();
+            stack.generation = current;
+        }
+        return stack;
+    }
+
+    /**
+     * Recursive part of the NegaMax search. The best move found for a node is stored
+     * in the search stack at the ply of that node.
+     *
+     * @param board     Board on which the NegaMax search will be performed.
+     * @param mark      The mark of the current player.
+     * @param alphaOrig The value of the worst move that has been found for the maximizing player.
+     * @param betaOrig  The value of the best move that has been found for the minimizing player.
+     * @param depth     Depth at which will be searched for the best move.
+     * @param ply       Distance of this node to the root of the search.
+     * @param stack     Buffers of the current search.
+     * @return The negamax value of the current board state.
+     */
+    private int negaMax(Board board, Mark mark, int alphaOrig, int betaOrig,
+                        int depth, int ply, SearchStack stack) {
+        int alpha = alphaOrig;
+        int beta = betaOrig;
         long posKey = board.positionCode();
-        Result result = null;
+        int value = 0;
         boolean foundValue = false;
 
+        stack.bestMove[ply] = -1;
+        if ((++stack.nodes & (DEADLINE_CHECK_NODES - 1)) == 0) {
+            cancellation.checkDeadline();
+        }
 
         // Perform a transposition table lookup
-        TransPosEntry ttEntry = TRANS_POS_TABLE.get(posKey % POS_TABLE_SIZE);
-        if (ttEntry != null && ttEntry.key == posKey && ttEntry.depth >= depth) {
-
-            if (ttEntry.flag == Flag.EXACT) {
-                result = new Result(ttEntry.move, ttEntry.value);
+        long ttEntry = TRANS_POS_TABLE.probe(posKey);
+        int ttMove = ttEntry == 0 ? -1 : TranspositionTable.move(ttEntry);
+        if (ttEntry != 0 && TranspositionTable.depth(ttEntry) >= depth) {
+            Flag flag = TranspositionTable.flag(ttEntry);
+            int ttValue = fromTableScore(TranspositionTable.score(ttEntry), ply);
+
+            if (flag == Flag.EXACT) {
+                value = ttValue;
                 foundValue = true;
-            } else if (ttEntry.flag == Flag.LOWER_BOUND) {
-                alpha = Math.max(alpha, ttEntry.value);
-            } else if (ttEntry.flag == Flag.UPPER_BOUND) {
-                beta = Math.min(beta, ttEntry.value);
+            } else if (flag == Flag.LOWER_BOUND) {
+                alpha = Math.max(alpha, ttValue);
+            } else if (flag == Flag.UPPER_BOUND) {
+                beta = Math.min(beta, ttValue);
             }
             if (alpha >= beta) {
-                result = new Result(ttEntry.move, ttEntry.value);
+                value = ttValue;
                 foundValue = true;
             }
+            if (foundValue) {
+                stack.bestMove[ply] = ttMove;
+            }
 
         }
 
         // Helaas! The exact node value was not found. Continue searching.
         if (!foundValue) {
-            if (depth == 0 || board.isFull() || board.hasWon(mark.other())) {
-                result = new Result(-1, nodeValue(board, mark));
+            if (board.hasWon(mark.other())) {
+                // The previous move won the game
+                value = -(WIN_SCORE - ply);
+            } else if (depth == 0 || board.isFull()) {
+                value = nodeValue(board, mark);
             } else {
 
-                result = getNegaResult(board, mark, depth, alpha, beta);
+                value = getNegaValue(board, mark, depth, alpha, beta, ply, ttMove, stack);
 
-                if (no_abort_received.getCount() > 0) {
-                    saveToTransPostTable(alphaOrig, depth, beta, posKey, result);
+                // An aborted search may have skipped moves, never store its value
+                if (!cancellation.isCancelled()) {
+                    saveToTransPostTable(alphaOrig, depth, beta, posKey,
+                            stack.bestMove[ply], value, ply);
                 }
             }
         }
-        return result;
+        return value;
 
     }
 
     /**
-     * Performs the actual NegaMax search.
+     * Performs the actual NegaMax search. Every child node is searched by making the move
+     * on the board and taking it back afterwards. The moves are searched in the order
+     * given by {@link #orderMoves(Board, Mark, int, int, SearchStack)}, a move which causes
+     * a cutoff becomes a killer move of the ply and gets a higher history score.
      *
-     * @param board The current board.
-     * @param mark  The mark of the current player.
-     * @param depth The maximum searching depth.
-     * @param alpha The value of the worst move that has been found for the maximizing player.
-     * @param beta  The value of the best move that has been found for the minimizing player.
-     * @return The best move and its value. This value will be the highest value.
+     * @param board  The current board.
+     * @param mark   The mark of the current player.
+     * @param depth  The maximum searching depth.
+     * @param alpha  The value of the worst move that has been found for the maximizing player.
+     * @param beta   The value of the best move that has been found for the minimizing player.
+     * @param ply    Distance of this node to the root of the search.
+     * @param ttMove The best move stored in the transposition table, -1 if there is none.
+     * @param stack  Buffers of the current search, the best move is stored at this ply.
+     * @return The value of the best move. This value will be the highest value.
      */
 
-    private Result getNegaResult(Board board, Mark mark, int depth, double alpha, double beta) {
-        double newAlpha = alpha;
-        Result result;
-        double bestValue = Double.NEGATIVE_INFINITY;
+    private int getNegaValue(Board board, Mark mark, int depth, int alpha, int beta,
+                             int ply, int ttMove, SearchStack stack) {
+        int newAlpha = alpha;
+        int bestValue = -INFINITY;
         int bestMove = -1;
-        int columns = board.getColumns();
+        int moveCount = orderMoves(board, mark, ply, ttMove, stack);
+        int[] moves = stack.moves[ply];
 
         boolean searching = true;
-        for (int col = 0; searching && no_abort_received.getCount() > 0 && col < columns; col++) {
+        for (int i = 0; searching && !cancellation.isCancelled() && i < moveCount; i++) {
+            int col = moves[i];
+            try {
+                board.makemove(col, mark);
+                int val = -negaMax(board, mark.other(),
+                        -beta, -newAlpha, depth - 1, ply + 1, stack);
+                board.unmakemove();
+                if (val > bestValue) {
+                    bestValue = val;
+                    newAlpha = val;
+                    bestMove = col;
+                }
+                searching = newAlpha < beta;
+
+            } catch (InvalidMoveException e) {
+                LOGGER.trace("getNegaValue", e);
+            }
+        }
+        if (!searching && !cancellation.isCancelled()) {
+            stack.addCutoff(mark, ply, depth, bestMove);
+        }
+        stack.bestMove[ply] = bestMove;
+        return bestValue;
+    }
+
+    /**
+     * Orders the legal moves of a node, the move most likely to be the best is searched
+     * first. The moves are stored in the move buffer of the ply.
+     *
+     * @param board  The current board.
+     * @param mark   The mark of the current player.
+     * @param ply    Distance of this node to the root of the search.
+     * @param ttMove The best move stored in the transposition table, -1 if there is none.
+     * @param stack  Buffers of the current search.
+     * @return The amount of legal moves.
+     */
+    private int orderMoves(Board board, Mark mark, int ply, int ttMove, SearchStack stack) {
+        int[] moves = stack.moves[ply];
+        int[] order = stack.moveOrder[ply];
+        int[] killers = stack.killers[ply];
+        int[] history = stack.history[mark.ordinal()];
+        int columns = COLUMN_ORDER.length;
+        int count = 0;
+
+        for (int i = 0; i < columns; i++) {
+            int col = COLUMN_ORDER[(i + columnOffset) % columns];
             if (board.columnHasFreeSpace(col)) {
-                try {
-                    Board childBoard = board.deepCopy();
-                    childBoard.makemove(col, mark);
-                    double val = -negaMax(childBoard, mark.other(),
-                            -beta, -newAlpha, depth - 1).value;
-                    if (val > bestValue) {
-                        bestValue = val;
-                        newAlpha = val;
-                        bestMove = col;
-                    }
-                    searching = newAlpha < beta;
-
-                } catch (InvalidMoveException e) {
-                    LOGGER.trace("getNegaResult", e);
+                int moveOrder;
+                if (col == ttMove) {
+                    moveOrder = TT_MOVE_ORDER;
+                } else if (board.isWinningMove(col, mark)) {
+                    moveOrder = WIN_MOVE_ORDER;
+                } else if (board.isWinningMove(col, mark.other())) {
+                    moveOrder = BLOCK_MOVE_ORDER;
+                } else if (col == killers[0]) {
+                    moveOrder = KILLER_MOVE_ORDER;
+                } else if (col == killers[1]) {
+                    moveOrder = KILLER_MOVE_ORDER - 1;
+                } else {
+                    moveOrder = history[col];
+                }
+
+                // Insertion sort, moves with the same order keep the center first order
+                int pos = count;
+                while (pos > 0 && order[pos - 1] < moveOrder) {
+                    moves[pos] = moves[pos - 1];
+                    order[pos] = order[pos - 1];
+                    pos--;
                 }
+                moves[pos] = col;
+                order[pos] = moveOrder;
+                count++;
             }
         }
-        result = new Result(bestMove, bestValue);
-        return result;
+        return count;
     }
 
     /**
@@ -214,40 +433,113 @@ public class NegaMaxStrategy implements GameStrategy {
      * @param depth     the depth at which the value was found.
      * @param beta      the beta value when the value was found.
      * @param posKey    the "hashcode" of the board node.
-     * @param result    the found Result containing the NegaMax value.
-     */
-    private void saveToTransPostTable(double alphaOrig, int depth, double beta,
-                                      long posKey, Result result) {
-        TransPosEntry ttEntry;
-        ttEntry = new TransPosEntry();
-        ttEntry.value = result.value;
-        ttEntry.move = result.column;
-        if (result.value <= alphaOrig) {
-            ttEntry.flag = Flag.UPPER_BOUND;
-        } else if (result.value >= beta) {
-            ttEntry.flag = Flag.LOWER_BOUND;
+     * @param move      the best move found for the board node.
+     * @param value     the found NegaMax value.
+     * @param ply       the distance of the board node to the root of the search.
+     */
+    private void saveToTransPostTable(int alphaOrig, int depth, int beta,
+                                      long posKey, int move, int value, int ply) {
+        Flag flag;
+        if (value <= alphaOrig) {
+            flag = Flag.UPPER_BOUND;
+        } else if (value >= beta) {
+            flag = Flag.LOWER_BOUND;
         } else {
-            ttEntry.flag = Flag.EXACT;
+            flag = Flag.EXACT;
+        }
+        TRANS_POS_TABLE.store(posKey, flag, depth, toTableScore(value, ply), move);
+    }
+
+    /**
+     * Converts a score to be stored in the transposition table. The distance of wins and
+     * losses is stored relative to the board node instead of the root of the search, so the
+     * entry can be used again at any ply.
+     *
+     * @param score A score relative to the root of the search.
+     * @param ply   The distance of the board node to the root of the search.
+     * @return The score relative to the board node.
+     */
+    private static int toTableScore(int score, int ply) {
+        int result = score;
+        if (isWin(score)) {
+            result = score + ply;
+        } else if (isWin(-score)) {
+            result = score - ply;
         }
-        ttEntry.depth = depth;
-        ttEntry.key = posKey;
-        TRANS_POS_TABLE.put(posKey % POS_TABLE_SIZE, ttEntry);
+        return result;
     }
 
     /**
-     * Calculates the value of a specific board node (board configuration).
+     * Converts a score read from the transposition table back to a score relative to the
+     * root of the search.
+     *
+     * @param score A score relative to the board node.
+     * @param ply   The distance of the board node to the root of the search.
+     * @return The score relative to the root of the search.
+     * @see #toTableScore(int, int)
+     */
+    private static int fromTableScore(int score, int ply) {
+        int result = score;
+        if (isWin(score)) {
+            result = score - ply;
+        } else if (isWin(-score)) {
+            result = score + ply;
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether a score means the current player can force a win.
+     *
+     * @param score A score returned by the search.
+     * @return {@code true} if the score is a win, otherwise {@code false}.
+     */
+    public static boolean isWin(int score) {
+        return score > WIN_SCORE - MAX_WIN_DISTANCE;
+    }
+
+    /**
+     * Calculates the value of a specific board node (board configuration). A
+     * {@link BinaryBoard} is evaluated directly on its bitboards, other boards are
+     * evaluated spot by spot.
      *
      * @param board The current board.
      * @param mark  The mark of the current player.
-     * @return The calculated value.
+     * @return The calculated value, {@link #WIN_SCORE} if the current player has won and
+     * minus {@link #WIN_SCORE} if the other player has won.
      */
-    public double nodeValue(Board board, Mark mark) {
+    public int nodeValue(Board board, Mark mark) {
         upCounter();
 
+        int value;
+
+        if (board.hasWon(mark.other())) {
+            value = -WIN_SCORE;
+        } else if (board.hasWon(mark)) {
+            value = WIN_SCORE;
+        } else if (board instanceof BinaryBoard) {
+            BinaryBoard binaryBoard = (BinaryBoard) board;
+            value = EVALUATOR.evaluate(binaryBoard.getBitboard(mark),
+                    binaryBoard.getBitboard(mark.other()));
+        } else {
+            value = spotValue(board, mark);
+        }
+
+        return value;
+    }
+
+    /**
+     * Calculates the value of a board node by summing the values of every spot.
+     *
+     * @param board The current board.
+     * @param mark  The mark of the current player.
+     * @return The calculated value.
+     */
+    private int spotValue(Board board, Mark mark) {
 
         int cols = board.getColumns();
         int rows = board.getRows();
-        double value = 0;
+        int value = 0;
 
         for (int row = 0; row < rows; row++) {
             for (int col = 0; col < cols; col++) {
@@ -258,9 +550,6 @@ public class NegaMaxStrategy implements GameStrategy {
             }
         }
 
-        value = board.hasWon(mark) ? Double.POSITIVE_INFINITY : value;
-        value = board.hasWon(mark.other()) ? Double.NEGATIVE_INFINITY : value;
-
         return value;
     }
 
@@ -273,7 +562,7 @@ public class NegaMaxStrategy implements GameStrategy {
      * @param vRow  The row of the spot.
      * @return The calculated horizontal value.
      */
-    private double horizontalValue(Board board, Mark mark, int vCol, int vRow) {
+    private int horizontalValue(Board board, Mark mark, int vCol, int vRow) {
 
         int cols = board.getColumns();
         int streak = board.getWinStreak();
@@ -299,7 +588,7 @@ public class NegaMaxStrategy implements GameStrategy {
      * @param vRow  The row of the spot.
      * @return The calculated vertical value.
      */
-    private double verticalValue(Board board, Mark mark, int vCol, int vRow) {
+    private int verticalValue(Board board, Mark mark, int vCol, int vRow) {
 
         int rows = board.getRows();
         int streak = board.getWinStreak();
@@ -331,7 +620,7 @@ public class NegaMaxStrategy implements GameStrategy {
      * @return The calculated diagonal value.
      */
 
-    private double lRDiagonalValue(Board board, Mark mark, int vCol, int vRow) {
+    private int lRDiagonalValue(Board board, Mark mark, int vCol, int vRow) {
 
         int rows = board.getRows();
         int cols = board.getColumns();
@@ -369,7 +658,7 @@ public class NegaMaxStrategy implements GameStrategy {
      * @return The calculated diagonal value.
      * @ . . . . . .
      */
-    private double rLDiagonalValue(Board board, Mark mark, int vCol, int vRow) {
+    private int rLDiagonalValue(Board board, Mark mark, int vCol, int vRow) {
 
         int rows = board.getRows();
         int cols = board.getColumns();
@@ -446,17 +735,59 @@ public class NegaMaxStrategy implements GameStrategy {
         return "NegamaxStrategy";
     }
 
-    public void abort() {
-        no_abort_received.countDown();
+    /**
+     * Marks the start of a new search in the transposition table, see
+     * {@link #newTableSearch()}. The killer moves of this strategy are
+     * forgotten and its history scores are halved, so the move order of the new search
+     * is not dominated by the old position.
+     */
+    public void newSearch() {
+        newTableSearch();
+        generation++;
     }
 
     /**
-     * Flag used to determine if a value in the transposition value can be used as the value(EXACT),
-     * as alpha (LOWER_BOUND) or beta (UPPER_BOUND).
+     * Marks the start of a new search in the transposition table, so entries of
+     * earlier searches will be replaced first.
      */
-    enum Flag {
+    public static void newTableSearch() {
+        TRANS_POS_TABLE.newSearch();
+    }
 
-        EXACT, UPPER_BOUND, LOWER_BOUND
+    /**
+     * Gives the best move stored in the transposition table for the position on the board.
+     *
+     * @param board The board to look up.
+     * @return The stored best move, -1 if there is none.
+     */
+    static int tableMove(Board board) {
+        long ttEntry = TRANS_POS_TABLE.probe(board.positionCode());
+        return ttEntry == 0 ? -1 : TranspositionTable.move(ttEntry);
+    }
+
+    /**
+     * Removes all entries from the transposition table.
+     */
+    public void clearTable() {
+        TRANS_POS_TABLE.clear();
+    }
+
+    /**
+     * Aborts the searches of this strategy by cancelling its cancellation token.
+     */
+    public void abort() {
+        cancellation.cancel();
+    }
+
+    /**
+     * Returns whether this strategy has been aborted. Values returned by a search which
+     * was aborted are incomplete and should not be used.
+     *
+     * @return {@code true} if {@link #abort()} has been called or the deadline of the
+     * cancellation token has passed.
+     */
+    public boolean isAborted() {
+        return cancellation.isCancelled();
     }
 
     /**
@@ -464,24 +795,88 @@ public class NegaMaxStrategy implements GameStrategy {
      */
     public static class Result {
         int column;
-        Double value;
+        int value;
 
-        public Result(int col, Double val) {
+        public Result(int col, int val) {
             column = col;
             value = val;
         }
     }
 
     /**
-     * Entry in the transpositiontable.
+     * Buffers used by the searches of one thread, indexed by the ply of a node. These are
+     * allocated once for every thread searching with a strategy, so no objects have to be
+     * created while walking the tree or when the search is started again with another
+     * window. The killer moves and history scores are kept across these calls and aged by
+     * {@link NegaMaxStrategy#newSearch()}, searches running at the same time on other
+     * threads do not share them.
      */
-    private static class TransPosEntry {
+    private static class SearchStack {
+
+        final int[] bestMove;
+        final int[][] moves;
+        final int[][] moveOrder;
+        final int[][] killers;
+        final int[][] history;
+        int nodes;
+        int generation;
+
+        /**
+         * Creates a stack for the given amount of plies which keeps the killer moves and
+         * history scores of the stack it replaces.
+         */
+        SearchStack(int maxPly, SearchStack previous) {
+            bestMove = new int[maxPly + 1];
+            moves = new int[maxPly + 1][COLUMN_ORDER.length];
+            moveOrder = new int[maxPly + 1][COLUMN_ORDER.length];
+            killers = new int[maxPly + 1][KILLER_MOVES];
+            for (int[] plyKillers : killers) {
+                Arrays.fill(plyKillers, -1);
+            }
+            if (previous == null) {
+                history = new int[Mark.values().length][COLUMN_ORDER.length];
+            } else {
+                history = previous.history;
+                generation = previous.generation;
+                for (int ply = 0; ply < previous.killers.length; ply++) {
+                    System.arraycopy(previous.killers[ply], 0, killers[ply], 0, KILLER_MOVES);
+                }
+            }
+        }
 
-        Flag flag;
-        double value;
-        int move;
-        int depth;
-        long key;
+        /**
+         * Forgets the killer moves and halves the history scores.
+         */
+        void age() {
+            for (int[] plyKillers : killers) {
+                Arrays.fill(plyKillers, -1);
+            }
+            for (int[] markHistory : history) {
+                for (int col = 0; col < markHistory.length; col++) {
+                    markHistory[col] /= 2;
+                }
+            }
+        }
+
+        /**
+         * Remembers a move which caused a cutoff as the newest killer move of the ply and
+         * raises its history score by the square of the remaining depth.
+         */
+        void addCutoff(Mark mark, int ply, int depth, int move) {
+            int[] plyKillers = killers[ply];
+            if (plyKillers[0] != move) {
+                plyKillers[1] = plyKillers[0];
+                plyKillers[0] = move;
+            }
+
+            int[] markHistory = history[mark.ordinal()];
+            markHistory[move] += depth * depth;
+            if (markHistory[move] > HISTORY_LIMIT) {
+                for (int col = 0; col < markHistory.length; col++) {
+                    markHistory[col] /= 2;
+                }
+            }
+        }
 
     }
 }
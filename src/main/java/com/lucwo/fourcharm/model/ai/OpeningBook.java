@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Opening book with the solved best move of every position up to a fixed amount of plies.
+ * The book is a file of fixed size records sorted by position code, which is mapped into
+ * memory and searched with a binary search, so looking up a position does not read or
+ * copy anything but the probed records.
+ * <p>
+ * Positions are stored once for a position and its mirror image, under the smallest of
+ * the two {@link BinaryBoard#positionCode()} values. The stored best move belongs to the
+ * orientation with that code and is mirrored when looking up the other orientation.
+ * Layout of the file:
+ * <pre>
+ *   int   magic number
+ *   int   maximum amount of plies of the positions in the book
+ *   int   amount of records
+ *   records of 10 bytes: long position code, byte best move, byte solver score
+ * </pre>
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class OpeningBook {
+
+    /**
+     * System property holding the path of the default opening book.
+     */
+    public static final String BOOK_PROPERTY = "fourcharm.book";
+    /**
+     * Path of the default opening book when the system property is not set.
+     */
+    public static final String DEF_BOOK_PATH = "fourcharm.book";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpeningBook.class);
+    private static final int MAGIC = 0x46434231;
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int RECORD_SIZE = Long.BYTES + 2;
+    private static final int COLUMNS = new BinaryBoard().getColumns();
+
+    private static OpeningBook defaultBook;
+    private static boolean defaultBookLoaded;
+
+    // ------------------ Instance variables ----------------
+
+    private final ByteBuffer records;
+    private final int plies;
+    private final int size;
+
+    // --------------------- Constructors -------------------
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book");
+        }
+        plies = buffer.getInt(Integer.BYTES);
+        size = buffer.getInt(2 * Integer.BYTES);
+        if (buffer.limit() != HEADER_SIZE + (long) size * RECORD_SIZE) {
+            throw new IOException("Opening book is truncated");
+        }
+        records = buffer;
+    }
+
+    /**
+     * Opens an opening book by mapping the file into memory.
+     *
+     * @param path The path of the book.
+     * @return The opened book.
+     * @throws IOException When the file can not be read or is not an opening book.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()));
+        }
+    }
+
+    /**
+     * Gives the default opening book, which is opened the first time this method is
+     * called. The path of the book is read from the {@value #BOOK_PROPERTY} system property.
+     *
+     * @return The default opening book, {@code null} when there is no readable book.
+     */
+    public static synchronized OpeningBook getDefault() {
+        if (!defaultBookLoaded) {
+            defaultBookLoaded = true;
+            Path path = Paths.get(System.getProperty(BOOK_PROPERTY, DEF_BOOK_PATH));
+            try {
+                defaultBook = open(path);
+                LOGGER.info("Opened opening book {} with {} positions", path, defaultBook.size);
+            } catch (NoSuchFileException e) {
+                LOGGER.trace("getDefault", e);
+            } catch (IOException e) {
+                LOGGER.warn("Could not open opening book {}", path, e);
+            }
+        }
+        return defaultBook;
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Looks up the best move of the position on the board. Only positions of a
+     * {@link BinaryBoard} can be looked up.
+     *
+     * @param board The board to look up.
+     * @return The best move, -1 when the position is not in the book.
+     */
+    public int lookup(Board board) {
+        int move = -1;
+        if (board instanceof BinaryBoard && board.getPlieCount() <= plies) {
+            long code = board.positionCode();
+            long mirrored = BinaryBoard.mirrorPositionCode(code);
+            int index = find(Math.min(code, mirrored));
+            if (index >= 0) {
+                move = records.get(HEADER_SIZE + index * RECORD_SIZE + Long.BYTES);
+                if (mirrored < code) {
+                    move = COLUMNS - 1 - move;
+                }
+            }
+        }
+        return move;
+    }
+
+    /**
+     * Gives the maximum amount of plies of the positions in the book.
+     *
+     * @return The amount of plies.
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * Gives the amount of positions in the book.
+     *
+     * @return The amount of positions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Binary search for the record with the given key.
+     *
+     * @return The index of the record, -1 when there is no such record.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = size - 1;
+        int result = -1;
+        while (low <= high && result == -1) {
+            int mid = (low + high) >>> 1;
+            long midKey = records.getLong(HEADER_SIZE + mid * RECORD_SIZE);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                result = mid;
+            }
+        }
+        return result;
+    }
+
+    // ----------------------- Commands ----------------------
+
+    /**
+     * Writes an opening book.
+     *
+     * @param out     The stream to write the book to.
+     * @param plies   The maximum amount of plies of the positions.
+     * @param entries The best move and score of every position, keyed by the smallest
+     *                position code of the position and its mirror image.
+     * @throws IOException When writing fails.
+     */
+    public static void write(OutputStream out, int plies,
+                             SortedMap<Long, NegaMaxStrategy.Result> entries)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(plies);
+        data.writeInt(entries.size());
+        for (Map.Entry<Long, NegaMaxStrategy.Result> entry : entries.entrySet()) {
+            data.writeLong(entry.getKey());
+            data.writeByte(entry.getValue().column);
+            data.writeByte(entry.getValue().value);
+        }
+        data.flush();
+    }
+
+    /**
+     * Writes an opening book to a file.
+     *
+     * @param path    The file to write the book to.
+     * @param plies   The maximum amount of plies of the positions.
+     * @param entries The best move and score of every position.
+     * @throws IOException When writing fails.
+     * @see #write(OutputStream, int, SortedMap)
+     */
+    public static void write(Path path, int plies,
+                             SortedMap<Long, NegaMaxStrategy.Result> entries)
+            throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(out, plies, entries);
+        }
+    }
+}
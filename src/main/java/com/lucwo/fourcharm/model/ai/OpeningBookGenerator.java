@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Build tool which creates an {@link OpeningBook}. Every position which can be reached in
+ * at most the given amount of plies without a winner is solved with the
+ * {@link SolverStrategy}. Positions which are the mirror image of each other are solved
+ * once. The deepest positions are solved first, so the solver can use their entries in its
+ * transposition table when solving the shallower positions.
+ * <p>
+ * Usage: OpeningBookGenerator [plies] [output file]
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class OpeningBookGenerator {
+
+    /**
+     * Default maximum amount of plies of the positions in the book.
+     */
+    public static final int DEF_PLIES = 8;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpeningBookGenerator.class);
+    private static final int PROGRESS_STEP = 100;
+
+    private OpeningBookGenerator() {
+        // Hide the public constructor
+    }
+
+    /**
+     * Collects the positions of every amount of plies up to the given amount, mirror
+     * images are only collected once.
+     *
+     * @param plies The maximum amount of plies.
+     * @return For every amount of plies the positions with that amount of plies.
+     * @throws InvalidMoveException Never, only legal moves are made.
+     */
+    public static List<List<Board>> collectPositions(int plies) throws InvalidMoveException {
+        return collectPositions(new BinaryBoard(), plies);
+    }
+
+    /**
+     * Collects the positions which can be reached from the given position in every amount of
+     * plies up to the given amount, mirror images are only collected once.
+     *
+     * @param root  The position to start from, this board is not modified.
+     * @param plies The maximum amount of plies after the root position.
+     * @return For every amount of plies the positions with that amount of plies after the
+     * root position.
+     * @throws InvalidMoveException Never, only legal moves are made.
+     */
+    /*@ requires root != null && plies >= 0;
+        ensures \result.size() == plies + 1;
+     */
+    public static List<List<Board>> collectPositions(Board root, int plies)
+            throws InvalidMoveException {
+        List<List<Board>> positions = new ArrayList<>();
+        List<Board> current = new ArrayList<>();
+        current.add(root.deepCopy());
+        positions.add(current);
+
+        for (int ply = 1; ply <= plies; ply++) {
+            Mark mark = (root.getPlieCount() + ply) % 2 == 1 ? Mark.P1 : Mark.P2;
+            Set<Long> seen = new HashSet<>();
+            List<Board> next = new ArrayList<>();
+            for (Board board : current) {
+                for (int col = 0; col < board.getColumns(); col++) {
+                    if (board.columnHasFreeSpace(col)) {
+                        Board child = board.deepCopy();
+                        child.makemove(col, mark);
+                        if (!child.hasWon(mark) && seen.add(canonicalCode(child))) {
+                            next.add(child);
+                        }
+                    }
+                }
+            }
+            positions.add(next);
+            current = next;
+        }
+
+        return positions;
+    }
+
+    /**
+     * Solves every position up to the given amount of plies.
+     *
+     * @param plies The maximum amount of plies.
+     * @return The best move and score of every position, keyed by its canonical code.
+     * @throws InvalidMoveException Never, only legal moves are made.
+     */
+    public static SortedMap<Long, NegaMaxStrategy.Result> solvePositions(int plies)
+            throws InvalidMoveException {
+        return solvePositions(new BinaryBoard(), plies);
+    }
+
+    /**
+     * Solves every position which can be reached from the given position in at most the
+     * given amount of plies. The best move is stored for the orientation of the position
+     * with the canonical code, so it is mirrored when the solved position is the mirror
+     * image of that orientation.
+     *
+     * @param root  The position to start from, this board is not modified.
+     * @param plies The maximum amount of plies after the root position.
+     * @return The best move and score of every position, keyed by its canonical code.
+     * @throws InvalidMoveException Never, only legal moves are made.
+     */
+    /*@ requires root != null && plies >= 0; */
+    public static SortedMap<Long, NegaMaxStrategy.Result> solvePositions(Board root, int plies)
+            throws InvalidMoveException {
+        List<List<Board>> positions = collectPositions(root, plies);
+        SortedMap<Long, NegaMaxStrategy.Result> entries = new TreeMap<>();
+        SolverStrategy solver = new SolverStrategy(0, new RandomStrategy());
+
+        for (int ply = plies; ply >= 0; ply--) {
+            Mark mark = (root.getPlieCount() + ply) % 2 == 0 ? Mark.P1 : Mark.P2;
+            List<Board> boards = positions.get(ply);
+            LOGGER.info("Solving {} positions of {} plies", boards.size(), ply);
+            for (int i = 0; i < boards.size(); i++) {
+                Board board = boards.get(i);
+                long code = board.positionCode();
+                long mirrored = BinaryBoard.mirrorPositionCode(code);
+                NegaMaxStrategy.Result result = solver.solveMove(board, mark);
+                if (mirrored < code && result.column >= 0) {
+                    result = new NegaMaxStrategy.Result(board.getColumns() - 1 - result.column,
+                            result.value);
+                }
+                entries.put(Math.min(code, mirrored), result);
+                if ((i + 1) % PROGRESS_STEP == 0) {
+                    LOGGER.info("{}/{}", i + 1, boards.size());
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Gives the smallest position code of a position and its mirror image.
+     *
+     * @param board The position.
+     * @return The canonical position code.
+     */
+    public static long canonicalCode(Board board) {
+        long code = board.positionCode();
+        return Math.min(code, BinaryBoard.mirrorPositionCode(code));
+    }
+
+    /**
+     * Generates the opening book.
+     *
+     * @param args The maximum amount of plies and the file to write the book to.
+     * @throws InvalidMoveException Never, only legal moves are made.
+     * @throws IOException          When the book can not be written.
+     */
+    public static void main(String[] args) throws InvalidMoveException, IOException {
+        int plies = args.length > 0 ? Integer.parseInt(args[0]) : DEF_PLIES;
+        String path = args.length > 1 ? args[1] : OpeningBook.DEF_BOOK_PATH;
+
+        long start = System.currentTimeMillis();
+        SortedMap<Long, NegaMaxStrategy.Result> entries = solvePositions(plies);
+        OpeningBook.write(Paths.get(path), plies, entries);
+        LOGGER.info("Wrote {} positions to {} in {} s", entries.size(), path,
+                (System.currentTimeMillis() - start) / 1000);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor on which the asynchronous moves of a {@link GameStrategy} are searched.
+ * The amount of threads is bounded by the amount of processors, searches which are
+ * requested while all threads are busy wait in the queue of the executor. The threads
+ * are daemon threads and stop when they have been idle for a while.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class SearchExecutor {
+
+    /**
+     * The maximum amount of searches which run at the same time.
+     */
+    public static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final long THREAD_KEEP_ALIVE = 60;
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ThreadPoolExecutor POOL;
+
+    static {
+        POOL = new ThreadPoolExecutor(SEARCH_THREADS, SEARCH_THREADS, THREAD_KEEP_ALIVE,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "Search-" + THREAD_COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        POOL.allowCoreThreadTimeOut(true);
+    }
+
+    private SearchExecutor() {
+        // Hide the public constructor
+    }
+
+    /**
+     * Returns the executor which runs the searches.
+     *
+     * @return The search executor.
+     */
+    public static Executor getExecutor() {
+        return POOL;
+    }
+
+    /**
+     * Searches a move with the given strategy on the search executor.
+     *
+     * @param strategy The strategy which determines the move.
+     * @param board    The board to search a move for, it must not be changed by the caller
+     *                 until the search has finished.
+     * @param mark     The mark of the player who has to move.
+     * @return A future which is completed with the move when the search has finished.
+     */
+    /*@
+        requires strategy != null && board != null && mark != null;
+     */
+    public static CompletableFuture<Integer> search(GameStrategy strategy, Board board,
+                                                    Mark mark) {
+        return CompletableFuture.supplyAsync(() -> strategy.determineMove(board, mark), POOL);
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.ai.TranspositionTable.Flag;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+/**
+ * Strategy which solves positions exactly instead of estimating them. The solver works on
+ * the bitboard layout of {@link BinaryBoard} and scores a position by how early the game
+ * is won: a win with the last stone of the current player scores 1, every stone of the
+ * current player left when the game is won scores one more. A draw scores 0 and losses
+ * score negative.
+ * <p>
+ * The exact score is found with a series of null window searches which narrow the
+ * interval of possible scores. The search only plays moves which do not hand the
+ * opponent an immediate win, tries the moves creating the most new threats first (the
+ * center columns first when equal) and stores upper and lower bounds of the scores in
+ * its own transposition table.
+ * <p>
+ * Positions early in the game may take too long to solve. When a position is not solved
+ * within the solve time the move is determined by the fallback strategy.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class SolverStrategy implements GameStrategy {
+
+    /**
+     * Default time in milliseconds the solver may take before the fallback strategy is used.
+     */
+    public static final long DEF_SOLVE_TIME = 1000L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SolverStrategy.class);
+    private static final Marker AI_DEBUG = MarkerFactory.getMarker("AI_DEBUG");
+    private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
+
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 6;
+    private static final int H1 = HEIGHT + 1;
+    private static final int SPOTS = WIDTH * HEIGHT;
+    private static final long BOTTOM_MASK = bottomMask();
+    private static final long BOARD_MASK = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+    private static final int[] COLUMN_ORDER = {3, 2, 4, 1, 5, 0, 6};
+    /**
+     * Bit distances between neighbouring spots horizontally and on both diagonals.
+     */
+    private static final int[] LINE_SHIFTS = {H1, HEIGHT, H1 + 1};
+    /**
+     * How many nodes are searched between two checks of the deadline.
+     */
+    private static final int DEADLINE_CHECK_NODES = 1 << 12;
+
+    private static final double TRANS_POS_HEAP_FRACTION = 0.0625;
+    private static final TranspositionTable TRANS_POS_TABLE =
+            TranspositionTable.forHeapBudget(TRANS_POS_HEAP_FRACTION);
+
+    // ------------------ Instance variables ----------------
+
+    private final long solveTime;
+    private final GameStrategy fallback;
+    private final long[][] sortedMoves = new long[SPOTS + 1][WIDTH];
+    private final int[][] moveScores = new int[SPOTS + 1][WIDTH];
+    private long nodeCounter;
+    private long deadline;
+    private boolean aborted;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a solver which falls back to an {@link MTDfStrategy} with its default
+     * thinking time.
+     */
+    public SolverStrategy() {
+        this(DEF_SOLVE_TIME, new MTDfStrategy());
+    }
+
+    /**
+     * Constructs a solver which falls back to an {@link MTDfStrategy} with the given
+     * thinking time.
+     *
+     * @param time The thinking time of the fallback strategy in seconds.
+     */
+    public SolverStrategy(long time) {
+        this(DEF_SOLVE_TIME, new MTDfStrategy(time));
+    }
+
+    /**
+     * Constructs a solver with the given solve time and fallback strategy.
+     *
+     * @param solveTime Time in milliseconds the solver may take.
+     * @param fallback  Strategy used when the position is not solved in time.
+     */
+    /*@
+     * requires solveTime >= 0 && fallback != null;
+     */
+    public SolverStrategy(long solveTime, GameStrategy fallback) {
+        this.solveTime = solveTime;
+        this.fallback = fallback;
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Determines the best move by solving the position. When the position can not be
+     * solved within the solve time the fallback strategy is used.
+     *
+     * @param board The current board.
+     * @param mark  The mark of the current player.
+     * @return The move with the best score.
+     */
+    @Override
+    public synchronized int determineMove(Board board, Mark mark) {
+        long current = bitboard(board, mark);
+        long mask = current | bitboard(board, mark.other());
+
+        startSearch(System.currentTimeMillis() + solveTime);
+        NegaMaxStrategy.Result result = bestMove(current, mask, board.getPlieCount(), false);
+        LOGGER.debug(AI_DEBUG, "Searched nodes: {}", nodeCounter);
+
+        int bestMove = result.column;
+        if (aborted || bestMove == -1) {
+            LOGGER.debug(AI_INFO, "Position not solved, using {}", fallback);
+            bestMove = fallback.determineMove(board, mark);
+        } else {
+            LOGGER.debug(AI_INFO, "Best move: {} Score: {}", bestMove, result.value);
+        }
+        return bestMove;
+    }
+
+    /**
+     * Solves the position without a time limit and gives the best move with its score.
+     *
+     * @param board The board to solve, this board is not modified.
+     * @param mark  The mark of the current player.
+     * @return The best move, -1 when the board is full, and the exact score of the position.
+     */
+    public synchronized NegaMaxStrategy.Result solveMove(Board board, Mark mark) {
+        long current = bitboard(board, mark);
+        long mask = current | bitboard(board, mark.other());
+
+        startSearch(Long.MAX_VALUE);
+        return bestMove(current, mask, board.getPlieCount(), true);
+    }
+
+    /**
+     * Solves the position. The score is positive when the current player can force a win,
+     * 0 when the game ends in a draw with perfect play and negative when the current player
+     * loses.
+     *
+     * @param board The board to solve, this board is not modified.
+     * @param mark  The mark of the current player.
+     * @return The exact score of the position.
+     */
+    public synchronized int solve(Board board, Mark mark) {
+        long current = bitboard(board, mark);
+        long mask = current | bitboard(board, mark.other());
+
+        startSearch(Long.MAX_VALUE);
+        return solve(current, mask, board.getPlieCount());
+    }
+
+    /**
+     * Gives the amount of nodes searched by the last search.
+     *
+     * @return The amount of searched nodes.
+     */
+    public synchronized long getCounter() {
+        return nodeCounter;
+    }
+
+    /**
+     * Removes all entries from the transposition table of the solver.
+     */
+    public void clearTable() {
+        TRANS_POS_TABLE.clear();
+    }
+
+    /**
+     * Gives the name of the strategy.
+     *
+     * @return 'SolverStrategy'
+     */
+    @Override
+    public String toString() {
+        return "SolverStrategy";
+    }
+
+    // ----------------------- Search ----------------------
+
+    private void startSearch(long searchDeadline) {
+        nodeCounter = 0;
+        aborted = false;
+        deadline = searchDeadline;
+        TRANS_POS_TABLE.newSearch();
+    }
+
+    /**
+     * Finds the best move of the current player. Immediate wins, positions in which every
+     * move loses and positions with only one move which does not lose are handled without
+     * searching, the score of the last is only calculated when an exact score is asked for.
+     */
+    private NegaMaxStrategy.Result bestMove(long current, long mask, int moves,
+                                            boolean exactScore) {
+        int bestMove = -1;
+        int bestScore = 0;
+        long winning = winningPosition(current, mask) & possible(mask);
+        long next = nonLosingMoves(current, mask);
+        if (winning != 0) {
+            bestMove = firstColumn(winning);
+            bestScore = (SPOTS + 1 - moves) / 2;
+        } else if (next == 0) {
+            // Every move loses, play any of them
+            bestMove = firstColumn(possible(mask));
+            bestScore = -(SPOTS - moves) / 2;
+        } else if ((next & (next - 1)) == 0) {
+            // Only one move does not lose immediately, no need to solve
+            bestMove = firstColumn(next);
+            if (exactScore) {
+                bestScore = -solve(current ^ mask, mask | next, moves + 1);
+            }
+        } else {
+            bestScore = -SPOTS;
+            for (int i = 0; !aborted && i < WIDTH; i++) {
+                int col = COLUMN_ORDER[i];
+                long move = next & columnMask(col);
+                if (move != 0) {
+                    int score = -solve(current ^ mask, mask | move, moves + 1);
+                    LOGGER.debug(AI_DEBUG, "Col: {} Score: {}", col, score);
+                    if (!aborted && score > bestScore) {
+                        bestMove = col;
+                        bestScore = score;
+                    }
+                }
+            }
+        }
+        return new NegaMaxStrategy.Result(bestMove, bestScore);
+    }
+
+    /**
+     * Finds the exact score by narrowing the interval of possible scores with null
+     * window searches.
+     */
+    private int solve(long current, long mask, int moves) {
+        int result;
+        if ((winningPosition(current, mask) & possible(mask)) != 0) {
+            result = (SPOTS + 1 - moves) / 2;
+        } else {
+            int min = -(SPOTS - moves) / 2;
+            int max = (SPOTS + 1 - moves) / 2;
+            while (min < max && !aborted) {
+                int med = min + (max - min) / 2;
+                if (med <= 0 && min / 2 < med) {
+                    med = min / 2;
+                } else if (med >= 0 && max / 2 > med) {
+                    med = max / 2;
+                }
+                int score = negaMax(current, mask, moves, med, med + 1);
+                if (score <= med) {
+                    max = score;
+                } else {
+                    min = score;
+                }
+            }
+            result = min;
+        }
+        return result;
+    }
+
+    /**
+     * Searches a position in which the current player can not win with the next move.
+     *
+     * @param current Bitboard of the current player.
+     * @param mask    Bitboard of all occupied spots.
+     * @param moves   Amount of moves played.
+     * @param alpha   Lower bound of the window.
+     * @param beta    Upper bound of the window.
+     * @return The score when it lies within the window, otherwise a bound of the score.
+     */
+    private int negaMax(long current, long mask, int moves, int alpha, int beta) {
+        nodeCounter++;
+        if ((nodeCounter & (DEADLINE_CHECK_NODES - 1)) == 0
+                && System.currentTimeMillis() > deadline) {
+            aborted = true;
+        }
+
+        long next = nonLosingMoves(current, mask);
+        if (aborted) {
+            return alpha;
+        }
+        if (next == 0) {
+            // Every move lets the opponent win
+            return -(SPOTS - moves) / 2;
+        }
+        if (moves >= SPOTS - 2) {
+            // The opponent can not win with the last stone, so it's a draw
+            return 0;
+        }
+
+        int newAlpha = alpha;
+        int newBeta = beta;
+        int min = -(SPOTS - 2 - moves) / 2;
+        int max = (SPOTS - 1 - moves) / 2;
+
+        long key = current + mask;
+        long entry = TRANS_POS_TABLE.probe(key);
+        if (entry != 0) {
+            if (TranspositionTable.flag(entry) == Flag.LOWER_BOUND) {
+                min = Math.max(min, TranspositionTable.score(entry));
+            } else {
+                max = Math.min(max, TranspositionTable.score(entry));
+            }
+        }
+        if (newAlpha < min) {
+            newAlpha = min;
+            if (newAlpha >= newBeta) {
+                return newAlpha;
+            }
+        }
+        if (newBeta > max) {
+            newBeta = max;
+            if (newAlpha >= newBeta) {
+                return newBeta;
+            }
+        }
+
+        int count = sortMoves(current, mask, moves, next);
+        long[] sorted = sortedMoves[moves];
+        for (int i = 0; i < count; i++) {
+            int score = -negaMax(current ^ mask, mask | sorted[i], moves + 1,
+                    -newBeta, -newAlpha);
+            if (aborted) {
+                return newAlpha;
+            }
+            if (score >= newBeta) {
+                TRANS_POS_TABLE.store(key, Flag.LOWER_BOUND, SPOTS - moves, score, -1);
+                return score;
+            }
+            if (score > newAlpha) {
+                newAlpha = score;
+            }
+        }
+
+        TRANS_POS_TABLE.store(key, Flag.UPPER_BOUND, SPOTS - moves, newAlpha, -1);
+        return newAlpha;
+    }
+
+    /**
+     * Orders the given moves by the amount of winning spots the current player has after
+     * the move, most first. Moves with as many winning spots stay in center first order.
+     *
+     * @return The amount of moves, the moves are stored in the sort buffer of this ply.
+     */
+    private int sortMoves(long current, long mask, int moves, long next) {
+        long[] sorted = sortedMoves[moves];
+        int[] scores = moveScores[moves];
+        int count = 0;
+
+        for (int col : COLUMN_ORDER) {
+            long move = next & columnMask(col);
+            if (move != 0) {
+                int score = Long.bitCount(winningPosition(current | move, mask));
+                int pos = count;
+                while (pos > 0 && scores[pos - 1] < score) {
+                    sorted[pos] = sorted[pos - 1];
+                    scores[pos] = scores[pos - 1];
+                    pos--;
+                }
+                sorted[pos] = move;
+                scores[pos] = score;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ----------------------- Bitboards ----------------------
+
+    /**
+     * Gives the moves of the current player which do not let the opponent win with its
+     * next move. When the opponent threatens to win the only move returned is the block,
+     * when there are multiple threats no moves are returned.
+     */
+    private static long nonLosingMoves(long current, long mask) {
+        long possible = possible(mask);
+        long opponentWin = winningPosition(current ^ mask, mask);
+        long forced = possible & opponentWin;
+        if (forced != 0) {
+            if ((forced & (forced - 1)) != 0) {
+                return 0;
+            }
+            possible = forced;
+        }
+        // Don't play directly below a winning spot of the opponent
+        return possible & ~(opponentWin >> 1);
+    }
+
+    /**
+     * Gives the empty spots which would complete four in a row for the given player.
+     *
+     * @param position Bitboard of the player.
+     * @param mask     Bitboard of all occupied spots.
+     * @return Bitboard of the winning spots.
+     */
+    static long winningPosition(long position, long mask) {
+        // Vertical
+        long result = (position << 1) & (position << 2) & (position << 3);
+
+        // Horizontal and both diagonals
+        for (int shift : LINE_SHIFTS) {
+            long pair = (position << shift) & (position << 2 * shift);
+            result |= pair & (position << 3 * shift);
+            result |= pair & (position >> shift);
+            pair = (position >> shift) & (position >> 2 * shift);
+            result |= pair & (position << shift);
+            result |= pair & (position >> 3 * shift);
+        }
+
+        return result & (BOARD_MASK ^ mask);
+    }
+
+    private static long possible(long mask) {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Gives the first column in center first order which contains a spot of the given
+     * bitboard.
+     */
+    private static int firstColumn(long spots) {
+        int result = -1;
+        for (int i = 0; result == -1 && i < WIDTH; i++) {
+            if ((spots & columnMask(COLUMN_ORDER[i])) != 0) {
+                result = COLUMN_ORDER[i];
+            }
+        }
+        return result;
+    }
+
+    private static long columnMask(int col) {
+        return ((1L << HEIGHT) - 1) << (col * H1);
+    }
+
+    private static long bottomMask() {
+        long mask = 0;
+        for (int col = 0; col < WIDTH; col++) {
+            mask |= 1L << (col * H1);
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the bitboard of a player from any board.
+     */
+    private static long bitboard(Board board, Mark mark) {
+        long bitboard = 0;
+        int rows = board.getRows();
+        for (int col = 0; col < board.getColumns(); col++) {
+            for (int row = 0; row < rows; row++) {
+                if (board.getMark(col * rows + row) == mark) {
+                    bitboard |= 1L << BinaryBoard.bitIndex(col, row);
+                }
+            }
+        }
+        return bitboard;
+    }
+}
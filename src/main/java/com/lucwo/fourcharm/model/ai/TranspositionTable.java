@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size transposition table used by the search strategies. The table is a single
+ * preallocated long array divided into buckets of {@link #BUCKET_SIZE} entries. Every entry
+ * takes two longs: a data word with the bound flag, depth, score, best move and age packed
+ * into it, and a check word holding the position key XOR-ed with the data word.
+ * <p>
+ * Entries are written without locking. When two threads write the same entry at the same
+ * time the check word will not match the data word anymore and the entry is simply
+ * treated as a miss, so the table can be shared by all search threads.
+ * <p>
+ * Layout of the data word (bit 0 is the least significant bit):
+ * <pre>
+ *   bits  0..31  score
+ *   bits 32..35  best move + 1, 0 when no move is known
+ *   bits 36..37  flag ordinal + 1, 0 for an empty entry
+ *   bits 38..45  search depth
+ *   bits 46..53  age of the search that stored the entry
+ * </pre>
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class TranspositionTable {
+
+    /**
+     * Amount of entries in one bucket. A bucket of 4 entries fills one 64 byte cache line.
+     */
+    public static final int BUCKET_SIZE = 4;
+    /**
+     * Amount of bytes needed for one bucket.
+     */
+    public static final int BUCKET_BYTES = BUCKET_SIZE * 2 * Long.BYTES;
+
+    private static final int MIN_BUCKET_BITS = 10;
+    private static final int MAX_BUCKET_BITS = 22;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final int MOVE_SHIFT = 32;
+    private static final int FLAG_SHIFT = 36;
+    private static final int DEPTH_SHIFT = 38;
+    private static final int AGE_SHIFT = 46;
+    private static final long SCORE_MASK = 0xFFFFFFFFL;
+    private static final long MOVE_MASK = 0xFL;
+    private static final long FLAG_MASK = 0x3L;
+    private static final long DEPTH_MASK = 0xFFL;
+    private static final int AGE_MASK = 0xFF;
+    /**
+     * How much depth an entry is worth for every search it is older than the current search.
+     */
+    private static final int AGE_WEIGHT = 4;
+
+    private static final Flag[] FLAGS = Flag.values();
+
+    private final long[] table;
+    private final int bucketBits;
+    private volatile int age;
+
+    /**
+     * Creates a new transposition table with 2^bucketBits buckets.
+     *
+     * @param bucketBits log2 of the amount of buckets.
+     */
+    /*@
+     * requires bucketBits > 0 && bucketBits <= MAX_BUCKET_BITS;
+     */
+    public TranspositionTable(int bucketBits) {
+        this.bucketBits = bucketBits;
+        table = new long[(1 << bucketBits) * BUCKET_SIZE * 2];
+    }
+
+    /**
+     * Creates a transposition table which uses at most the given fraction of the
+     * maximum heap size. The amount of buckets is rounded down to a power of two.
+     *
+     * @param heapFraction Fraction of the maximum heap the table may use.
+     * @return A new transposition table.
+     */
+    /*@
+     * requires heapFraction > 0 && heapFraction <= 1;
+     */
+    public static TranspositionTable forHeapBudget(double heapFraction) {
+        long budget = (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+        long buckets = Math.max(1L, budget / BUCKET_BYTES);
+        int bits = 63 - Long.numberOfLeadingZeros(buckets);
+        bits = Math.max(MIN_BUCKET_BITS, Math.min(MAX_BUCKET_BITS, bits));
+        return new TranspositionTable(bits);
+    }
+
+    /**
+     * Returns the data word stored for the given position key.
+     *
+     * @param key The position key to look up.
+     * @return The data word of the entry, or 0 when the position is not in the table.
+     */
+    public long probe(long key) {
+        int bucket = bucketIndex(key);
+        long result = 0;
+        for (int i = bucket; i < bucket + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            if (data != 0 && (table[i] ^ data) == key) {
+                result = data;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores a search result. Within the bucket of the key an entry of the same position
+     * is replaced when the new result is at least as deep or the old one is from an earlier
+     * search. Otherwise the shallowest entry is replaced, where old entries count as
+     * shallower than entries of the current search.
+     *
+     * @param key   The position key.
+     * @param flag  Whether the score is exact, an upper bound or a lower bound.
+     * @param depth The depth the score was searched to.
+     * @param score The score of the position.
+     * @param move  The best move found in the position, -1 when unknown.
+     */
+    public void store(long key, Flag flag, int depth, int score, int move) {
+        int bucket = bucketIndex(key);
+        int currentAge = age;
+        int victim = bucket;
+        int victimValue = Integer.MAX_VALUE;
+
+        for (int i = bucket; i < bucket + BUCKET_SIZE * 2; i += 2) {
+            long data = table[i + 1];
+            if (data == 0) {
+                victim = i;
+                victimValue = Integer.MIN_VALUE;
+            } else if ((table[i] ^ data) == key) {
+                victim = i;
+                victimValue = depth(data) > depth && age(data) == currentAge
+                        ? Integer.MAX_VALUE : Integer.MIN_VALUE;
+                break;
+            } else {
+                int value = depth(data) - AGE_WEIGHT * ((currentAge - age(data)) & AGE_MASK);
+                if (value < victimValue) {
+                    victim = i;
+                    victimValue = value;
+                }
+            }
+        }
+
+        if (victimValue != Integer.MAX_VALUE) {
+            long data = pack(flag, depth, score, move, currentAge);
+            table[victim + 1] = data;
+            table[victim] = key ^ data;
+        }
+    }
+
+    /**
+     * Marks the start of a new search. Entries from earlier searches are replaced
+     * before entries of the current search.
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Removes all entries from the table.
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+    }
+
+    /**
+     * Returns the amount of entries this table can hold.
+     *
+     * @return The capacity of the table.
+     */
+    public int capacity() {
+        return (1 << bucketBits) * BUCKET_SIZE;
+    }
+
+    /**
+     * Returns the score stored in a data word.
+     *
+     * @param data A data word returned by {@link #probe(long)}.
+     * @return The stored score.
+     */
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    /**
+     * Returns the best move stored in a data word.
+     *
+     * @param data A data word returned by {@link #probe(long)}.
+     * @return The stored move, -1 when no move was stored.
+     */
+    public static int move(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & MOVE_MASK) - 1;
+    }
+
+    /**
+     * Returns the flag stored in a data word.
+     *
+     * @param data A data word returned by {@link #probe(long)}.
+     * @return The stored flag.
+     */
+    public static Flag flag(long data) {
+        return FLAGS[(int) ((data >>> FLAG_SHIFT) & FLAG_MASK) - 1];
+    }
+
+    /**
+     * Returns the depth stored in a data word.
+     *
+     * @param data A data word returned by {@link #probe(long)}.
+     * @return The stored depth.
+     */
+    public static int depth(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & DEPTH_MASK);
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    private static long pack(Flag flag, int depth, int score, int move, int age) {
+        return (score & SCORE_MASK)
+                | ((long) (move + 1) & MOVE_MASK) << MOVE_SHIFT
+                | ((long) (flag.ordinal() + 1)) << FLAG_SHIFT
+                | ((long) Math.min(depth, (int) DEPTH_MASK)) << DEPTH_SHIFT
+                | ((long) age) << AGE_SHIFT;
+    }
+
+    /**
+     * Returns the index in the table of the first entry of the bucket for the given key.
+     */
+    private int bucketIndex(long key) {
+        return (int) ((key * HASH_MULTIPLIER) >>> (64 - bucketBits)) * BUCKET_SIZE * 2;
+    }
+
+    /**
+     * Flag used to determine if a value in the transposition value can be used as the
+     * value (EXACT), as alpha (LOWER_BOUND) or beta (UPPER_BOUND).
+     */
+    public enum Flag {
+
+        EXACT, UPPER_BOUND, LOWER_BOUND
+    }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel NegaMax search using the Young Brothers Wait Concept. In every node the first
+ * (eldest) child is searched before anything else, which establishes a bound for the
+ * node. Only then the remaining (younger) siblings are forked and searched in parallel
+ * with that bound. When one of the siblings produces a beta cutoff the siblings which are
+ * still searching are cancelled, including all the tasks they forked themselves.
+ * <p>
+ * Nodes less than {@link #MIN_SPLIT_DEPTH} plies from the horizon are searched serially
+ * by {@link NegaMaxStrategy}, which also provides the shared transposition table. The
+ * search runs on a dedicated {@link ForkJoinPool} of this strategy, the common pool is
+ * not used.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class YBWCStrategy implements GameStrategy {
+
+    /**
+     * Default amount of threads of the pool, one for every available processor.
+     */
+    public static final int DEF_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Nodes which are searched to a smaller depth are not split anymore.
+     */
+    public static final int MIN_SPLIT_DEPTH = 5;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(YBWCStrategy.class);
+    private static final Marker AI_DEBUG = MarkerFactory.getMarker("AI_DEBUG");
+    private static final Marker AI_INFO = MarkerFactory.getMarker("AI_INFO");
+
+    // ------------------ Instance variables ----------------
+
+    private final int searchDepth;
+    private final ForkJoinPool pool;
+    private final AtomicLong nodeCounter = new AtomicLong();
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a YBWC strategy with the default depth and amount of threads.
+     */
+    public YBWCStrategy() {
+        this(NegaMaxStrategy.DEF_DEPTH);
+    }
+
+    /**
+     * Constructs a YBWC strategy with the given depth and the default amount of threads.
+     *
+     * @param depth The search depth.
+     */
+    public YBWCStrategy(int depth) {
+        this(depth, DEF_THREADS);
+    }
+
+    /**
+     * Constructs a YBWC strategy with the given depth and amount of threads.
+     *
+     * @param depth   The search depth.
+     * @param threads The parallelism of the pool used by the search.
+     */
+    /*@
+     * requires depth >= 1 && threads > 0;
+     */
+    public YBWCStrategy(int depth, int threads) {
+        searchDepth = depth;
+        pool = new ForkJoinPool(threads);
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Determines the best move by searching the configured depth in parallel.
+     *
+     * @param board The board for which the best move will be determined.
+     * @param mark  The mark of the current player.
+     * @return The best move according to the search.
+     */
+    @Override
+    public int determineMove(Board board, Mark mark) {
+        return determineMove(board, mark, searchDepth);
+    }
+
+    /**
+     * Determines the best move by searching the given depth in parallel.
+     *
+     * @param board The board for which the best move will be determined.
+     * @param mark  The mark of the current player.
+     * @param depth The search depth.
+     * @return The best move according to the search.
+     */
+    /*@
+     * requires depth >= 1;
+     */
+    public int determineMove(Board board, Mark mark, int depth) {
+        nodeCounter.set(0);
+        NegaMaxStrategy.newTableSearch();
+
+        NodeTask root = new NodeTask(board.deepCopy(), mark, -NegaMaxStrategy.INFINITY,
+                NegaMaxStrategy.INFINITY, depth, 0);
+        int bestValue = pool.invoke(root);
+        int bestMove = root.bestMove;
+
+        LOGGER.debug(AI_DEBUG, "Evaluated nodes: {}", nodeCounter.get());
+        LOGGER.debug(AI_INFO, "Best move: {} Value: {}", bestMove, bestValue);
+        if (bestMove == -1) {
+            bestMove = new RandomStrategy().determineMove(board, mark);
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * Gives the amount of nodes evaluated during the last search.
+     *
+     * @return The amount of evaluated nodes.
+     */
+    public long getCounter() {
+        return nodeCounter.get();
+    }
+
+    /**
+     * The name of the strategy.
+     *
+     * @return The name of the strategy.
+     */
+    @Override
+    public String toString() {
+        return "YBWCStrategy";
+    }
+
+    /**
+     * Searches one node. Each task owns its board, the eldest child is searched on that
+     * board and every younger sibling gets a copy.
+     */
+    private final class NodeTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = -2338901913594250045L;
+
+        private final Board board;
+        private final Mark mark;
+        private final int alpha;
+        private final int beta;
+        private final int depth;
+        private final int ply;
+        private final List<NodeTask> children = new ArrayList<>();
+        private volatile boolean cancelled;
+        private volatile NegaMaxStrategy search;
+        private int bestMove = -1;
+
+        NodeTask(Board board, Mark mark, int alpha, int beta, int depth, int ply) {
+            this.board = board;
+            this.mark = mark;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.depth = depth;
+            this.ply = ply;
+        }
+
+        @Override
+        protected Integer compute() {
+            int value = 0;
+            if (!cancelled) {
+                if ((ply > 0 && depth < MIN_SPLIT_DEPTH) || depth == 0 || board.isFull()
+                        || board.hasWon(mark.other())) {
+                    value = searchSerial();
+                } else {
+                    value = searchSplit();
+                }
+            }
+            return value;
+        }
+
+        /**
+         * Searches this node with the serial NegaMax search.
+         */
+        private int searchSerial() {
+            NegaMaxStrategy serial = new NegaMaxStrategy(depth);
+            search = serial;
+            if (cancelled) {
+                serial.abort();
+            }
+            int value = serial.negaMax(board, mark, alpha, beta, depth, ply);
+            nodeCounter.addAndGet(serial.getCounter());
+            return value;
+        }
+
+        /**
+         * Searches the eldest child first and then forks the younger siblings. The children
+         * are visited in the order of the serial search, so the eldest child is the move
+         * most likely to establish a good bound.
+         */
+        private int searchSplit() {
+            int newAlpha = alpha;
+            int bestValue = -NegaMaxStrategy.INFINITY;
+            List<NodeTask> siblings = new ArrayList<>();
+            int[] moves = orderMoves();
+            int[] siblingMoves = new int[moves.length];
+
+            for (int i = 0; !cancelled && i < moves.length; i++) {
+                int col = moves[i];
+                if (board.columnHasFreeSpace(col)) {
+                    try {
+                        if (bestMove == -1) {
+                            board.makemove(col, mark);
+                            NodeTask eldest = addChild(new NodeTask(board, mark.other(),
+                                    -beta, -newAlpha, depth - 1, ply + 1));
+                            bestValue = -eldest.compute();
+                            board.unmakemove();
+                            bestMove = col;
+                            newAlpha = Math.max(newAlpha, bestValue);
+                            if (newAlpha >= beta) {
+                                break;
+                            }
+                        } else {
+                            Board copy = board.deepCopy();
+                            copy.makemove(col, mark);
+                            NodeTask sibling = addChild(new NodeTask(copy, mark.other(),
+                                    -beta, -newAlpha, depth - 1, ply + 1));
+                            siblingMoves[siblings.size()] = col;
+                            siblings.add(sibling);
+                            sibling.fork();
+                        }
+                    } catch (InvalidMoveException e) {
+                        LOGGER.trace("searchSplit", e);
+                    }
+                }
+            }
+
+            boolean cutoff = newAlpha >= beta;
+            for (int i = 0; i < siblings.size(); i++) {
+                int val = -siblings.get(i).join();
+                if (!cutoff && !cancelled && val > bestValue) {
+                    bestValue = val;
+                    bestMove = siblingMoves[i];
+                    newAlpha = Math.max(newAlpha, val);
+                    if (newAlpha >= beta) {
+                        cutoff = true;
+                        for (int j = i + 1; j < siblings.size(); j++) {
+                            siblings.get(j).cancelTree();
+                        }
+                    }
+                }
+            }
+
+            return bestValue;
+        }
+
+        /**
+         * Gives the columns in the order in which they are searched: the move stored in
+         * the transposition table first and then from the center to the sides.
+         */
+        private int[] orderMoves() {
+            int ttMove = NegaMaxStrategy.tableMove(board);
+            int[] moves = new int[NegaMaxStrategy.COLUMN_ORDER.length];
+            int count = 0;
+            if (ttMove >= 0) {
+                moves[count++] = ttMove;
+            }
+            for (int col : NegaMaxStrategy.COLUMN_ORDER) {
+                if (col != ttMove) {
+                    moves[count++] = col;
+                }
+            }
+            return moves;
+        }
+
+        private synchronized NodeTask addChild(NodeTask child) {
+            if (cancelled) {
+                child.cancelTree();
+            }
+            children.add(child);
+            return child;
+        }
+
+        /**
+         * Cancels this task and every task forked below it. Cancelled tasks return as
+         * soon as possible, their values are ignored and not stored.
+         */
+        private synchronized void cancelTree() {
+            cancelled = true;
+            NegaMaxStrategy serial = search;
+            if (serial != null) {
+                serial.abort();
+            }
+            for (NodeTask child : children) {
+                child.cancelTree();
+            }
+        }
+    }
+}
@@ -130,12 +130,60 @@ public class BinaryBoard extends Board {
      */
     public boolean hasWon(Mark mark) {
 
-        long board = color[getPlayerIndex(mark)];
+        return hasFourInARow(color[getPlayerIndex(mark)]);
+    }
+
+    /**
+     * Checks if a player would win by playing in a column, without making the move.
+     *
+     * @param col  The column to check.
+     * @param mark The player making the move.
+     * @return True if the move completes four in a row, false if not.
+     */
+    @Override
+    public boolean isWinningMove(int col, Mark mark) {
+
+        return col >= 0 && col < COLUMNS && columnHasFreeSpace(col)
+                && hasFourInARow(color[getPlayerIndex(mark)] | (1L << height[col]));
+    }
+
+    /**
+     * Checks if a bitboard of one player contains four connected spots.
+     *
+     * @param board The bitboard that will be checked.
+     * @return True if there are four connected spots on any line, false if not.
+     */
+    public static boolean hasFourInARow(long board) {
 
         return hasLRDiagonal(board) || hasHorizontal(board)
                 || hasRLDiagonal(board) || hasVertical(board);
     }
 
+    /**
+     * Gives the index of the bit of a spot in the bitboards of this class. Every column
+     * uses ROWS + 1 bits, the highest bit of a column is never set.
+     *
+     * @param col The column of the spot.
+     * @param row The row of the spot.
+     * @return The index of the bit which represents the spot.
+     */
+    public static int bitIndex(int col, int row) {
+
+        return col * H1 + row;
+    }
+
+    /**
+     * Gives the bitboard of a player. A bit is set for every spot the player occupies,
+     * see {@link #bitIndex(int, int)} for the numbering of the bits.
+     *
+     * @param mark The mark of the player, may not be {@link Mark#EMPTY}.
+     * @return The bitboard of the player.
+     */
+    public long getBitboard(Mark mark) {
+
+        return color[getPlayerIndex(mark)];
+    }
+
     /**
      * Checks if the board is full.
      *
@@ -173,7 +221,7 @@ public class BinaryBoard extends Board {
      * @param newBoard The board that will be checked.
      * @return True if there are four connected spots on a diagonal line, false if not.
      */
-    private boolean hasLRDiagonal(long newBoard) {
+    private static boolean hasLRDiagonal(long newBoard) {
 
         long y = newBoard & (newBoard >> ROWS);
 
@@ -186,7 +234,7 @@ public class BinaryBoard extends Board {
      * @param newBoard The board that will be checked.
      * @return True if there are four connected spots on a diagonal line, false if not.
      */
-    private boolean hasRLDiagonal(long newBoard) {
+    private static boolean hasRLDiagonal(long newBoard) {
 
         long y = newBoard & (newBoard >> H2);
 
@@ -199,7 +247,7 @@ public class BinaryBoard extends Board {
      * @param newBoard The board that will be checked.
      * @return True if there are four connected spots on a horizontal line, false if not.
      */
-    private boolean hasHorizontal(long newBoard) {
+    private static boolean hasHorizontal(long newBoard) {
 
         long y = newBoard & (newBoard >> H1);
 
@@ -212,7 +260,7 @@ public class BinaryBoard extends Board {
      * @param newBoard The board that will be checked.
      * @return True if there are four connected spots on a vertical line, false if not.
      */
-    private boolean hasVertical(long newBoard) {
+    private static boolean hasVertical(long newBoard) {
 
         long y = newBoard & (newBoard >> 1);
 
@@ -303,6 +351,34 @@ public class BinaryBoard extends Board {
 
     }
 
+    /**
+     * Takes back the last move.
+     *
+     * @throws InvalidMoveException if no move has been made yet.
+     */
+    @Override
+    public void unmakemove() throws InvalidMoveException {
+
+        if (nplies > 0) {
+            nplies--;
+            int col = moves[nplies];
+
+            // Decrement the height of the column first, so it points
+            // to the piece that is taken back
+            height[col]--;
+
+            long piece = 1L << height[col];
+            if ((color[0] & piece) != 0) {
+                color[0] ^= piece;
+            } else {
+                color[1] ^= piece;
+            }
+        } else {
+            throw new InvalidMoveException("There is no move to take back");
+        }
+
+    }
+
     /**
      * Makes a string representation.
      *
@@ -341,6 +417,23 @@ public class BinaryBoard extends Board {
 
     }
 
+    /**
+     * Gives the position code of the mirror image of a position. Every column occupies its
+     * own H1 bits of the position code, so mirroring the board is reversing the order of
+     * those groups of bits.
+     *
+     * @param positionCode The position code of a position, see {@link #positionCode()}.
+     * @return The position code of the position mirrored in the center column.
+     */
+    public static long mirrorPositionCode(long positionCode) {
+        long mirrored = 0L;
+        for (int col = 0; col < COLUMNS; col++) {
+            long column = (positionCode >>> (col * H1)) & COL1;
+            mirrored |= column << ((COLUMNS - 1 - col) * H1);
+        }
+        return mirrored;
+    }
+
     /**
      * Makes a deepcopy of the board.
      *
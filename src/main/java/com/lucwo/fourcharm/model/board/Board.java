@@ -72,6 +72,30 @@ public abstract class Board {
     }
 
 
+    /**
+     * Returns true if the given {@link com.lucwo.fourcharm.model.player.Mark} would win
+     * the game by playing in the given column. The board itself is not changed. The move
+     * is made and taken back, subclasses can implement this faster.
+     *
+     * @param col  The column to check.
+     * @param mark The player making the move.
+     * @return {@code true} if the move completes a row, otherwise {@code false}.
+     */
+    public boolean isWinningMove(int col, Mark mark) {
+        boolean winning = false;
+        if (columnHasFreeSpace(col)) {
+            try {
+                makemove(col, mark);
+                winning = hasWon(mark);
+                unmakemove();
+            } catch (InvalidMoveException e) {
+                // Can not happen, the column has free space and the move is taken back
+                throw new IllegalStateException(e);
+            }
+        }
+        return winning;
+    }
+
     /**
      * Returns true if the given {@link com.lucwo.fourcharm.model.player.Mark}
      * has won on this board.
@@ -174,6 +198,19 @@ public abstract class Board {
      */
     public abstract void makemove(int col, Mark mark) throws InvalidMoveException;
 
+    /**
+     * Takes back the last move made on this board, so the board is in the same state
+     * as before that move was made. Search algorithms use this to walk the game tree on
+     * a single board instead of copying the board for every node.
+     *
+     * @throws InvalidMoveException when no move has been made on this board.
+     */
+    /*@
+     * requires getPlieCount() > 0;
+     * ensures getPlieCount() == \old(getPlieCount()) - 1;
+     */
+    public abstract void unmakemove() throws InvalidMoveException;
+
     /**
      * Returns a deepcopy of the board.
      *
@@ -301,6 +301,30 @@ public class ReferenceBoard extends Board {
 
     }
 
+    /**
+     * Takes back the last move made on the board.
+     */
+    @Override
+    public void unmakemove() throws InvalidMoveException {
+
+        if (nplies > 0) {
+            nplies--;
+            int col = moves[nplies];
+
+            boolean needRemoval = true;
+
+            for (int i = ROWS - 1; i >= 0 && needRemoval; i--) {
+                if (board[col][i] != Mark.EMPTY) {
+                    board[col][i] = Mark.EMPTY;
+                    needRemoval = false;
+                }
+            }
+        } else {
+            throw new InvalidMoveException("There is no move to take back");
+        }
+
+    }
+
     /**
      * Resets the board.
      */
@@ -5,32 +5,31 @@
 package com.lucwo.fourcharm.model.player;
 
 import com.lucwo.fourcharm.model.board.Board;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The AsyncPlayer class models a player that makes its decision
  * for a move in a different 'Thread' than the game class.
  * This could for instance be a human connected to the local
  * computer or a player on the other end of a server connection.
- * This class uses in internal queue to provide synchronisation
- * between the game thread and the thread which receives the input
- * from the actual player.
+ * A move which is requested returns a future, which is completed
+ * directly by the thread which receives the input from the actual
+ * player when it calls {@link #queueMove(int)}.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
 public class ASyncPlayer implements Player {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ASyncPlayer.class);
+    /**
+     * The move a requested move is completed with when it is aborted.
+     */
+    public static final int ABORTED_MOVE = -1;
 
     private final Mark mark;
-    private BlockingQueue<Integer> rij;
     private String name;
-    private boolean waiting;
+    private CompletableFuture<Integer> requestedMove;
+    private Integer queuedMove;
 
     /**
      * Create an new humanplayer given an way to communicate with the player.
@@ -41,48 +40,73 @@ public class ASyncPlayer implements Player {
     public ASyncPlayer(String namePie, Mark themark) {
         super();
         mark = themark;
-        rij = new LinkedBlockingQueue<>(1);
         name = namePie;
 
     }
 
     /**
-     * Determines a move.
+     * Determines a move, waits until the move has been queued.
      *
      * @param board The board used to determine the move.
-     * @return The determint move (column).
+     * @return The determint move (column), {@value #ABORTED_MOVE} when the move is aborted.
      */
     public int determineMove(Board board) {
 
-        Integer column = null;
-        waiting = true;
-        while (waiting && column == null) {
-            try {
-                column = rij.poll(1, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                LOGGER.trace("determineMove", e);
-                column = determineMove(board);
-            }
-        }
-        return column == null ? -1 : column;
+        return determineMoveAsync(board).join();
 
     }
 
+    /**
+     * Requests a move. When a move has already been queued the returned future is
+     * completed, otherwise it is completed by the next call of {@link #queueMove(int)}.
+     *
+     * @param board The board used to determine the move.
+     * @return A future which is completed with the move.
+     */
+    @Override
+    public synchronized CompletableFuture<Integer> determineMoveAsync(Board board) {
+        CompletableFuture<Integer> move = new CompletableFuture<>();
+        if (queuedMove != null) {
+            move.complete(queuedMove);
+            queuedMove = null;
+        } else {
+            requestedMove = move;
+        }
+        return move;
+    }
+
+    /**
+     * Completes the requested move with {@value #ABORTED_MOVE}, if a move has been requested.
+     */
     public void abortMove() {
-        waiting = false;
+        CompletableFuture<Integer> move;
+        synchronized (this) {
+            move = requestedMove;
+            requestedMove = null;
+        }
+        if (move != null) {
+            move.complete(ABORTED_MOVE);
+        }
     }
 
     /**
-     * Puts a move in the queueMove.
+     * Completes the requested move with the given column. When no move has been requested
+     * yet the column is kept for the next request, replacing a column which was kept
+     * before. The future is completed on the calling thread.
      *
      * @param col The move.
      */
     public void queueMove(int col) {
-        try {
-            rij.put(col);
-        } catch (InterruptedException e) {
-            LOGGER.trace("queueMove", e);
-            queueMove(col);
+        CompletableFuture<Integer> move;
+        synchronized (this) {
+            move = requestedMove;
+            requestedMove = null;
+            if (move == null) {
+                queuedMove = col;
+            }
+        }
+        if (move != null) {
+            move.complete(col);
         }
     }
 
@@ -7,6 +7,8 @@ package com.lucwo.fourcharm.model.player;
 import com.lucwo.fourcharm.model.ai.GameStrategy;
 import com.lucwo.fourcharm.model.board.Board;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Create an Artificial Intelligence (AI) player given a strategy. This class
  * is responsible for making a (smart) computer player. The LocalAIPlayer
@@ -39,6 +41,17 @@ public class LocalAIPlayer implements Player {
         return strategy.determineMove(board, mark);
     }
 
+    /**
+     * Searches a move on the search executor of the strategy.
+     *
+     * @param board The board used to determine the move.
+     * @return A future which is completed with the move of the strategy.
+     */
+    @Override
+    public CompletableFuture<Integer> determineMoveAsync(Board board) {
+        return strategy.determineMoveAsync(board, mark);
+    }
+
     @Override
     public String getName() {
         return strategy.getClass().getSimpleName();
@@ -7,6 +7,8 @@ package com.lucwo.fourcharm.model.player;
 import com.lucwo.fourcharm.exception.InvalidMoveException;
 import com.lucwo.fourcharm.model.board.Board;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A participant in a game of connect four. A player has a {@link Mark} and can
  * be asked to make a move on a {@link com.lucwo.fourcharm.model.board.Board}
@@ -27,6 +29,19 @@ public interface Player {
      */
     public int determineMove(Board board);
 
+    /**
+     * Determines a move without blocking the caller. The returned future is completed
+     * when the player has decided upon a move. Players which decide immediately can use
+     * this default, which determines the move on the calling thread.
+     *
+     * @param board The board used to determine the move, it must not be changed until the
+     *              returned future has completed.
+     * @return A future which is completed with the move.
+     */
+    public default CompletableFuture<Integer> determineMoveAsync(Board board) {
+        return CompletableFuture.completedFuture(determineMove(board));
+    }
+
     /**
      * Makes a move.
      *
@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.util.BinaryProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The non-blocking connection with one client. A ClientConnection is registered with one
+ * {@link EventLoop}, which reads from the channel and hands every complete line and binary
+ * frame to the {@link ClientHandler} of the connection. Lines sent to the client are queued
+ * and written by the event loop when the channel accepts them, so sending never blocks the
+ * sender.
+ * The bytes of a broadcast {@link Frame} are shared by all connections it is sent to,
+ * every connection queues its own duplicate of the buffer.
+ * <p>
+ * Every {@link Lane} has its own queue. The queues are written in the order of their lanes,
+ * so a move is written before the chat messages and lobby updates which were queued before
+ * it. To keep the lower lanes from starving, every gathering write keeps
+ * {@value #LANE_SHARE} places for each lower lane which has messages waiting.
+ * <p>
+ * An idle connection only holds the bytes of a line which has not been completed yet and
+ * the messages which could not be written yet. The read buffer is shared by all connections
+ * of the event loop.
+ * <p>
+ * The outbound queue of a client which does not read what it is sent is bounded. Above the
+ * soft limit the connection is congested and messages sent with {@link #trySend(ByteBuffer)}
+ * are dropped, above the hard limit nothing is queued anymore and the connection is closed.
+ * The limits are set with the {@value #SOFT_LIMIT_PROPERTY} and {@value #HARD_LIMIT_PROPERTY}
+ * system properties.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class ClientConnection {
+
+    /**
+     * The longest line or frame a client may send, longer lines close the connection.
+     */
+    public static final int MAX_LINE_LENGTH = 8192;
+    /**
+     * Amount of characters the writer of the connection buffers before it encodes them.
+     */
+    public static final int WRITER_BUFFER_SIZE = 256;
+    /**
+     * The most queued messages which are written to the channel with one gathering write.
+     */
+    public static final int MAX_GATHER = 64;
+    /**
+     * Places of a gathering write kept for every lower lane with messages waiting.
+     */
+    public static final int LANE_SHARE = 8;
+    /**
+     * System property with the amount of queued bytes above which a connection is congested.
+     */
+    public static final String SOFT_LIMIT_PROPERTY = "fourcharm.outboundSoftLimit";
+    /**
+     * System property with the amount of queued bytes above which a connection is closed.
+     */
+    public static final String HARD_LIMIT_PROPERTY = "fourcharm.outboundHardLimit";
+    /**
+     * Default amount of queued bytes above which a connection is congested.
+     */
+    public static final int DEF_SOFT_LIMIT = 64 * 1024;
+    /**
+     * Default amount of queued bytes above which a connection is closed.
+     */
+    public static final int DEF_HARD_LIMIT = 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientConnection.class);
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant channel != null;
+    private final SocketChannel channel;
+    //@ invariant outbound != null && outbound.length == Lane.values().length;
+    private final Queue<ByteBuffer>[] outbound;
+    private final AtomicBoolean flushScheduled;
+    private final AtomicBoolean closed;
+    private final AtomicBoolean overflowed;
+    private final AtomicLong queuedBytes;
+    private final AtomicLong highWaterMark;
+    private final AtomicLong dropped;
+    //@ invariant softLimit <= hardLimit;
+    private final long softLimit;
+    private final long hardLimit;
+    //@ invariant loop != null;
+    private volatile EventLoop loop;
+    private volatile SelectionKey key;
+    private ClientHandler handler;
+    private byte[] partialLine;
+    private int partialLength;
+    // The lane of a message which has not been written completely, -1 if there is none
+    private int headLane;
+    // Messages of a gathering write and their lanes, only used while flushing
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private final int[] gatherLanes = new int[MAX_GATHER];
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a new connection with the outbound limits of the system properties. The
+     * connection does not read anything until it is registered with
+     * {@link #register(ClientHandler)}.
+     *
+     * @param channel The channel of the client, it is made non-blocking.
+     * @param loop    The event loop which will handle the connection.
+     * @throws IOException When the channel can not be made non-blocking.
+     */
+    /*@
+        requires channel != null && loop != null;
+     */
+    public ClientConnection(SocketChannel channel, EventLoop loop) throws IOException {
+        this(channel, loop, Integer.getInteger(SOFT_LIMIT_PROPERTY, DEF_SOFT_LIMIT),
+                Integer.getInteger(HARD_LIMIT_PROPERTY, DEF_HARD_LIMIT));
+    }
+
+    /**
+     * Constructs a new connection with the given outbound limits.
+     *
+     * @param channel   The channel of the client, it is made non-blocking.
+     * @param loop      The event loop which will handle the connection.
+     * @param softLimit The amount of queued bytes above which the connection is congested.
+     * @param hardLimit The amount of queued bytes above which the connection is closed.
+     * @throws IOException When the channel can not be made non-blocking.
+     */
+    /*@
+        requires channel != null && loop != null && 0 <= softLimit && softLimit <= hardLimit;
+     */
+    public ClientConnection(SocketChannel channel, EventLoop loop, long softLimit,
+                            long hardLimit) throws IOException {
+        this.channel = channel;
+        this.loop = loop;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+        channel.configureBlocking(false);
+        outbound = createLanes();
+        headLane = -1;
+        flushScheduled = new AtomicBoolean();
+        closed = new AtomicBoolean();
+        overflowed = new AtomicBoolean();
+        queuedBytes = new AtomicLong();
+        highWaterMark = new AtomicLong();
+        dropped = new AtomicLong();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns the event loop which handles this connection.
+     *
+     * @return The event loop of this connection.
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public EventLoop getEventLoop() {
+        return loop;
+    }
+
+    /**
+     * Returns whether this connection is closed.
+     *
+     * @return {@code true} if the connection is closed.
+     */
+    /*@ pure */ public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Returns whether more bytes are waiting to be sent than the soft limit allows.
+     *
+     * @return {@code true} if messages which may be dropped are not sent.
+     */
+    /*@ pure */ public boolean isCongested() {
+        return queuedBytes.get() > softLimit;
+    }
+
+    /**
+     * Returns the amount of bytes which are waiting to be sent.
+     *
+     * @return The size of the outbound queue in bytes.
+     */
+    //@ ensures \result >= 0;
+    /*@ pure */ public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * Returns the largest amount of bytes which have been waiting to be sent at once.
+     *
+     * @return The high-water mark of the outbound queue in bytes.
+     */
+    //@ ensures \result >= getQueuedBytes();
+    /*@ pure */ public long getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    /**
+     * Returns the amount of messages which were not sent because the connection was
+     * congested or full.
+     *
+     * @return The amount of dropped messages.
+     */
+    //@ ensures \result >= 0;
+    /*@ pure */ public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Creates a writer which sends everything written to it to the client when it is
+     * flushed, in the {@link Lane#GAME} lane. The writer may be used from any thread.
+     *
+     * @return A new writer for this connection.
+     */
+    public BufferedWriter createWriter() {
+        return createWriter(Lane.GAME);
+    }
+
+    /**
+     * Creates a writer which sends everything written to it to the client when it is
+     * flushed. The writer may be used from any thread.
+     *
+     * @param lane The lane of the messages written to the writer.
+     * @return A new writer for this connection.
+     */
+    /*@
+        requires lane != null;
+     */
+    public BufferedWriter createWriter(Lane lane) {
+        return new BufferedWriter(new ConnectionWriter(lane), WRITER_BUFFER_SIZE);
+    }
+
+    /**
+     * @return A description of the channel of this connection.
+     */
+    @Override
+    public String toString() {
+        return channel.toString();
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Starts reading from the channel, every line received is handed to the given handler.
+     *
+     * @param clientHandler The handler of the client.
+     */
+    /*@
+        requires clientHandler != null;
+     */
+    public void register(ClientHandler clientHandler) {
+        handler = clientHandler;
+        EventLoop target = loop;
+        target.execute(() -> registerWith(target));
+    }
+
+    /**
+     * Moves this connection to another event loop. Lines which were already read are still
+     * processed by the old loop, everything read after the move is processed by the new one.
+     *
+     * @param target The event loop which will handle this connection.
+     */
+    /*@
+        requires target != null;
+        ensures getEventLoop() == target;
+     */
+    public void moveTo(EventLoop target) {
+        EventLoop source = loop;
+        if (source != target) {
+            loop = target;
+            source.execute(() -> {
+                    if (key != null) {
+                        key.cancel();
+                        key = null;
+                    }
+                    target.execute(() -> registerWith(target));
+                });
+        }
+    }
+
+    /**
+     * Queues bytes to be sent to the client in the {@link Lane#GAME} lane.
+     *
+     * @param bytes The bytes to send.
+     */
+    /*@
+        requires bytes != null;
+     */
+    public void send(ByteBuffer bytes) {
+        send(bytes, Lane.GAME);
+    }
+
+    /**
+     * Queues bytes to be sent to the client. The bytes are written by the event loop, or
+     * directly when called on the event loop thread.
+     *
+     * @param bytes The bytes to send.
+     * @param lane  The lane of the bytes.
+     */
+    /*@
+        requires bytes != null && lane != null;
+     */
+    public void send(ByteBuffer bytes, Lane lane) {
+        if (!closed.get()) {
+            int size = bytes.remaining();
+            long queued = queuedBytes.addAndGet(size);
+            if (queued > hardLimit) {
+                queuedBytes.addAndGet(-size);
+                dropped.incrementAndGet();
+                if (overflowed.compareAndSet(false, true)) {
+                    LOGGER.warn("Closing connection {}, more than {} bytes waiting to be sent",
+                            this, hardLimit);
+                    loop.execute(this::close);
+                }
+            } else {
+                highWaterMark.accumulateAndGet(queued, Math::max);
+                outbound[lane.ordinal()].add(bytes);
+                EventLoop current = loop;
+                if (current.inEventLoop()) {
+                    flushOutbound();
+                } else if (flushScheduled.compareAndSet(false, true)) {
+                    current.execute(this::flushOutbound);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues bytes which may be dropped, like chat messages. They are only sent when the
+     * connection is not congested.
+     *
+     * @param bytes The bytes to send.
+     * @param lane  The lane of the bytes.
+     * @return {@code true} if the bytes have been queued.
+     */
+    /*@
+        requires bytes != null && lane != null;
+     */
+    public boolean trySend(ByteBuffer bytes, Lane lane) {
+        boolean send = !isCongested();
+        if (send) {
+            send(bytes, lane);
+        } else {
+            dropped.incrementAndGet();
+        }
+        return send;
+    }
+
+    /**
+     * Closes the connection and tells the handler the client has disconnected. Closing a
+     * closed connection does nothing.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            SelectionKey currentKey = key;
+            if (currentKey != null) {
+                currentKey.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.trace("close", e);
+            }
+            for (Queue<ByteBuffer> queue : outbound) {
+                queue.clear();
+            }
+            queuedBytes.set(0);
+            if (handler != null) {
+                handler.disconnected();
+            }
+        }
+    }
+
+    /**
+     * Reads the bytes which are available on the channel and processes every complete line.
+     * Called by the event loop when the channel is readable.
+     *
+     * @param buffer The read buffer of the event loop.
+     */
+    void read(ByteBuffer buffer) {
+        buffer.clear();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } catch (IOException e) {
+            LOGGER.trace("read", e);
+            read = -1;
+        }
+        if (read < 0) {
+            close();
+        } else {
+            buffer.flip();
+            processLines(buffer.array(), buffer.limit());
+        }
+    }
+
+    /**
+     * Writes as much of the queued bytes as the channel accepts. The queued messages are
+     * written with gathering writes, so a burst of small messages costs a single system call.
+     * When not everything could be written the event loop is asked to call this method again
+     * when the channel is writable.
+     */
+    synchronized void flushOutbound() {
+        flushScheduled.set(false);
+        boolean written = true;
+        try {
+            int count = gatherOutbound();
+            while (written && count > 0) {
+                queuedBytes.addAndGet(-channel.write(gather, 0, count));
+                int done = 0;
+                while (done < count && !gather[done].hasRemaining()) {
+                    outbound[gatherLanes[done]].poll();
+                    done++;
+                }
+                written = done == count;
+                // A message which is partly written must be finished before any other
+                headLane = written ? -1 : gatherLanes[done];
+                count = written ? gatherOutbound() : 0;
+            }
+        } catch (IOException e) {
+            LOGGER.trace("flushOutbound", e);
+            close();
+        }
+        Arrays.fill(gather, null);
+        SelectionKey currentKey = key;
+        if (currentKey != null && currentKey.isValid() && loop.inEventLoop()) {
+            int ops = written ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+            if (currentKey.interestOps() != ops) {
+                currentKey.interestOps(ops);
+            }
+        }
+    }
+
+    /**
+     * Fills the gather array with the first queued messages, by lane. The message which was
+     * not written completely by the previous write comes first. The lanes are walked one
+     * after the other and only a lane which gets places in the write is iterated. A lower
+     * lane keeps its share while it is not empty, also when its only message is the head
+     * message which is already in the write.
+     *
+     * @return The amount of messages in the gather array.
+     */
+    private int gatherOutbound() {
+        int count = 0;
+        int skipLane = -1;
+        if (headLane >= 0 && !outbound[headLane].isEmpty()) {
+            gather[0] = outbound[headLane].peek();
+            gatherLanes[0] = headLane;
+            count = 1;
+            skipLane = headLane;
+        }
+        for (int lane = 0; lane < outbound.length; lane++) {
+            int reserved = 0;
+            for (int lower = lane + 1; lower < outbound.length; lower++) {
+                if (!outbound[lower].isEmpty()) {
+                    reserved += LANE_SHARE;
+                }
+            }
+            int limit = Math.max(count, gather.length - reserved);
+            if (count < limit && !outbound[lane].isEmpty()) {
+                Iterator<ByteBuffer> messages = outbound[lane].iterator();
+                if (lane == skipLane) {
+                    // The head message is already in the write
+                    messages.next();
+                }
+                while (count < limit && messages.hasNext()) {
+                    gather[count] = messages.next();
+                    gatherLanes[count] = lane;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<ByteBuffer>[] createLanes() {
+        Queue<ByteBuffer>[] lanes = new Queue[Lane.values().length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ConcurrentLinkedQueue<>();
+        }
+        return lanes;
+    }
+
+    private void registerWith(EventLoop target) {
+        if (!closed.get() && loop == target) {
+            try {
+                key = target.register(channel, this);
+                flushOutbound();
+            } catch (IOException e) {
+                LOGGER.trace("registerWith", e);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Splits the received bytes into lines and binary frames. The bytes after the last
+     * complete message are kept until the rest of the message is received. A line end is
+     * never part of a multi-byte UTF-8 character, so the lines can be split before they are
+     * decoded. A message is a binary frame when its first byte is the type of a
+     * {@link BinaryProtocol} frame, its length is read from its header.
+     */
+    private void processLines(byte[] bytes, int length) {
+        int start = 0;
+        while (start < length && !closed.get()) {
+            if (partialLength > 0) {
+                start = completePartial(bytes, start, length);
+            } else if (BinaryProtocol.isFrameType(bytes[start])) {
+                start = processFrame(bytes, start, length);
+            } else {
+                start = processLine(bytes, start, length);
+            }
+        }
+    }
+
+    /**
+     * Handles the line which starts at the given index, or keeps its bytes when the line is
+     * not complete.
+     *
+     * @return The index after the handled bytes.
+     */
+    private int processLine(byte[] bytes, int start, int length) {
+        int end = start;
+        while (end < length && bytes[end] != NEW_LINE) {
+            end++;
+        }
+        int next;
+        if (end < length) {
+            handler.processLine(bytes, start, lineLength(bytes, start, end - start));
+            next = end + 1;
+        } else {
+            appendPartial(bytes, start, length - start);
+            next = length;
+        }
+        return next;
+    }
+
+    /**
+     * Handles the binary frame which starts at the given index, or keeps its bytes when the
+     * frame is not complete.
+     *
+     * @return The index after the handled bytes.
+     */
+    private int processFrame(byte[] bytes, int start, int length) {
+        int size = BinaryProtocol.frameSize(bytes, start, length - start);
+        int next;
+        if (size >= 0 && size <= length - start) {
+            handler.processFrame(bytes, start, size);
+            next = start + size;
+        } else {
+            appendPartial(bytes, start, length - start);
+            next = length;
+        }
+        return next;
+    }
+
+    /**
+     * Adds the received bytes to the incomplete message which was kept, and handles the
+     * message once it is complete.
+     *
+     * @return The index after the used bytes.
+     */
+    private int completePartial(byte[] bytes, int start, int length) {
+        int next;
+        if (BinaryProtocol.isFrameType(partialLine[0])) {
+            int size = BinaryProtocol.frameSize(partialLine, 0, partialLength);
+            int missing = size < 0 ? BinaryProtocol.HEADER_SIZE - partialLength
+                    : size - partialLength;
+            int used = Math.min(missing, length - start);
+            appendPartial(bytes, start, used);
+            next = start + used;
+            if (!closed.get()
+                    && BinaryProtocol.frameSize(partialLine, 0, partialLength) == partialLength) {
+                byte[] frame = partialLine;
+                int frameSize = partialLength;
+                partialLine = null;
+                partialLength = 0;
+                handler.processFrame(frame, 0, frameSize);
+            }
+        } else {
+            int end = start;
+            while (end < length && bytes[end] != NEW_LINE) {
+                end++;
+            }
+            appendPartial(bytes, start, end - start);
+            next = Math.min(length, end + 1);
+            if (end < length && !closed.get()) {
+                byte[] line = partialLine;
+                int lineLength = lineLength(line, 0, partialLength);
+                partialLine = null;
+                partialLength = 0;
+                handler.processLine(line, 0, lineLength);
+            }
+        }
+        return next;
+    }
+
+    private void appendPartial(byte[] bytes, int offset, int length) {
+        int newLength = partialLength + length;
+        if (newLength > MAX_LINE_LENGTH) {
+            LOGGER.warn("Closing connection {}, line longer than {} bytes", this,
+                    MAX_LINE_LENGTH);
+            close();
+        } else {
+            if (partialLine == null) {
+                partialLine = new byte[Math.max(length, WRITER_BUFFER_SIZE)];
+            } else if (partialLine.length < newLength) {
+                partialLine = Arrays.copyOf(partialLine,
+                        Math.min(MAX_LINE_LENGTH, Math.max(newLength, partialLine.length * 2)));
+            }
+            System.arraycopy(bytes, offset, partialLine, partialLength, length);
+            partialLength = newLength;
+        }
+    }
+
+    /**
+     * Returns the length of a line without the carriage return it may end with.
+     */
+    private static int lineLength(byte[] bytes, int offset, int length) {
+        int end = length;
+        if (end > 0 && bytes[offset + end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Writer which encodes the characters written to it and sends them to the client when
+     * it is flushed.
+     */
+    private class ConnectionWriter extends Writer {
+
+        private final StringBuilder pending = new StringBuilder();
+        private final Lane lane;
+
+        ConnectionWriter(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public synchronized void write(char[] chars, int offset, int length) {
+            pending.append(chars, offset, length);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (pending.length() > 0) {
+                send(StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending)), lane);
+                pending.setLength(0);
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
@@ -5,9 +5,8 @@
 package com.lucwo.fourcharm.server;
 
 import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
+import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatClient;
 import nl.woutertimmermans.connect4.protocol.parameters.Extension;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -22,8 +21,6 @@ import java.util.function.Consumer;
 
 public abstract class ClientGroup {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(ClientGroup.class);
-
     //@ invariant clientMap != null;
     private ConcurrentHashMap<String, ClientHandler> clientMap;
     //@ invariant server != null;
@@ -46,8 +43,7 @@ public abstract class ClientGroup {
         requires name != null;
      */
     public boolean clientNameExists(String name) {
-        Boolean result = clientMap.searchKeys(4, clientName -> clientName.equals(name));
-        return result != null && result == true;
+        return clientMap.containsKey(name);
     }
 
 
@@ -124,13 +120,47 @@ public abstract class ClientGroup {
     }
 
     public void broadcastChat(ClientHandler client, String message) throws C4Exception {
-        forEveryClient(clientHandler -> {
-                try {
-                    clientHandler.getChatClient().message(client.getName(), message);
-                } catch (C4Exception e) {
-                    LOGGER.trace("broadcastChat", e);
-                }
-            });
+        broadcastChat(chatFrame(client, message));
+    }
+
+    /**
+     * Sends an encoded chat message to every client in this group which supports chat.
+     *
+     * @param frame The encoded chat message.
+     */
+    /*@
+        requires frame != null;
+     */
+    public void broadcastChat(Frame frame) {
+        long start = System.nanoTime();
+        forEveryClient(clientHandler -> clientHandler.sendChat(frame));
+        server.getMetrics().broadcastSent(System.nanoTime() - start);
+    }
+
+    /**
+     * Sends an encoded message to every client in this group.
+     *
+     * @param frame The encoded message.
+     */
+    /*@
+        requires frame != null;
+     */
+    public void broadcast(Frame frame) {
+        long start = System.nanoTime();
+        forEveryClient(clientHandler -> clientHandler.send(frame));
+        server.getMetrics().broadcastSent(System.nanoTime() - start);
+    }
+
+    /**
+     * Encodes a chat message once, so it can be sent to many clients.
+     *
+     * @param client  The client which sent the message.
+     * @param message The message.
+     * @return The encoded chat message.
+     * @throws C4Exception When the message can not be encoded.
+     */
+    public static Frame chatFrame(ClientHandler client, String message) throws C4Exception {
+        return Frame.encode(out -> new ChatClient.Client(out).message(client.getName(), message));
     }
 
     public void globalChat(ClientHandler client, String message) throws C4Exception {
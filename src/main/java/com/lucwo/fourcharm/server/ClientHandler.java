@@ -4,9 +4,12 @@
 
 package com.lucwo.fourcharm.server;
 
+import com.lucwo.fourcharm.server.CommandParser.Command;
+import com.lucwo.fourcharm.util.BinaryProtocol;
 import com.lucwo.fourcharm.util.ExtensionFactory;
 import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidCommandError;
+import nl.woutertimmermans.connect4.protocol.exceptions.InvalidParameterError;
 import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatClient;
 import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatServer;
 import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreClient;
@@ -17,57 +20,76 @@ import nl.woutertimmermans.connect4.protocol.parameters.LobbyState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.net.Socket;
-import java.nio.charset.Charset;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A ClientHandler is responsible for maintaining a connection with a client and passing received
  * commands to the {@link ClientGroup} the ClientHandler currently resides in.
  * For parsing the received commands from the client the C4 Protocol module is used.
  * The ClientHandler can also be used by otherparts of the server to send commands to the client.
+ * The commands are received by the {@link ClientConnection} of the client, which calls
+ * {@link #processLine(byte[], int, int)} for every text line and
+ * {@link #processFrame(byte[], int, int)} for every binary frame on the thread of its
+ * {@link EventLoop}.
+ * <p>
+ * A client which supports the Binary extension is sent the core game commands in their
+ * {@link BinaryProtocol} encoding, in which it is known by its {@link #getId() id}, and may
+ * send its moves as binary frames.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
 
-public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnable {
+public class ClientHandler implements CoreServer.Iface, ChatServer.Iface {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientHandler.class);
+    private static final AtomicInteger IDS = new AtomicInteger(BinaryProtocol.NO_PLAYER);
 
 // ------------------ Instance variables ----------------
 
+    //@ invariant id != BinaryProtocol.NO_PLAYER;
+    private final int id;
     private ClientGroup group;
     //@ invariant name != null;
     private String name;
-    //@ invariant socket != null;
-    private Socket socket;
+    //@ invariant connection != null;
+    private ClientConnection connection;
     //@ invariant coreClient != null;
     private CoreClient.Client coreClient;
     //@ invariant chatClient != null;
     private ChatClient.Client chatClient;
     //@ invariant lobbyClient != null;
     private LobbyClient.Client lobbyClient;
-    private BufferedReader in;
     private BufferedWriter out;
-    private boolean running;
+    private boolean chatEnabled;
+    private boolean lobbyEnabled;
+    private boolean binaryEnabled;
+    // The clients known when lobby frames started to be skipped, null when up to date
+    private Set<ClientHandler> missedLobby;
+    // The latest lobby batch the client knows about, -1 before it got a snapshot
+    private long lobbyBatch;
+    private CoreServer.Processor<ClientHandler> coreProcessor;
+    private ChatServer.Processor<ClientHandler> chatProcessor;
     //@ invariant server != null;
     private FourCharmServer server;
 
 // --------------------- Constructors -------------------
 
     /**
-     * Constructs a new ClientHandler with a given socket.
+     * Constructs a new ClientHandler with a given connection.
      *
-     * @param sock The socket which will be used to communicate with the client.
+     * @param conn The connection which will be used to communicate with the client.
      */
     /*@
-        requires sock !=null && s != null;
+        requires conn != null && s != null;
      */
-    public ClientHandler(Socket sock, FourCharmServer s) {
-        socket = sock;
-        running = true;
-        name = sock.toString();
+    public ClientHandler(ClientConnection conn, FourCharmServer s) {
+        id = IDS.incrementAndGet();
+        lobbyBatch = -1;
+        connection = conn;
+        name = conn.toString();
         server = s;
     }
 
@@ -83,6 +105,17 @@ public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnab
         return name;
     }
 
+    /**
+     * Returns the id by which the client is known in binary frames. The id is unique for the
+     * lifetime of the server.
+     *
+     * @return the id of this ClientHandler
+     */
+    //@ ensures \result != BinaryProtocol.NO_PLAYER;
+    /*@ pure */ public int getId() {
+        return id;
+    }
+
     /**
      * Sets the name of this ClientHandler.
      *
@@ -106,6 +139,44 @@ public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnab
         return coreClient;
     }
 
+    /**
+     * Returns the event loop which processes the commands of this client.
+     *
+     * @return the event loop of the connection of this client
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public EventLoop getEventLoop() {
+        return connection.getEventLoop();
+    }
+
+    /**
+     * Returns the connection with the client.
+     *
+     * @return the connection of this client
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public ClientConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns whether the client supports the chat extension.
+     *
+     * @return true if the client can receive chat messages.
+     */
+    /*@ pure */ public boolean isChatEnabled() {
+        return chatEnabled;
+    }
+
+    /**
+     * Returns whether the client supports the binary extension.
+     *
+     * @return true if the core game commands are sent to the client as binary frames.
+     */
+    /*@ pure */ public boolean isBinaryEnabled() {
+        return binaryEnabled;
+    }
+
 
 // ----------------------- Commands ---------------------
 
@@ -162,7 +233,7 @@ public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnab
      */
     @Override
     public void ready() throws C4Exception {
-        LOGGER.info("Received ready for user {}", getName());
+        LOGGER.debug("Received ready for user {}", getName());
         group.ready(this);
     }
 
@@ -177,7 +248,7 @@ public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnab
      */
     @Override
     public void doMove(int col) throws C4Exception {
-        LOGGER.info("Received doMove for user ", getName());
+        LOGGER.debug("Received doMove {} for user {}", col, getName());
         group.doMove(this, col);
     }
 
@@ -194,113 +265,268 @@ public class ClientHandler implements CoreServer.Iface, ChatServer.Iface, Runnab
     }
 
     /**
-     * Starts the input handling of this coreClient.
+     * Processes a command received from the client. Commands which are not recognized
+     * and commands which fail are answered with an error.
      *
-     * @see Thread#run()
+     * @param input The line received from the client.
      */
-    @Override
-    public void run() {
-        init();
-        handleClient();
+    /*@
+        requires input != null && getClientGroup() != null;
+     */
+    public void processLine(String input) {
+        byte[] line = input.getBytes(StandardCharsets.UTF_8);
+        processLine(line, 0, line.length);
     }
 
     /**
-     * Processes the commands received from the client via the {@link java.net.Socket}.
+     * Processes a command received from the client, straight from the bytes of the line.
+     * The keyword is recognized once: ready_for_game and do_move are handled without
+     * creating any strings, the other commands are decoded and handed to the processor
+     * they belong to. Commands which are not recognized and commands which fail are
+     * answered with an error.
+     *
+     * @param line   The bytes of the line, without the line end.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
      */
-    public void handleClient() {
+    /*@
+        requires line != null && getClientGroup() != null;
+     */
+    public void processLine(byte[] line, int offset, int length) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Processing input {}", decode(line, offset, offset + length));
+        }
+        long start = System.nanoTime();
+        try {
+            Command command = CommandParser.parseCommand(line, offset, length);
+            if (command == Command.READY_FOR_GAME) {
+                ready();
+            } else if (command == Command.DO_MOVE) {
+                int argument = CommandParser.argumentStart(line, offset, length);
+                int col = CommandParser.parseColumn(line, argument, offset + length);
+                if (col == CommandParser.INVALID_COLUMN) {
+                    throw new InvalidParameterError("Argument "
+                            + decode(line, argument, offset + length) + " is not valid");
+                }
+                doMove(col);
+            } else {
+                String input = decode(line, offset, offset + length);
+                boolean processed = command != null && (command.isChat()
+                        ? chatProcessor.process(input) : coreProcessor.process(input));
+                if (!processed) {
+                    LOGGER.warn("The command {} is not recognized", input);
+                    throw new InvalidCommandError(input + " is not recognized");
+                }
+            }
+        } catch (C4Exception e) {
+            sendError(e);
+        }
+        server.getMetrics().commandProcessed(System.nanoTime() - start);
+    }
 
-        final String mName = "handleClient";
+    /**
+     * Processes a command the client sent as a binary frame. Only a client which supports
+     * the binary extension may send frames, and the only frame a client sends is its move.
+     * Frames which are not recognized and commands which fail are answered with an error.
+     *
+     * @param frame  The bytes of the frame.
+     * @param offset The index of the type of the frame.
+     * @param size   The size of the frame including its header.
+     */
+    /*@
+        requires frame != null && size >= BinaryProtocol.HEADER_SIZE;
+        requires getClientGroup() != null;
+     */
+    public void processFrame(byte[] frame, int offset, int size) {
+        long start = System.nanoTime();
+        try {
+            if (!binaryEnabled) {
+                throw new InvalidCommandError("Binary frames are only accepted after joining"
+                        + " with the Binary extension");
+            } else if (frame[offset] == BinaryProtocol.DO_MOVE
+                    && size == BinaryProtocol.HEADER_SIZE + 1) {
+                int col = frame[offset + BinaryProtocol.HEADER_SIZE] & 0xFF;
+                if (col >= CommandParser.COLUMNS) {
+                    throw new InvalidParameterError("Argument " + col + " is not valid");
+                }
+                doMove(col);
+            } else {
+                throw new InvalidCommandError("Frame of type " + frame[offset]
+                        + " is not recognized");
+            }
+        } catch (C4Exception e) {
+            sendError(e);
+        }
+        server.getMetrics().commandProcessed(System.nanoTime() - start);
+    }
 
+    private void sendError(C4Exception e) {
+        LOGGER.warn("Sending exception: {}", e.getMessage());
         try {
+            coreClient.error(e.getErrorCode(), e.getMessage());
+        } catch (C4Exception e1) {
+            LOGGER.trace("sendError", e1);
+        }
+    }
 
-            processCommands();
-
-        } catch (IOException e) {
-            LOGGER.trace("handleClient", e);
-        } finally {
-            try {
-                socket.close();
-                group.removeHandler(this);
-                server.stateChange(this, LobbyState.OFFLINE);
-                LOGGER.debug("Client {} disconnected", getName());
-            } catch (IOException e) {
-                LOGGER.trace("handleClient", e);
-            }
+    private static String decode(byte[] line, int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes this client from the server after its connection has been closed.
+     */
+    public void disconnected() {
+        ClientGroup current = group;
+        if (current != null) {
+            current.removeHandler(this);
         }
+        server.stateChange(this, LobbyState.OFFLINE);
+        server.releaseName(this);
+        server.getMetrics().connectionClosed();
+        LOGGER.debug("Client {} disconnected", getName());
+    }
 
+    /**
+     * Moves the connection of this client to the given event loop, so it is handled on the
+     * same thread as the other clients on that loop.
+     *
+     * @param loop The event loop which will handle this client.
+     */
+    /*@
+        requires loop != null;
+        ensures getEventLoop() == loop;
+     */
+    public void moveTo(EventLoop loop) {
+        connection.moveTo(loop);
+    }
 
+    /**
+     * Sends an encoded frame to the client, in its binary encoding when the client supports
+     * it.
+     *
+     * @param frame The frame to send.
+     */
+    /*@
+        requires frame != null;
+     */
+    public void send(Frame frame) {
+        connection.send(frame.getBytes(binaryEnabled));
     }
 
-    private void processCommands() throws IOException {
-        CoreServer.Processor coreProcessor = new CoreServer.Processor<>(this);
-        ChatServer.Processor chatProcessor = new ChatServer.Processor<>(this);
+    /**
+     * Sends an encoded chat frame to the client, if the client supports the chat extension.
+     * Chat is dropped while the connection is congested.
+     *
+     * @param frame The chat frame to send.
+     */
+    /*@
+        requires frame != null;
+     */
+    public void sendChat(Frame frame) {
+        if (chatEnabled) {
+            connection.trySend(frame.getBytes(), Lane.CHAT);
+        }
+    }
 
-        String input = in == null ? null : in.readLine();
-        while (running && input != null) {
-            LOGGER.info("Processing input {}", input);
-            try {
-                boolean processed = coreProcessor.process(input);
-                if (!processed) {
-                    processed = chatProcessor.process(input);
-                }
-                if (!processed) {
-                    LOGGER.warn("The command {} is not recognized", input);
-                    C4Exception error = new InvalidCommandError(input + " is not recognized");
-                    coreClient.error(error.getErrorCode(), error.getMessage());
-                }
-            } catch (C4Exception e) {
+    /**
+     * Sends the delta of the latest lobby batch to the client, if the client supports the
+     * lobby extension. A delta which is part of the snapshot the client got is skipped, a
+     * client which has not got a snapshot yet gets the latest snapshot instead.
+     *
+     * @param frame The lobby frame to send.
+     */
+    /*@
+        requires frame != null;
+     */
+    public synchronized void sendLobby(Frame frame) {
+        if (lobbyEnabled) {
+            LobbyStates states = server.getLobbyStates();
+            long batch = states.getBatch();
+            if (lobbyBatch < 0) {
+                states.sendSnapshot(this);
+            } else if (batch > lobbyBatch) {
+                lobbyBatch = batch;
+                sendLobbyFrame(frame);
+            }
+        }
+    }
 
-                LOGGER.warn("Sending exception: {}", e.getMessage());
-                try {
-                    coreClient.error(e.getErrorCode(), e.getMessage());
-                } catch (C4Exception e1) {
-                    LOGGER.trace("processCommands", e1);
-                }
+    /**
+     * Sends the states of all clients to the client, if the client supports the lobby
+     * extension and does not know a later batch already.
+     *
+     * @param snapshot The states of all clients.
+     * @param batch    The number of the latest batch in the snapshot.
+     */
+    /*@
+        requires snapshot != null;
+     */
+    public synchronized void sendLobbySnapshot(Frame snapshot, long batch) {
+        if (lobbyEnabled && batch > lobbyBatch) {
+            lobbyBatch = batch;
+            if (snapshot.size() > 0) {
+                sendLobbyFrame(snapshot);
+            }
+        }
+    }
 
+    /**
+     * Sends a lobby frame. While the connection is congested the frames are skipped, the
+     * client gets one frame with all changes it missed instead of the first frame after that.
+     */
+    private void sendLobbyFrame(Frame frame) {
+        LobbyStates states = server.getLobbyStates();
+        if (connection.isCongested()) {
+            if (missedLobby == null) {
+                missedLobby = states.getKnownClients();
             }
-            input = in.readLine();
+        } else if (missedLobby != null) {
+            connection.send(states.catchUp(missedLobby).getBytes(binaryEnabled), Lane.LOBBY);
+            missedLobby = null;
+        } else {
+            connection.send(frame.getBytes(binaryEnabled), Lane.LOBBY);
         }
     }
 
+    /**
+     * Closes the connection with the client.
+     */
     public void shutdown() {
-        try {
-            socket.close();
-        } catch (IOException e) {
-            LOGGER.trace("shutdown", e);
-        }
-        running = false;
+        connection.close();
     }
 
 
+    /**
+     * Creates the protocol clients used to send commands to the client and the processors
+     * of the commands received from it.
+     */
     public void init() {
-        out = null;
-        in = null;
-        try {
-            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
-                    Charset.forName("UTF-8")));
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
-                    Charset.forName("UTF-8")));
-        } catch (IOException e) {
-            LOGGER.trace("init", e);
-        }
+        out = connection.createWriter();
 
         coreClient = new CoreClient.Client(out);
         chatClient = new ChatClient.Client(null);
         lobbyClient = new LobbyClient.Client(null);
+        coreProcessor = new CoreServer.Processor<>(this);
+        chatProcessor = new ChatServer.Processor<>(this);
     }
 
 
     public void registerExtensions(Set<Extension> extensions) {
         Extension chat = ExtensionFactory.chat();
         Extension lobby = ExtensionFactory.lobby();
+        Extension binary = ExtensionFactory.binary();
 
         if (extensions != null) {
             if (extensions.contains(chat)) {
-                chatClient = new ChatClient.Client(out);
+                chatClient = new ChatClient.Client(connection.createWriter(Lane.CHAT));
+                chatEnabled = true;
             }
             if (extensions.contains(lobby)) {
-                lobbyClient = new LobbyClient.Client(out);
+                lobbyClient = new LobbyClient.Client(connection.createWriter(Lane.LOBBY));
+                lobbyEnabled = true;
             }
+            binaryEnabled = extensions.contains(binary);
         }
 
     }
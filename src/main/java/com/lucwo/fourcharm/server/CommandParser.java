@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recognizes the commands clients send to the server straight from the bytes of a line, so
+ * a line is looked at once and only the arguments which are needed become strings. The
+ * keyword of a line decides which processor handles it, the commands without text
+ * arguments are parsed here completely.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class CommandParser {
+
+    /**
+     * Amount of columns of the board the protocol plays on.
+     */
+    public static final int COLUMNS = 7;
+    /**
+     * Returned by {@link #parseColumn(byte[], int, int)} when the argument is not a column.
+     */
+    public static final int INVALID_COLUMN = -1;
+
+    private static final byte SPACE = ' ';
+    private static final Command[] COMMANDS = Command.values();
+
+    private CommandParser() {
+        // Hide the public constructor
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Recognizes the keyword at the start of a line.
+     *
+     * @param line   The bytes of the line.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
+     * @return The command, null when the keyword is not known.
+     */
+    /*@
+        requires line != null && 0 <= offset && 0 <= length && offset + length <= line.length;
+     */
+    public static Command parseCommand(byte[] line, int offset, int length) {
+        int end = offset + keywordLength(line, offset, length);
+        Command result = null;
+        for (int i = 0; i < COMMANDS.length && result == null; i++) {
+            if (COMMANDS[i].matches(line, offset, end)) {
+                result = COMMANDS[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the first argument of a line.
+     *
+     * @param line   The bytes of the line.
+     * @param offset The index of the first byte of the line.
+     * @param length The length of the line.
+     * @return The index of the byte after the space which follows the keyword, or the end of
+     * the line when there are no arguments.
+     */
+    /*@
+        requires line != null && 0 <= offset && 0 <= length && offset + length <= line.length;
+     */
+    public static int argumentStart(byte[] line, int offset, int length) {
+        int keyword = keywordLength(line, offset, length);
+        return offset + Math.min(length, keyword + 1);
+    }
+
+    /**
+     * Parses the argument of a do_move command.
+     *
+     * @param line  The bytes of the line.
+     * @param start The index of the first byte of the argument.
+     * @param end   The index after the last byte of the argument.
+     * @return The column, or {@link #INVALID_COLUMN} when the argument is not a column.
+     */
+    /*@
+        requires line != null && 0 <= start && start <= end && end <= line.length;
+        ensures \result == INVALID_COLUMN || (0 <= \result && \result < COLUMNS);
+     */
+    public static int parseColumn(byte[] line, int start, int end) {
+        int column = end > start ? 0 : INVALID_COLUMN;
+        for (int i = start; i < end && column != INVALID_COLUMN; i++) {
+            int digit = line[i] - '0';
+            if (digit >= 0 && digit <= 9 && column * 10 + digit < COLUMNS) {
+                column = column * 10 + digit;
+            } else {
+                column = INVALID_COLUMN;
+            }
+        }
+        return column;
+    }
+
+    private static int keywordLength(byte[] line, int offset, int length) {
+        int keyword = 0;
+        while (keyword < length && line[offset + keyword] != SPACE) {
+            keyword++;
+        }
+        return keyword;
+    }
+
+    /**
+     * The commands a client can send to the server.
+     */
+    public enum Command {
+        JOIN("join", false),
+        READY_FOR_GAME("ready_for_game", false),
+        DO_MOVE("do_move", false),
+        ERROR("error", false),
+        CHAT_GLOBAL("chat_global", true),
+        CHAT_LOCAL("chat_local", true);
+
+        private final byte[] keyword;
+        private final boolean chat;
+
+        Command(String word, boolean chatCommand) {
+            keyword = word.getBytes(StandardCharsets.US_ASCII);
+            chat = chatCommand;
+        }
+
+        /**
+         * @return true if the command belongs to the chat extension.
+         */
+        public boolean isChat() {
+            return chat;
+        }
+
+        private boolean matches(byte[] line, int start, int end) {
+            boolean result = end - start == keyword.length;
+            for (int i = 0; i < keyword.length && result; i++) {
+                result = line[start + i] == keyword[i];
+            }
+            return result;
+        }
+    }
+}
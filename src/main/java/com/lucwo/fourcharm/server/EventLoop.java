@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread which handles the input and output of many {@link ClientConnection}s using
+ * a {@link Selector}. The lines received from a connection are processed on the thread of
+ * its event loop, so the commands of all clients on one loop are handled one at a time.
+ * <p>
+ * Other threads hand work to the loop with {@link #execute(Runnable)}. The tasks are run
+ * by the loop thread before it handles the connections which are ready.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class EventLoop implements Runnable {
+
+    /**
+     * Size of the buffer used to read from the connections of one loop.
+     */
+    public static final int READ_BUFFER_SIZE = 8192;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoop.class);
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant selector != null;
+    private final Selector selector;
+    //@ invariant tasks != null;
+    private final Queue<Runnable> tasks;
+    //@ invariant readBuffer != null;
+    private final ByteBuffer readBuffer;
+    //@ invariant thread != null;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a new event loop. The loop is started with {@link #start()}.
+     *
+     * @param name The name of the thread of the loop.
+     * @throws IOException When no selector can be opened.
+     */
+    /*@
+        requires name != null;
+     */
+    public EventLoop(String name) throws IOException {
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>();
+        // All connections of the loop are read one at a time, so they can share one buffer
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        thread = new Thread(this, name);
+        running = true;
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns whether the current thread is the thread of this loop.
+     *
+     * @return {@code true} when called from the event loop thread.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Starts the thread of this loop.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Runs a task on the thread of this loop.
+     *
+     * @param task The task to run.
+     */
+    /*@
+        requires task != null;
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a channel with the selector of this loop, so its connection is told when
+     * it can be read or written. Must be called on the thread of this loop.
+     *
+     * @param channel    The channel to register.
+     * @param connection The connection the channel belongs to.
+     * @return The key of the registration.
+     * @throws ClosedChannelException When the channel is closed.
+     */
+    /*@
+        requires inEventLoop() && channel != null && connection != null;
+     */
+    SelectionKey register(SocketChannel channel, ClientConnection connection)
+            throws ClosedChannelException {
+        return channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    /**
+     * Handles the connections of this loop until the loop is shut down.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                LOGGER.trace("run", e);
+            }
+            runTasks();
+            handleSelectedKeys();
+        }
+        closeConnections();
+    }
+
+    /**
+     * Stops the loop and closes all its connections.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void runTasks() {
+        Runnable task = tasks.poll();
+        while (task != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Task of event loop {} failed", thread.getName(), e);
+            }
+            task = tasks.poll();
+        }
+    }
+
+    private void handleSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            ClientConnection connection = (ClientConnection) key.attachment();
+            try {
+                if (key.isValid() && key.isReadable()) {
+                    connection.read(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flushOutbound();
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("Closing connection {} after an error", connection, e);
+                connection.close();
+            }
+        }
+    }
+
+    private void closeConnections() {
+        for (SelectionKey key : selector.keys()) {
+            ((ClientConnection) key.attachment()).close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.trace("closeConnections", e);
+        }
+    }
+}
@@ -14,10 +14,14 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -25,12 +29,38 @@ import java.util.function.Consumer;
  * at a given time there are no players with the same name. This class also maintains a list of
  * GameGroups and uses {@link com.lucwo.fourcharm.server.PreLobbyGroup} and
  * {@link com.lucwo.fourcharm.server.LobbyGroup} to model the state of clients.
+ * <p>
+ * Connections are accepted on a {@link ServerSocketChannel} and divided over a small,
+ * fixed amount of {@link EventLoop}s, which handle the input and output of all clients
+ * without a thread per client.
+ * <p>
+ * When the {@value #JOURNAL_PROPERTY} system property names a directory, the games are
+ * recorded in a {@link GameJournal} there. The games which were in progress when the server
+ * died are resumed when both of their players are ready in the lobby again. A player of such
+ * a game waits for its opponent for {@value #RESUME_PATIENCE} milliseconds before it is
+ * paired with anyone else.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
 public class FourCharmServer {
 
     public static final Logger LOGGER = LoggerFactory.getLogger(FourCharmServer.class);
+    /**
+     * Default amount of event loops, one for every processor.
+     */
+    public static final int DEF_EVENT_LOOPS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Maximum amount of pending connections which have not been accepted yet.
+     */
+    public static final int ACCEPT_BACKLOG = 128;
+    /**
+     * System property with the directory of the game journal.
+     */
+    public static final String JOURNAL_PROPERTY = "fourcharm.journal";
+    /**
+     * Milliseconds a player of a recovered game waits for its opponent.
+     */
+    public static final long RESUME_PATIENCE = TimeUnit.SECONDS.toMillis(30);
 
     //@ invariant lobby != null;
     private ClientGroup lobby;
@@ -38,11 +68,21 @@ public class FourCharmServer {
     private ClientGroup preLobby;
     //@ invariant games != null;
     private ConcurrentHashMultiset<GameGroup> games;
-    private boolean running;
-    private ServerSocket serverSocket;
+    private volatile boolean running;
+    private ServerSocketChannel serverSocket;
     private int poort;
+    //@ invariant eventLoops != null && eventLoops.length > 0;
+    private EventLoop[] eventLoops;
     //@ invariant lobbyStates != null;
-    private Map<ClientHandler, LobbyState> lobbyStates;
+    private LobbyStates lobbyStates;
+    //@ invariant names != null;
+    private NameRegistry names;
+    //@ invariant matchmaker != null;
+    private Matchmaker matchmaker;
+    //@ invariant metrics != null;
+    private ServerMetrics metrics;
+    //@ invariant journal != null;
+    private GameJournal journal;
 
     /**
      * Constructs a new FourCharmServer given a specific port.
@@ -50,16 +90,34 @@ public class FourCharmServer {
      * @param port The port the new server will use.
      */
     public FourCharmServer(int port) {
+        this(port, DEF_EVENT_LOOPS);
+    }
+
+    /**
+     * Constructs a new FourCharmServer given a specific port and amount of event loops.
+     *
+     * @param port  The port the new server will use.
+     * @param loops The amount of event loops which handle the clients.
+     */
+    /*@
+        requires loops > 0;
+     */
+    public FourCharmServer(int port, int loops) {
+        eventLoops = new EventLoop[loops];
         lobby = new LobbyGroup(this);
         preLobby = new PreLobbyGroup(lobby, this);
         games = ConcurrentHashMultiset.create();
         running = true;
         poort = port;
-        lobbyStates = new ConcurrentHashMap<>();
+        lobbyStates = new LobbyStates(this::broadcastLobby);
+        names = new NameRegistry();
+        matchmaker = new Matchmaker(this::startGame);
+        metrics = new ServerMetrics(this);
+        journal = new GameJournal();
     }
 
     public int getSocketPort() {
-        return serverSocket.getLocalPort();
+        return serverSocket.socket().getLocalPort();
     }
 
     /**
@@ -70,20 +128,50 @@ public class FourCharmServer {
      * false if there does not exist another client with the same name.
      */
     public boolean hasClientWithName(String name) {
-        boolean nameExistsinGame = false;
-        for (ClientGroup cG : games) {
-            nameExistsinGame = cG.clientNameExists(name);
-            if (nameExistsinGame) {
-                break;
-            }
-        }
-        return nameExistsinGame || lobby.clientNameExists(name);
+        return names.isReserved(name);
+    }
+
+    /**
+     * Reserves a name for a client which joins the server. The name stays reserved until
+     * {@link #releaseName(ClientHandler)} is called for the client.
+     *
+     * @param name   The name the client wants to use.
+     * @param client The client which joins.
+     * @return true if the name has been reserved, false if another client uses it.
+     */
+    /*@
+        requires name != null && client != null;
+     */
+    public boolean reserveName(String name, ClientHandler client) {
+        return names.reserve(name, client);
+    }
+
+    /**
+     * Releases the name of a client which leaves the server.
+     *
+     * @param client The client which leaves.
+     */
+    /*@
+        requires client != null;
+     */
+    public void releaseName(ClientHandler client) {
+        names.release(client.getName(), client);
     }
 
 
     public void openSocket() throws ServerStartException {
         try {
-            serverSocket = new ServerSocket(poort, 10, InetAddress.getLocalHost());
+            serverSocket = ServerSocketChannel.open();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLocalHost(), poort),
+                    ACCEPT_BACKLOG);
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop("EventLoop-" + i);
+                eventLoops[i].start();
+            }
+            lobbyStates.start();
+            matchmaker.start();
+            metrics.register();
+            openJournal();
             LOGGER.info("Listening for connections on port {}", getSocketPort());
         } catch (IOException e) {
             LOGGER.trace("main", e);
@@ -92,7 +180,18 @@ public class FourCharmServer {
     }
 
     /**
-     * Starts the server.
+     * Opens the game journal when a directory has been configured.
+     */
+    private void openJournal() throws IOException {
+        String directory = System.getProperty(JOURNAL_PROPERTY);
+        if (directory != null) {
+            journal.open(Paths.get(directory));
+        }
+    }
+
+    /**
+     * Starts the server. Accepts connections until the server is stopped and hands every
+     * connection to the next event loop.
      */
     public void startServer() {
 
@@ -102,13 +201,15 @@ public class FourCharmServer {
 
         while (running) {
             try {
-                Socket sock = serverSocket.accept();
-                LOGGER.debug("Incoming connection from {}", sock.getInetAddress());
-                ClientHandler client = new ClientHandler(sock, this);
+                SocketChannel channel = serverSocket.accept();
+                LOGGER.debug("Incoming connection from {}", channel.getRemoteAddress());
+                EventLoop loop = eventLoops[clientCount % eventLoops.length];
+                ClientConnection connection = new ClientConnection(channel, loop);
+                ClientHandler client = new ClientHandler(connection, this);
+                client.init();
+                metrics.connectionOpened();
                 preLobby.addHandler(client);
-                Thread t = new Thread(client);
-                t.setName("ClientHandler-" + clientCount);
-                t.start();
+                connection.register(client);
                 clientCount++;
             } catch (IOException e) {
                 LOGGER.trace("startServer", e);
@@ -126,6 +227,7 @@ public class FourCharmServer {
      */
     public void addGame(GameGroup game) {
         games.add(game);
+        metrics.gameStarted();
     }
 
     /**
@@ -135,7 +237,80 @@ public class FourCharmServer {
      * @param game the game that will be removed
      */
     public void removeGame(GameGroup game) {
-        games.remove(game);
+        if (games.remove(game)) {
+            metrics.gameFinished();
+        }
+    }
+
+    /**
+     * Starts a game between two clients which have been paired by the matchmaker. The game
+     * is created on the event loop of the second client, which will handle both clients.
+     * A client which disconnected or left the lobby before that has no game, the other
+     * client waits for a new partner instead. When the clients are the players of a
+     * recovered game, that game is resumed with the players in their recorded order.
+     *
+     * @param client1 The client which will be player 1.
+     * @param client2 The client which will be player 2.
+     */
+    /*@
+        requires client1 != null && client2 != null;
+     */
+    public void startGame(ClientHandler client1, ClientHandler client2) {
+        GameJournal.RecoveredGame recovered = journal.getRecoveredGame(client1.getName());
+        if (recovered == null || recovered != journal.getRecoveredGame(client2.getName())) {
+            startGame(client1, client2, null);
+        } else if (recovered.getPlayer1().equals(client1.getName())) {
+            startGame(client1, client2, recovered);
+        } else {
+            startGame(client2, client1, recovered);
+        }
+    }
+
+    private void startGame(ClientHandler client1, ClientHandler client2,
+                           GameJournal.RecoveredGame recovered) {
+        client2.getEventLoop().execute(() -> {
+                matchmaker.release(client1);
+                matchmaker.release(client2);
+                if (inLobby(client1) && inLobby(client2)) {
+                    List<Integer> moves = Collections.emptyList();
+                    if (recovered != null && journal.resumeGame(recovered)) {
+                        LOGGER.info("Resuming game of {} and {}", client1.getName(),
+                                client2.getName());
+                        moves = recovered.getMoves();
+                    }
+                    GameGroup game = new GameGroup(this, client1, client2, moves);
+                    addGame(game);
+                    game.startGame();
+                } else {
+                    LOGGER.debug("Not starting the game of {} and {}, a player left",
+                            client1.getName(), client2.getName());
+                    for (ClientHandler client : Arrays.asList(client1, client2)) {
+                        if (inLobby(client)) {
+                            waitForGame(client);
+                        }
+                    }
+                }
+            });
+    }
+
+    private boolean inLobby(ClientHandler client) {
+        return client.getClientGroup() == lobby && !client.getConnection().isClosed();
+    }
+
+    /**
+     * Lets a client which is ready wait for a game. A player of a recovered game waits for
+     * its opponent first, so the game can be resumed when the opponent is ready as well.
+     *
+     * @param client The client which is ready.
+     * @return false if the client was already waiting.
+     */
+    /*@
+        requires client != null;
+     */
+    public boolean waitForGame(ClientHandler client) {
+        GameJournal.RecoveredGame game = journal.getRecoveredGame(client.getName());
+        return game == null ? matchmaker.enqueue(client) : matchmaker.enqueue(client,
+                game.getOpponent(client.getName()), RESUME_PATIENCE);
     }
 
     /**
@@ -151,8 +326,72 @@ public class FourCharmServer {
         games.forEach(cG -> cG.forEveryClient(ClientHandler::shutdown));
         preLobby.forEveryClient(ClientHandler::shutdown);
         lobby.forEveryClient(ClientHandler::shutdown);
+        lobbyStates.stop();
+        matchmaker.stop();
+        metrics.unregister();
+        journal.close();
+        for (EventLoop loop : eventLoops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+
+
+    }
+
+    /**
+     * Returns the matchmaker which pairs the clients in the lobby.
+     *
+     * @return the matchmaker of this server
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    /**
+     * Returns the lobby states of the clients on this server.
+     *
+     * @return the lobby states of this server
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public LobbyStates getLobbyStates() {
+        return lobbyStates;
+    }
 
+    /**
+     * Returns the journal in which the games on this server are recorded.
+     *
+     * @return the game journal of this server
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public GameJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the metrics of this server.
+     *
+     * @return the metrics of this server
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public ServerMetrics getMetrics() {
+        return metrics;
+    }
 
+    /**
+     * Performs an action for every client on this server, in the pre-lobby, the lobby and
+     * the games.
+     *
+     * @param action The action to perform.
+     */
+    /*@
+        requires action != null;
+     */
+    public void forEveryClient(Consumer<ClientHandler> action) {
+        preLobby.forEveryClient(action);
+        lobby.forEveryClient(action);
+        games.forEach(game -> game.forEveryClient(action));
     }
 
     /**
@@ -168,49 +407,50 @@ public class FourCharmServer {
         requires client != null
      */
     public void globalChat(ClientHandler client, String message) throws C4Exception {
-        lobby.broadcastChat(client, message);
-        games.forEach(game -> {
-                try {
-                    game.broadcastChat(client, message);
-                } catch (C4Exception e) {
-                    LOGGER.trace("globalChat", e);
-                }
-            });
+        Frame frame = ClientGroup.chatFrame(client, message);
+        lobby.broadcastChat(frame);
+        games.forEach(game -> game.broadcastChat(frame));
 
     }
 
 
+    /**
+     * Sends the states of all clients to a client which has just entered the lobby.
+     *
+     * @param client The client which should get all states.
+     */
     /*@
         requires client != null;
      */
     public void sendCurrentStates(ClientHandler client) {
-        for (Map.Entry<ClientHandler, LobbyState> e : lobbyStates.entrySet()) {
-            try {
-                client.getLobbyClient().stateChange(e.getKey().getName(), e.getValue());
-            } catch (C4Exception e1) {
-                LOGGER.trace("sendCurrentStates", e);
-            }
-        }
+        lobbyStates.sendSnapshot(client);
     }
 
-
+    /**
+     * Records a new lobby state of a client, the other clients are told about it with the
+     * next batch of state changes.
+     *
+     * @param client The client whose state changed.
+     * @param state  The new state of the client.
+     */
     /*@
         requires client != null && state != null;
      */
-    public synchronized void stateChange(ClientHandler client, LobbyState state) {
-        if (state != LobbyState.OFFLINE) {
-            lobbyStates.put(client, state);
-        } else {
-            lobbyStates.remove(client);
-        }
-        Consumer<ClientHandler> alertStateChange = ch -> {
-            try {
-                ch.getLobbyClient().stateChange(client.getName(), state);
-            } catch (C4Exception e) {
-                LOGGER.trace("stateChange", e);
-            }
-        };
-        lobby.forEveryClient(alertStateChange);
-        games.forEach(game -> game.forEveryClient(alertStateChange));
+    public void stateChange(ClientHandler client, LobbyState state) {
+        lobbyStates.stateChange(client, state);
+        metrics.stateChanged();
+    }
+
+    /**
+     * Sends a frame with lobby states to the clients in the lobby and in games.
+     *
+     * @param frame The encoded lobby states.
+     */
+    private void broadcastLobby(Frame frame) {
+        long start = System.nanoTime();
+        Consumer<ClientHandler> sendStates = ch -> ch.sendLobby(frame);
+        lobby.forEveryClient(sendStates);
+        games.forEach(game -> game.forEveryClient(sendStates));
+        metrics.broadcastSent(System.nanoTime() - start);
     }
 }
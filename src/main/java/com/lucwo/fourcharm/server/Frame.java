@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A protocol message which is encoded once and sent to many clients. The message is written
+ * by a protocol client into a buffer, after which the encoded bytes are immutable. Every
+ * recipient gets its own view of the same bytes with {@link #getBytes()}, so broadcasting a
+ * frame to a group does not build or encode the message again for every client.
+ * <p>
+ * A frame of a core game command can also carry its
+ * {@link com.lucwo.fourcharm.util.BinaryProtocol} encoding, which is sent instead of the text
+ * to the clients which support the Binary extension.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class Frame {
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant bytes != null && bytes.isReadOnly();
+    private final ByteBuffer bytes;
+    // The binary encoding of the message, null if it has none
+    private final ByteBuffer binary;
+
+    // --------------------- Constructors -------------------
+
+    private Frame(ByteBuffer encoded, ByteBuffer binaryEncoded) {
+        bytes = encoded.asReadOnlyBuffer();
+        binary = binaryEncoded == null ? null : binaryEncoded.asReadOnlyBuffer();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Encodes the message the encoder writes into a frame.
+     *
+     * @param encoder Writes the message, usually by calling a protocol client which is
+     *                constructed on the given writer.
+     * @return The encoded frame.
+     * @throws C4Exception When the protocol client refuses the message.
+     */
+    /*@
+        requires encoder != null;
+     */
+    public static Frame encode(Encoder encoder) throws C4Exception {
+        StringWriter message = new StringWriter();
+        BufferedWriter out = new BufferedWriter(message);
+        try {
+            encoder.encode(out);
+            out.flush();
+        } catch (IOException e) {
+            // A StringWriter never throws
+            throw new UncheckedIOException(e);
+        }
+        return new Frame(StandardCharsets.UTF_8.encode(message.toString()), null);
+    }
+
+    /**
+     * Makes a frame of a message which only has a binary encoding, like the
+     * {@link com.lucwo.fourcharm.util.BinaryProtocol#PLAYER} frames. It should only be sent
+     * to the clients which support the Binary extension.
+     *
+     * @param encoded The message encoded with {@link com.lucwo.fourcharm.util.BinaryProtocol}.
+     * @return The frame without text.
+     */
+    /*@
+        requires encoded != null;
+        ensures \result.hasBinary() && \result.size() == 0;
+     */
+    public static Frame binaryOnly(byte[] encoded) {
+        return new Frame(ByteBuffer.allocate(0), ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Returns a frame with the same text and the given binary encoding of the message.
+     *
+     * @param encoded The message encoded with {@link com.lucwo.fourcharm.util.BinaryProtocol}.
+     * @return The frame with both encodings.
+     */
+    /*@
+        requires encoded != null;
+        ensures \result.hasBinary();
+     */
+    public Frame withBinary(byte[] encoded) {
+        return new Frame(bytes, ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Returns whether the frame has a binary encoding.
+     *
+     * @return true if the message can be sent to a client which supports the Binary extension
+     * in its binary encoding.
+     */
+    /*@ pure */ public boolean hasBinary() {
+        return binary != null;
+    }
+
+    /**
+     * Returns the encoded message. Every call returns a new buffer positioned at the start
+     * of the message, which shares its content with the frame.
+     *
+     * @return A read-only buffer with the encoded message.
+     */
+    //@ ensures \result.remaining() == size();
+    public ByteBuffer getBytes() {
+        return bytes.duplicate();
+    }
+
+    /**
+     * Returns the encoded message for a client, which is the binary encoding if the client
+     * supports it and the frame has one.
+     *
+     * @param binaryEnabled Whether the client supports the Binary extension.
+     * @return A read-only buffer with the encoded message.
+     */
+    public ByteBuffer getBytes(boolean binaryEnabled) {
+        return binaryEnabled && binary != null ? binary.duplicate() : bytes.duplicate();
+    }
+
+    /**
+     * Returns the length of the encoded message.
+     *
+     * @return The length in bytes.
+     */
+    /*@ pure */ public int size() {
+        return bytes.remaining();
+    }
+
+    /**
+     * @return The encoded message.
+     */
+    @Override
+    public String toString() {
+        return StandardCharsets.UTF_8.decode(getBytes()).toString();
+    }
+
+    /**
+     * Writes a message which is encoded into a {@link Frame}.
+     */
+    @FunctionalInterface
+    public interface Encoder {
+
+        /**
+         * Writes the message to the given writer.
+         *
+         * @param out The writer of the frame.
+         * @throws C4Exception When the protocol client refuses the message.
+         * @throws IOException When writing fails, which the writer of a frame never does.
+         */
+        void encode(BufferedWriter out) throws C4Exception, IOException;
+    }
+}
@@ -4,26 +4,34 @@
 
 package com.lucwo.fourcharm.server;
 
+import com.lucwo.fourcharm.exception.InvalidMoveException;
 import com.lucwo.fourcharm.model.Game;
 import com.lucwo.fourcharm.model.board.BinaryBoard;
 import com.lucwo.fourcharm.model.player.ASyncPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
 import com.lucwo.fourcharm.model.player.Player;
+import com.lucwo.fourcharm.util.BinaryProtocol;
 import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidCommandError;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidMoveError;
 import nl.woutertimmermans.connect4.protocol.exceptions.PlayerDisconnectError;
+import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreClient;
 import nl.woutertimmermans.connect4.protocol.parameters.Extension;
 import nl.woutertimmermans.connect4.protocol.parameters.LobbyState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The GameGroup class extends the ClientGroup abstract class and implements Observer.
  * This class uses the Protocol classes as well. Two Clients play against each other in
- * the GameGroup.
+ * the GameGroup. The moves, move requests and the end of the game are encoded once for
+ * both clients, with a binary encoding for the clients which support the Binary extension.
+ * Every accepted move is recorded in the {@link GameJournal} of the server, a game which
+ * was recovered from the journal is resumed by replaying its moves to both clients.
  *
  * @author Luce Sandfort and Wouter Timmermans
  */
@@ -38,6 +46,12 @@ public class GameGroup extends ClientGroup implements Observer {
     private Map<ClientHandler, ASyncPlayer> playerMap;
     //@ invariant game != null;
     private Game game;
+    //@ invariant removeLock != null;
+    private Lock removeLock;
+    // When the current player was asked for its move
+    private volatile long moveRequested;
+    private volatile boolean ended;
+    private final int gameId;
 
 
     // --------------------- Constructors -------------------
@@ -53,20 +67,68 @@ public class GameGroup extends ClientGroup implements Observer {
         requires theServer != null && client1 != null && client2 != null;
      */
     public GameGroup(FourCharmServer theServer, ClientHandler client1, ClientHandler client2) {
+        this(theServer, client1, client2, Collections.emptyList());
+    }
+
+    /**
+     * Constructs a GameGroup which resumes a game. The moves are made before the game is
+     * started and sent to both clients after the start of the game.
+     *
+     * @param theServer The server that will be used for the GameGroup.
+     * @param client1   The first ClientHandler that will be player 1 in the Game.
+     * @param client2   The second ClientHandler that will be player 2 in the Game.
+     * @param moves     The columns of the moves which were made in the game before.
+     */
+    /*@
+        requires theServer != null && client1 != null && client2 != null && moves != null;
+     */
+    public GameGroup(FourCharmServer theServer, ClientHandler client1, ClientHandler client2,
+                     List<Integer> moves) {
         super(theServer);
         playerMap = new HashMap<>();
+        removeLock = new ReentrantLock();
         ASyncPlayer player1 = new ASyncPlayer(client1.getName(), Mark.P1);
         ASyncPlayer player2 = new ASyncPlayer(client2.getName(), Mark.P2);
         playerMap.put(client1, player1);
         playerMap.put(client2, player2);
+        // Handle both clients on one thread, so their commands never cross threads
+        client1.moveTo(client2.getEventLoop());
         addHandler(client1);
         addHandler(client2);
 
         game = new Game(BinaryBoard.class, player1, player2);
+        GameJournal journal = theServer.getJournal();
+        gameId = journal.gameStarted(client1.getName(), client2.getName());
+        List<Frame> replayed = new ArrayList<>();
+        if (!moves.isEmpty()) {
+            game.start();
+            try {
+                for (int col : moves) {
+                    ClientHandler mover = game.getCurrent() == player1 ? client1 : client2;
+                    int ply = game.plieCount();
+                    game.makeMove(game.getCurrent(), col);
+                    journal.moveMade(gameId, ply, col);
+                    replayed.add(doneMoveFrame(mover, col));
+                }
+            } catch (InvalidMoveException | C4Exception e) {
+                LOGGER.warn("Replaying the moves of the game of {} and {} failed",
+                        client1.getName(), client2.getName(), e);
+            }
+        }
         game.addObserver(this);
         try {
+            // Tell the clients which use binary frames the ids of the players
+            Frame players = Frame.binaryOnly(BinaryProtocol.concat(
+                    BinaryProtocol.player(client1.getId(), client1.getName()),
+                    BinaryProtocol.player(client2.getId(), client2.getName())));
+            forEveryClient(client -> {
+                    if (client.isBinaryEnabled()) {
+                        client.send(players);
+                    }
+                });
             client1.getCoreClient().startGame(client1.getName(), client2.getName());
             client2.getCoreClient().startGame(client1.getName(), client2.getName());
+            replayed.forEach(this::broadcast);
         } catch (C4Exception e) {
             LOGGER.trace("constructor", e);
         }
@@ -106,30 +168,34 @@ public class GameGroup extends ClientGroup implements Observer {
     @Override
     public void doMove(ClientHandler client, int col) throws C4Exception {
 
-
-        if (!game.getBoard().columnHasFreeSpace(col)) {
+        if (!game.getCurrent().getName().equals(client.getName())) {
+            throw new InvalidMoveError("You are not allowed to make a move right now");
+        } else if (!game.isValidMove(col)) {
             throw new InvalidMoveError("Column " + col
                     + " has no free space, please reconsider this move");
-        } else if (game.getCurrent().getName().equals(client.getName())) {
-
+        } else {
+            long turnaround = System.nanoTime() - moveRequested;
+            getServer().getJournal().moveMade(gameId, game.plieCount(), col);
+            broadcast(doneMoveFrame(client, col));
+            getServer().getMetrics().moveMade(turnaround);
             try {
-                forEveryClient(c -> {
-                        try {
-                            c.getCoreClient().doneMove(client.getName(), col);
-                        } catch (C4Exception e) {
-                            LOGGER.trace("doMove", e);
-                        }
-                    });
-                playerMap.get(client).queueMove(col);
-            } catch (IllegalStateException e) {
+                game.makeMove(playerMap.get(client), col);
+            } catch (InvalidMoveException e) {
+                LOGGER.trace("doMove", e);
                 throw new InvalidMoveError("You are not allowed to make a move right now");
             }
-        } else {
-            throw new InvalidMoveError("You are not allowed to make a move right now");
         }
 
     }
 
+    /**
+     * Encodes the message that a client made a move.
+     */
+    private static Frame doneMoveFrame(ClientHandler client, int col) throws C4Exception {
+        return Frame.encode(out -> new CoreClient.Client(out).doneMove(client.getName(), col))
+                .withBinary(BinaryProtocol.doneMove(client.getId(), col));
+    }
+
     /**
      * Sets the status of the player to ready. If there is another player ready as well,
      * a new game will be started.
@@ -154,21 +220,24 @@ public class GameGroup extends ClientGroup implements Observer {
         requires client != null;
      */
     @Override
-    public synchronized void removeClientCallback(ClientHandler client) {
-        if (!game.hasFinished()) {
-
-            forEveryClient(cH -> {
-                    C4Exception c4e = new PlayerDisconnectError("Player " +
-                            client.getName() + " disconnected");
-                    try {
-                        cH.getCoreClient().error(c4e.getErrorCode(), c4e.getMessage());
-                    } catch (C4Exception e) {
-                        LOGGER.trace("removeClientCallback", e);
-                    }
-                });
-            endGame();
+    public void removeClientCallback(ClientHandler client) {
+        removeLock.lock();
+        try {
+            if (!game.hasFinished() && !ended) {
+                forEveryClient(cH -> {
+                        C4Exception c4e = new PlayerDisconnectError("Player " +
+                                client.getName() + " disconnected");
+                        try {
+                            cH.getCoreClient().error(c4e.getErrorCode(), c4e.getMessage());
+                        } catch (C4Exception e) {
+                            LOGGER.trace("removeClientCallback", e);
+                        }
+                    });
+                endGame();
+            }
+        } finally {
+            removeLock.unlock();
         }
-
     }
 
     /*@
@@ -180,27 +249,53 @@ public class GameGroup extends ClientGroup implements Observer {
     }
 
     /**
-     * Starts a new game.
+     * Starts a new game. The game has no thread of its own, every move is made on the event
+     * loop of the two clients when their move command arrives. A resumed game asks the
+     * player whose turn it is for a move. When a client disconnected while the game was
+     * created, the game ends before it starts.
      */
     public void startGame() {
-
-        Thread gameThread = new Thread(game);
-        gameThread.setName("Game" + SimpleTimeZone.UTC_TIME);
-        gameThread.start();
+        forEveryClient(client -> {
+                if (client.getConnection().isClosed()) {
+                    removeHandler(client);
+                    getServer().stateChange(client, LobbyState.OFFLINE);
+                }
+            });
+        if (ended) {
+            LOGGER.debug("Game ended before it started");
+        } else if (game.plieCount() > 0) {
+            update(game, null);
+        } else {
+            game.start();
+        }
     }
 
     /**
      * Ends a game that started before.
      */
     private void endGame() {
+        ended = true;
         game.shutdown();
+        getServer().getJournal().gameEnded(gameId);
         Player winner = game.getWinner();
         final String winnerName = winner == null ? null : winner.getName();
+        int winnerId = BinaryProtocol.NO_PLAYER;
+        for (Map.Entry<ClientHandler, ASyncPlayer> entry : playerMap.entrySet()) {
+            if (entry.getValue() == winner) {
+                winnerId = entry.getKey().getId();
+            }
+        }
+        Frame end = null;
+        try {
+            end = Frame.encode(out -> new CoreClient.Client(out).gameEnd(winnerName))
+                    .withBinary(BinaryProtocol.gameEnd(winnerId));
+        } catch (C4Exception e) {
+            LOGGER.trace("endGame", e);
+        }
+        final Frame gameEnd = end;
         forEveryClient(client -> {
-                try {
-                    client.getCoreClient().gameEnd(winnerName);
-                } catch (C4Exception e) {
-                    LOGGER.trace("startGame", e);
+                if (gameEnd != null) {
+                    client.send(gameEnd);
                 }
                 getServer().getLobby().addHandler(client);
             });
@@ -229,14 +324,14 @@ public class GameGroup extends ClientGroup implements Observer {
                     }
                 }
                 if (client != null) {
-
-                    forEveryClient(cH -> {
-                            try {
-                                cH.getCoreClient().requestMove(currentName);
-                            } catch (C4Exception e) {
-                                LOGGER.trace("update", e);
-                            }
-                        });
+                    moveRequested = System.nanoTime();
+                    try {
+                        broadcast(Frame.encode(out ->
+                                new CoreClient.Client(out).requestMove(currentName))
+                                .withBinary(BinaryProtocol.requestMove(client.getId())));
+                    } catch (C4Exception e) {
+                        LOGGER.trace("update", e);
+                    }
                 }
             } else {
                 endGame();
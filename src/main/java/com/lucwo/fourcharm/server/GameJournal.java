@@ -0,0 +1,658 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only journal of the games on the server, from which the games which were in
+ * progress when the server died can be rebuilt. Every game start, move and game end is
+ * appended as a small record to a memory-mapped segment file, so recording a move is a
+ * copy of a few bytes into memory under a short lock. The segments are forced to disk in
+ * one group commit every {@value #COMMIT_INTERVAL} milliseconds by a thread of the journal,
+ * which also maps the next segment ahead of time and deletes the segments which only hold
+ * games that have ended.
+ * <p>
+ * A record is written before its type byte, so a record which was being written when the
+ * server died reads as the end of the segment. A journal which has not been opened assigns
+ * game ids but records nothing.
+ * <p>
+ * The recovered games are kept until they are resumed. The games which are not resumed
+ * within {@link #RESUME_GRACE} milliseconds after the journal was opened are ended, so their
+ * segments can be deleted.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class GameJournal {
+
+    /**
+     * Default size of a segment file in bytes.
+     */
+    public static final int DEF_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * Milliseconds between two group commits.
+     */
+    public static final long COMMIT_INTERVAL = 10;
+    /**
+     * Games without a move for longer than this amount of milliseconds are not recovered.
+     */
+    public static final long MAX_RESUME_AGE = TimeUnit.DAYS.toMillis(1);
+    /**
+     * Default amount of milliseconds after opening the journal during which the recovered
+     * games can be resumed.
+     */
+    public static final long RESUME_GRACE = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GameJournal.class);
+    private static final byte START = 1;
+    private static final byte MOVE = 2;
+    private static final byte END = 3;
+    // Type, game id, ply, column and timestamp
+    private static final int MOVE_SIZE = 1 + Integer.BYTES + 2 + Long.BYTES;
+    // Type, game id and timestamp
+    private static final int END_SIZE = 1 + Integer.BYTES + Long.BYTES;
+    private static final String SEGMENT_PREFIX = "game-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    // ------------------ Instance variables ----------------
+
+    private final int segmentSize;
+    private final long resumeGrace;
+    // The recovered games which have not been resumed, by the names of their players
+    //@ invariant recovered != null;
+    private final Map<String, RecoveredGame> recovered;
+    // When the recovered games which have not been resumed are ended
+    private long resumeDeadline;
+    // The segment with the start of every game which has not ended
+    //@ invariant firstSegments != null;
+    private final Map<Integer, Integer> firstSegments;
+    // The indices of the segment files, oldest first
+    //@ invariant segments != null;
+    private final Deque<Integer> segments;
+    // Full segments which have not been forced yet
+    //@ invariant unforced != null;
+    private final List<MappedByteBuffer> unforced;
+    private Path directory;
+    private int lastGameId;
+    private MappedByteBuffer current;
+    private int currentSegment;
+    private MappedByteBuffer spare;
+    private boolean dirty;
+    private boolean open;
+    private ScheduledExecutorService committer;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a journal with segments of the default size. Nothing is recorded until the
+     * journal is opened with {@link #open(Path)}.
+     */
+    public GameJournal() {
+        this(DEF_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a journal with segments of the given size.
+     *
+     * @param segmentSize The size of a segment file in bytes.
+     */
+    /*@
+        requires segmentSize > 0;
+     */
+    public GameJournal(int segmentSize) {
+        this(segmentSize, RESUME_GRACE);
+    }
+
+    /**
+     * Constructs a journal with segments of the given size and grace period.
+     *
+     * @param segmentSize The size of a segment file in bytes.
+     * @param resumeGrace The amount of milliseconds after opening the journal during which
+     *                    the recovered games can be resumed.
+     */
+    /*@
+        requires segmentSize > 0 && resumeGrace >= 0;
+     */
+    public GameJournal(int segmentSize, long resumeGrace) {
+        this.segmentSize = segmentSize;
+        this.resumeGrace = resumeGrace;
+        recovered = new HashMap<>();
+        firstSegments = new HashMap<>();
+        segments = new ArrayDeque<>();
+        unforced = new ArrayList<>();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns whether the journal records the games.
+     *
+     * @return true if the journal has been opened and not closed.
+     */
+    /*@ pure */ public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Returns the amount of segment files of the journal.
+     *
+     * @return The amount of segments, including the one which is written.
+     */
+    /*@ pure */ public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the recovered game of a player, when it has not been resumed or ended yet.
+     *
+     * @param player The name of the player.
+     * @return The game, null when the player has no game to resume.
+     */
+    /*@
+        requires player != null;
+     */
+    /*@ pure */ public synchronized RecoveredGame getRecoveredGame(String player) {
+        return recovered.get(player);
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Opens the journal in a directory and starts the group commits. The records of the
+     * segments already in the directory are read first, the games which were in progress
+     * are returned and stay in the journal until they are resumed or their grace period
+     * has passed. New records are written to a new segment.
+     *
+     * @param dir The directory of the segment files, it is created when it does not exist.
+     * @return The games which can be resumed, in the order they were started.
+     * @throws IOException When the directory can not be read or the segment can not be
+     *                     created.
+     */
+    /*@
+        requires dir != null && !isOpen();
+        ensures isOpen();
+     */
+    public List<RecoveredGame> open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        List<Integer> existing = listSegments(dir);
+        Map<Integer, RecoveredGame> games = new LinkedHashMap<>();
+        int lastId = 0;
+        for (int index : existing) {
+            try (FileChannel channel = FileChannel.open(segmentPath(dir, index),
+                    StandardOpenOption.READ)) {
+                ByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+                lastId = Math.max(lastId, read(segment, index, games));
+            }
+        }
+        long now = System.currentTimeMillis();
+        List<RecoveredGame> resumable = new ArrayList<>();
+        for (RecoveredGame game : games.values()) {
+            if (game.isResumable(now)) {
+                resumable.add(game);
+            }
+        }
+
+        synchronized (this) {
+            directory = dir;
+            segments.addAll(existing);
+            currentSegment = existing.isEmpty() ? 0 : existing.get(existing.size() - 1);
+            lastGameId = Math.max(lastGameId, lastId);
+            for (RecoveredGame game : resumable) {
+                firstSegments.put(game.getId(), game.segment);
+                recovered.put(game.getPlayer1(), game);
+                recovered.put(game.getPlayer2(), game);
+            }
+            resumeDeadline = now + resumeGrace;
+            current = map(currentSegment + 1);
+            currentSegment++;
+            segments.add(currentSegment);
+            open = true;
+        }
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "GameJournal");
+                thread.setDaemon(true);
+                return thread;
+            });
+        committer.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL, COMMIT_INTERVAL,
+                TimeUnit.MILLISECONDS);
+        LOGGER.info("Opened game journal in {}, {} games can be resumed", dir,
+                resumable.size());
+        return resumable;
+    }
+
+    /**
+     * Records the start of a game.
+     *
+     * @param player1 The name of the first player.
+     * @param player2 The name of the second player.
+     * @return The id of the game.
+     */
+    /*@
+        requires player1 != null && player2 != null;
+     */
+    public synchronized int gameStarted(String player1, String player2) {
+        lastGameId++;
+        int gameId = lastGameId;
+        byte[] name1 = player1.getBytes(StandardCharsets.UTF_8);
+        byte[] name2 = player2.getBytes(StandardCharsets.UTF_8);
+        int size = 1 + Integer.BYTES + Long.BYTES + 2 * Short.BYTES + name1.length
+                + name2.length;
+        ByteBuffer record = startRecord(size);
+        if (record != null) {
+            record.putInt(gameId).putLong(System.currentTimeMillis());
+            record.putShort((short) name1.length).put(name1);
+            record.putShort((short) name2.length).put(name2);
+            finishRecord(START, size);
+            firstSegments.put(gameId, currentSegment);
+        }
+        return gameId;
+    }
+
+    /**
+     * Records a move which has been accepted.
+     *
+     * @param gameId The id of the game.
+     * @param ply    The amount of moves made in the game before this move.
+     * @param col    The column of the move.
+     */
+    public synchronized void moveMade(int gameId, int ply, int col) {
+        ByteBuffer record = startRecord(MOVE_SIZE);
+        if (record != null) {
+            record.putInt(gameId).put((byte) ply).put((byte) col)
+                    .putLong(System.currentTimeMillis());
+            finishRecord(MOVE, MOVE_SIZE);
+        }
+    }
+
+    /**
+     * Records the end of a game, after which it will not be recovered.
+     *
+     * @param gameId The id of the game.
+     */
+    public synchronized void gameEnded(int gameId) {
+        ByteBuffer record = startRecord(END_SIZE);
+        if (record != null) {
+            record.putInt(gameId).putLong(System.currentTimeMillis());
+            finishRecord(END, END_SIZE);
+            firstSegments.remove(gameId);
+        }
+    }
+
+    /**
+     * Takes a recovered game out of the journal, because it is resumed as a new game. Its
+     * end is recorded, the new game is recorded with a new id.
+     *
+     * @param game The recovered game.
+     * @return false if the game has already been resumed or its grace period has passed.
+     */
+    /*@
+        requires game != null;
+     */
+    public synchronized boolean resumeGame(RecoveredGame game) {
+        boolean resumed = recovered.get(game.getPlayer1()) == game;
+        if (resumed) {
+            recovered.remove(game.getPlayer1(), game);
+            recovered.remove(game.getPlayer2(), game);
+            gameEnded(game.getId());
+        }
+        return resumed;
+    }
+
+    /**
+     * Forces the records written since the previous commit to disk, maps the next segment
+     * when that has not been done yet and deletes the segments which are not needed anymore.
+     * The recovered games which have not been resumed in time are ended first.
+     */
+    public void commit() {
+        List<MappedByteBuffer> buffers;
+        List<Integer> obsolete = new ArrayList<>();
+        Path dir;
+        synchronized (this) {
+            if (!recovered.isEmpty() && System.currentTimeMillis() >= resumeDeadline) {
+                expireRecoveredGames();
+            }
+            buffers = new ArrayList<>(unforced);
+            unforced.clear();
+            if (dirty) {
+                buffers.add(current);
+                dirty = false;
+            }
+            int oldest = currentSegment;
+            for (int segment : firstSegments.values()) {
+                oldest = Math.min(oldest, segment);
+            }
+            while (!segments.isEmpty() && segments.peekFirst() < oldest) {
+                obsolete.add(segments.pollFirst());
+            }
+            dir = directory;
+        }
+        for (MappedByteBuffer buffer : buffers) {
+            buffer.force();
+        }
+        for (int segment : obsolete) {
+            try {
+                Files.deleteIfExists(segmentPath(dir, segment));
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete journal segment {}", segment, e);
+            }
+        }
+        prepareSpare();
+    }
+
+    /**
+     * Ends the recovered games which have not been resumed.
+     */
+    private void expireRecoveredGames() {
+        Set<RecoveredGame> expired = new HashSet<>(recovered.values());
+        recovered.clear();
+        for (RecoveredGame game : expired) {
+            gameEnded(game.getId());
+        }
+        LOGGER.info("{} recovered games were not resumed in time", expired.size());
+    }
+
+    /**
+     * Stops recording, after forcing all records to disk.
+     */
+    public void close() {
+        if (committer != null) {
+            committer.shutdownNow();
+        }
+        synchronized (this) {
+            if (open) {
+                for (MappedByteBuffer buffer : unforced) {
+                    buffer.force();
+                }
+                current.force();
+                unforced.clear();
+                current = null;
+                spare = null;
+                open = false;
+            }
+        }
+    }
+
+    /**
+     * Returns a view on the space of the next record, positioned after its type byte. A new
+     * segment is started when the record does not fit in the current one.
+     *
+     * @return The view, null when the journal is not open.
+     */
+    private ByteBuffer startRecord(int size) {
+        ByteBuffer record = null;
+        if (open && size <= segmentSize) {
+            if (current.remaining() < size) {
+                roll();
+            }
+            if (open) {
+                record = current.duplicate();
+                record.position(current.position() + 1);
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Writes the type of the record, which makes it visible to recovery.
+     */
+    private void finishRecord(byte type, int size) {
+        int start = current.position();
+        current.put(start, type);
+        current.position(start + size);
+        dirty = true;
+    }
+
+    /**
+     * Continues in the next segment. When it can not be created the journal stops
+     * recording.
+     */
+    private void roll() {
+        MappedByteBuffer next = spare;
+        spare = null;
+        try {
+            if (next == null) {
+                next = map(currentSegment + 1);
+            }
+            if (current != null) {
+                unforced.add(current);
+            }
+            currentSegment++;
+            segments.add(currentSegment);
+            current = next;
+        } catch (IOException e) {
+            LOGGER.warn("Could not create journal segment {}, games are not recorded anymore",
+                    currentSegment + 1, e);
+            open = false;
+        }
+    }
+
+    /**
+     * Maps the segment after the current one, so a full segment is replaced without
+     * creating a file under the lock.
+     */
+    private void prepareSpare() {
+        int index;
+        synchronized (this) {
+            index = open && spare == null ? currentSegment + 1 : -1;
+        }
+        if (index >= 0) {
+            try {
+                MappedByteBuffer mapped = map(index);
+                synchronized (this) {
+                    if (open && spare == null && index == currentSegment + 1) {
+                        spare = mapped;
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.trace("prepareSpare", e);
+            }
+        }
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private static Path segmentPath(Path dir, int index) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private static List<Integer> listSegments(Path dir) throws IOException {
+        List<Integer> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    result.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.trace("listSegments", e);
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Reads the records of a segment into the games which have not ended.
+     *
+     * @return The highest game id in the segment.
+     */
+    private static int read(ByteBuffer segment, int index, Map<Integer, RecoveredGame> games) {
+        int lastId = 0;
+        boolean more = true;
+        while (more && segment.hasRemaining()) {
+            byte type = segment.get();
+            try {
+                if (type == START) {
+                    int gameId = segment.getInt();
+                    long time = segment.getLong();
+                    String player1 = readName(segment);
+                    String player2 = readName(segment);
+                    games.put(gameId, new RecoveredGame(gameId, index, player1, player2, time));
+                    lastId = Math.max(lastId, gameId);
+                } else if (type == MOVE) {
+                    int gameId = segment.getInt();
+                    RecoveredGame game = games.get(gameId);
+                    int ply = segment.get();
+                    int col = segment.get();
+                    long time = segment.getLong();
+                    if (game != null) {
+                        game.addMove(ply, col, time);
+                    }
+                    lastId = Math.max(lastId, gameId);
+                } else if (type == END) {
+                    int gameId = segment.getInt();
+                    segment.getLong();
+                    games.remove(gameId);
+                    lastId = Math.max(lastId, gameId);
+                } else {
+                    // The rest of the segment has not been written
+                    more = false;
+                }
+            } catch (BufferUnderflowException e) {
+                LOGGER.trace("read", e);
+                more = false;
+            }
+        }
+        return lastId;
+    }
+
+    private static String readName(ByteBuffer segment) {
+        byte[] name = new byte[segment.getShort() & 0xFFFF];
+        segment.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A game which was in progress according to the journal.
+     */
+    public static final class RecoveredGame {
+
+        private final int id;
+        private final int segment;
+        private final String player1;
+        private final String player2;
+        private final List<Integer> moves;
+        private boolean valid;
+        private long lastActivity;
+
+        private RecoveredGame(int id, int segment, String player1, String player2, long time) {
+            this.id = id;
+            this.segment = segment;
+            this.player1 = player1;
+            this.player2 = player2;
+            moves = new ArrayList<>();
+            valid = true;
+            lastActivity = time;
+        }
+
+        /**
+         * @return The id of the game in the journal.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return The name of the first player.
+         */
+        public String getPlayer1() {
+            return player1;
+        }
+
+        /**
+         * @return The name of the second player.
+         */
+        public String getPlayer2() {
+            return player2;
+        }
+
+        /**
+         * Returns the opponent of a player of this game.
+         *
+         * @param player The name of one of the players.
+         * @return The name of the other player.
+         */
+        public String getOpponent(String player) {
+            return player1.equals(player) ? player2 : player1;
+        }
+
+        /**
+         * @return The columns of the moves which were made, in order.
+         */
+        public List<Integer> getMoves() {
+            return Collections.unmodifiableList(moves);
+        }
+
+        private void addMove(int ply, int col, long time) {
+            // A move which does not follow the previous one means the journal is damaged
+            valid = valid && ply == moves.size();
+            moves.add(col);
+            lastActivity = time;
+        }
+
+        /**
+         * Returns whether the moves can be replayed, the game has not finished and a move was
+         * made recently enough.
+         */
+        private boolean isResumable(long now) {
+            boolean result = valid && now - lastActivity <= MAX_RESUME_AGE;
+            Board board = new BinaryBoard();
+            Mark mark = Mark.P1;
+            for (int i = 0; result && i < moves.size(); i++) {
+                int col = moves.get(i);
+                try {
+                    result = col >= 0 && col < board.getColumns()
+                            && board.columnHasFreeSpace(col);
+                    if (result) {
+                        board.makemove(col, mark);
+                        result = !board.hasWon(mark) && !board.isFull();
+                        mark = mark.other();
+                    }
+                } catch (InvalidMoveException e) {
+                    LOGGER.trace("isResumable", e);
+                    result = false;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+/**
+ * The priority lanes of the messages sent to a client. A {@link ClientConnection} writes the
+ * messages of a lane before those of the lanes after it, so the moves of a game are not
+ * delayed by a flood of chat messages or lobby updates.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public enum Lane {
+    /**
+     * Messages of the core protocol, like the moves of a game.
+     */
+    GAME,
+    /**
+     * Lobby state changes.
+     */
+    LOBBY,
+    /**
+     * Chat messages.
+     */
+    CHAT
+}
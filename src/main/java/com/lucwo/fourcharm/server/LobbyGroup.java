@@ -14,7 +14,8 @@ import java.util.Set;
 /**
  * The LobbyGroup class extends the ClientGroup abstract class. It makes a Lobby and
  * adds Clients to the LobbyGroup. From these Clients, whenever they are ready, 2 are
- * chosen and they will be added to the GameGroup to start a new game. Before a Client
+ * chosen by the {@link Matchmaker} of the server and they will be added to the GameGroup
+ * to start a new game. Before a Client
  * can enter the LobbyGroup, he will be in the PreLobbyGroup as long as he did not give
  * the command 'join'.
  *
@@ -24,7 +25,6 @@ public class LobbyGroup extends ClientGroup {
 
     // ------------------ Instance variables ----------------
 
-    private ClientHandler readyClient;
     //@ server != null;
     private FourCharmServer server;
 
@@ -37,7 +37,6 @@ public class LobbyGroup extends ClientGroup {
      */
     public LobbyGroup(FourCharmServer theServer) {
         super(theServer);
-        readyClient = null;
         server = theServer;
     }
 
@@ -74,8 +73,10 @@ public class LobbyGroup extends ClientGroup {
     }
 
     /**
-     * Sets the status of the player to ready. If there is another player ready as well,
-     * a new game will be started.
+     * Sets the status of the player to ready. The player waits for the matchmaker to pair it
+     * with another player which is ready, after which a new game will be started. When the
+     * player had a game in progress before the server restarted, it waits for the opponent
+     * of that game first, see {@link FourCharmServer#waitForGame(ClientHandler)}.
      *
      * @param client the client that wants to play a game
      * @throws C4Exception
@@ -84,21 +85,15 @@ public class LobbyGroup extends ClientGroup {
         requires client != null;
      */
     @Override
-    public synchronized void ready(ClientHandler client) throws C4Exception {
-
-        if (readyClient == null) {
-            readyClient = client;
-            server.stateChange(client, LobbyState.LOBBY_READY);
-        } else if (readyClient == client) {
+    public void ready(ClientHandler client) throws C4Exception {
+        server.getMetrics().readyCommand();
+        if (server.getMatchmaker().isWaiting(client)) {
             throw new InvalidCommandError("You are already waiting and not " +
                     "allowed to play against yourself. Please be patient.");
         } else {
-            GameGroup game = new GameGroup(server, readyClient, client);
-            server.addGame(game);
-            game.startGame();
-            readyClient = null;
+            server.stateChange(client, LobbyState.LOBBY_READY);
+            server.waitForGame(client);
         }
-
     }
 
     /**
@@ -108,10 +103,8 @@ public class LobbyGroup extends ClientGroup {
      *               which will has been removed from the group.
      */
     @Override
-    public synchronized void removeClientCallback(ClientHandler client) {
-        if (readyClient == client) {
-            readyClient = null;
-        }
+    public void removeClientCallback(ClientHandler client) {
+        server.getMatchmaker().remove(client);
     }
 
     @Override
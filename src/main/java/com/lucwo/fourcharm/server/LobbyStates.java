@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.util.BinaryProtocol;
+import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
+import nl.woutertimmermans.connect4.protocol.fgroup.lobby.LobbyClient;
+import nl.woutertimmermans.connect4.protocol.parameters.LobbyState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the lobby state of every client and tells the clients about the changes. A state
+ * change is only recorded when it happens, the changes are sent in batches: every
+ * {@value #FLUSH_INTERVAL} milliseconds all changes since the previous batch are encoded into
+ * one delta frame, in which every client appears once with its latest state. A client which
+ * enters the lobby gets a snapshot of all states, which is encoded once per batch and shared
+ * by every client that enters the lobby until the next batch.
+ * <p>
+ * Recording a change does not take a lock and does not write to any client, so a burst of
+ * logins costs one delta frame for every recipient instead of one write for every pair of
+ * clients. A congested client skips the deltas until it has caught up, it then gets one
+ * {@link #catchUp(Set)} frame with the changes it missed.
+ * <p>
+ * Every batch has a number, the snapshot of a batch is published before its delta is sent.
+ * A client skips the deltas which are already part of the snapshot it got, and gets the
+ * latest snapshot instead of a delta which arrives before its snapshot. So no lock is held
+ * while a delta is sent to every client, and entering the lobby never waits for that.
+ * <p>
+ * Every frame also has a binary encoding for the clients which support the Binary extension.
+ * Snapshots and catch-up frames tell the names of the ids of all clients in them, a delta
+ * only tells the names of the clients which appear for the first time.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class LobbyStates {
+
+    /**
+     * Milliseconds between two batches of state changes.
+     */
+    public static final long FLUSH_INTERVAL = 50;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LobbyStates.class);
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant states != null;
+    private final Map<ClientHandler, LobbyState> states;
+    //@ invariant changes != null;
+    private final Map<ClientHandler, LobbyState> changes;
+    //@ invariant broadcaster != null;
+    private final Consumer<Frame> broadcaster;
+    private final AtomicLong version;
+    // The clients whose names were sent with a delta, only used by the flushing thread
+    //@ invariant announced != null;
+    private final Set<ClientHandler> announced;
+    //@ invariant published != null;
+    private volatile Snapshot published;
+    private volatile Set<ClientHandler> lastBatch;
+    private long snapshotVersion;
+    private ScheduledExecutorService scheduler;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs the lobby states of a server.
+     *
+     * @param broadcaster Sends a frame with state changes to every client which should know
+     *                    about them.
+     */
+    /*@
+        requires broadcaster != null;
+     */
+    public LobbyStates(Consumer<Frame> broadcaster) {
+        this.broadcaster = broadcaster;
+        states = new ConcurrentHashMap<>();
+        changes = new ConcurrentHashMap<>();
+        version = new AtomicLong();
+        announced = new HashSet<>();
+        published = new Snapshot(encode(states, client -> true), 0);
+        lastBatch = Collections.emptySet();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns the state of a client.
+     *
+     * @param client The client.
+     * @return The state of the client, {@link LobbyState#OFFLINE} if it has none.
+     */
+    /*@ pure */ public LobbyState getState(ClientHandler client) {
+        return states.getOrDefault(client, LobbyState.OFFLINE);
+    }
+
+    /**
+     * Returns the version of the states, which increases with every change.
+     *
+     * @return The version of the states.
+     */
+    /*@ pure */ public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the number of the latest batch. While the delta of a batch is being sent, this
+     * is the number of that batch.
+     *
+     * @return The number of the latest batch, 0 before the first batch.
+     */
+    //@ ensures \result >= 0;
+    /*@ pure */ public long getBatch() {
+        return published.batch;
+    }
+
+    /**
+     * Returns the clients another client may know a state of. These are the clients which
+     * have a state and the clients in the latest batch, which may have gone offline.
+     *
+     * @return A copy of the known clients.
+     */
+    //@ ensures \result != null;
+    /*@ pure */ public Set<ClientHandler> getKnownClients() {
+        Set<ClientHandler> known = new HashSet<>(states.keySet());
+        known.addAll(lastBatch);
+        return known;
+    }
+
+    /**
+     * Encodes the frame which brings a client which skipped deltas up to date: the states of
+     * all clients, and {@link LobbyState#OFFLINE} for the known clients which have left.
+     *
+     * @param known The clients which were known when the client started skipping deltas.
+     * @return The catch-up frame.
+     */
+    /*@
+        requires known != null;
+     */
+    public Frame catchUp(Set<ClientHandler> known) {
+        Map<ClientHandler, LobbyState> lines = new HashMap<>(states);
+        for (ClientHandler client : known) {
+            lines.putIfAbsent(client, LobbyState.OFFLINE);
+        }
+        return encode(lines, client -> true);
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Starts sending the batches of state changes every {@value #FLUSH_INTERVAL}
+     * milliseconds.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LobbyStates");
+                thread.setDaemon(true);
+                return thread;
+            });
+        scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sending batches. Changes which have not been sent yet are dropped.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Records a new state of a client. The change is sent with the next batch.
+     *
+     * @param client The client whose state changed.
+     * @param state  The new state, {@link LobbyState#OFFLINE} removes the client.
+     */
+    /*@
+        requires client != null && state != null;
+     */
+    public void stateChange(ClientHandler client, LobbyState state) {
+        if (state != LobbyState.OFFLINE) {
+            states.put(client, state);
+        } else {
+            states.remove(client);
+        }
+        changes.put(client, state);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Sends the states of all clients to a client which has just entered the lobby. The
+     * client must already be able to receive the batches, so it does not miss the changes
+     * which are not part of the snapshot.
+     *
+     * @param client The client which should get all states.
+     */
+    /*@
+        requires client != null;
+     */
+    public void sendSnapshot(ClientHandler client) {
+        Snapshot current = published;
+        client.sendLobbySnapshot(current.frame, current.batch);
+    }
+
+    /**
+     * Sends the changes since the previous batch to everyone and encodes a new snapshot
+     * when the states have changed. The snapshot is published before the changes are sent.
+     */
+    public void flush() {
+        Map<ClientHandler, LobbyState> batch = new HashMap<>();
+        for (ClientHandler client : changes.keySet()) {
+            LobbyState state = changes.remove(client);
+            if (state != null) {
+                batch.put(client, state);
+            }
+        }
+        if (!batch.isEmpty()) {
+            long current = version.get();
+            Frame delta = encode(batch, client -> !announced.contains(client));
+            for (Map.Entry<ClientHandler, LobbyState> change : batch.entrySet()) {
+                if (change.getValue() == LobbyState.OFFLINE) {
+                    announced.remove(change.getKey());
+                } else {
+                    announced.add(change.getKey());
+                }
+            }
+            Frame snapshot = published.frame;
+            if (current != snapshotVersion) {
+                snapshot = encode(states, client -> true);
+                snapshotVersion = current;
+            }
+            lastBatch = batch.keySet();
+            published = new Snapshot(snapshot, published.batch + 1);
+            try {
+                broadcaster.accept(delta);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Sending lobby states failed", e);
+            }
+        }
+    }
+
+    /**
+     * Encodes the states into one frame with a state change line for every client. The
+     * binary encoding has a state change frame for every client, preceded by the name of the
+     * clients which should be announced.
+     */
+    private static Frame encode(Map<ClientHandler, LobbyState> entries,
+                                Predicate<ClientHandler> announce) {
+        // Both encodings are made from the same copy of the states
+        Map<ClientHandler, LobbyState> lines = new HashMap<>(entries);
+        byte[][] binary = new byte[lines.size() * 2][];
+        int count = 0;
+        for (Map.Entry<ClientHandler, LobbyState> e : lines.entrySet()) {
+            ClientHandler client = e.getKey();
+            if (announce.test(client)) {
+                binary[count++] = BinaryProtocol.player(client.getId(), client.getName());
+            }
+            binary[count++] = BinaryProtocol.stateChange(client.getId(), e.getValue().ordinal());
+        }
+        try {
+            return Frame.encode(out -> {
+                    LobbyClient.Client lobbyClient = new LobbyClient.Client(out);
+                    for (Map.Entry<ClientHandler, LobbyState> e : lines.entrySet()) {
+                        try {
+                            lobbyClient.stateChange(e.getKey().getName(), e.getValue());
+                        } catch (C4Exception e1) {
+                            LOGGER.trace("encode", e1);
+                        }
+                    }
+                }).withBinary(BinaryProtocol.concat(Arrays.copyOf(binary, count)));
+        } catch (C4Exception e) {
+            // Every line handles its own exception
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The states of all clients, with the number of the latest batch they include.
+     */
+    private static final class Snapshot {
+
+        private final Frame frame;
+        private final long batch;
+
+        private Snapshot(Frame frame, long batch) {
+            this.frame = frame;
+            this.batch = batch;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Pairs the clients in the lobby which are ready to play. A ready client is put in the
+ * queue of its bucket without taking a lock, every {@value #MATCH_INTERVAL} milliseconds all
+ * waiting clients are paired in one batch. The protocol does not know ratings, so clients
+ * are bucketed by their preferences: clients which support chat are paired with each other
+ * first, so they can talk during their game. The clients which are left over in their
+ * buckets are paired with each other after that, oldest first, so nobody waits longer than
+ * one batch for a partner when another client is waiting.
+ * <p>
+ * A pair is handed to the starter given to the constructor, which should start the game
+ * on the thread of the clients so the games of one batch are created in parallel. The clients
+ * of a pair count as waiting until the starter {@link #release(ClientHandler) releases} them,
+ * so they can not be paired again before their game exists.
+ * <p>
+ * A client can also wait for one partner, like the opponent of a game which can be resumed.
+ * It is kept out of the buckets until that partner waits for it as well, or until its
+ * patience runs out.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class Matchmaker {
+
+    /**
+     * Milliseconds between two batches of pairings.
+     */
+    public static final long MATCH_INTERVAL = 50;
+    /**
+     * Amount of recent wait times kept to compute the wait time percentiles.
+     */
+    public static final int WAIT_SAMPLES = 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Matchmaker.class);
+    private static final int DEFAULT_BUCKET = 0;
+    private static final int CHAT_BUCKET = 1;
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant starter != null;
+    private final BiConsumer<ClientHandler, ClientHandler> starter;
+    //@ invariant waiting != null;
+    private final ConcurrentMap<ClientHandler, Ticket> waiting;
+    //@ invariant buckets != null;
+    private final ConcurrentMap<Integer, Deque<Ticket>> buckets;
+    //@ invariant paired != null;
+    private final Set<ClientHandler> paired;
+    // The tickets of the clients which wait for a partner, by the names of the clients
+    //@ invariant parked != null;
+    private final ConcurrentMap<String, Ticket> parked;
+    //@ invariant waitTimes != null && waitTimes.length == WAIT_SAMPLES;
+    private final long[] waitTimes;
+    private long waitCount;
+    private ScheduledExecutorService scheduler;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a matchmaker.
+     *
+     * @param starter Starts a game between two clients, the client which waited longest is
+     *                the first player.
+     */
+    /*@
+        requires starter != null;
+     */
+    public Matchmaker(BiConsumer<ClientHandler, ClientHandler> starter) {
+        this.starter = starter;
+        waiting = new ConcurrentHashMap<>();
+        buckets = new ConcurrentHashMap<>();
+        paired = ConcurrentHashMap.newKeySet();
+        parked = new ConcurrentHashMap<>();
+        waitTimes = new long[WAIT_SAMPLES];
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Checks whether a client is waiting for a game, either in the queue or paired with
+     * another client while their game is being started.
+     *
+     * @param client The client.
+     * @return true if the client is waiting.
+     */
+    /*@ pure */ public boolean isWaiting(ClientHandler client) {
+        return waiting.containsKey(client) || paired.contains(client);
+    }
+
+    /**
+     * Returns the amount of clients which are waiting for a game.
+     *
+     * @return The depth of the queue.
+     */
+    //@ ensures \result >= 0;
+    /*@ pure */ public int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns a percentile of the time the last {@value #WAIT_SAMPLES} paired clients have
+     * waited for a partner.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The wait time in milliseconds, 0 when no clients have been paired yet.
+     */
+    /*@
+        requires percentile >= 0 && percentile <= 100;
+        ensures \result >= 0;
+     */
+    /*@ pure */ public long getWaitPercentile(double percentile) {
+        return getWaitPercentile(percentile, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a percentile of the time the last {@value #WAIT_SAMPLES} paired clients have
+     * waited for a partner, in the given unit.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @param unit       The unit of the result.
+     * @return The wait time, 0 when no clients have been paired yet.
+     */
+    /*@
+        requires percentile >= 0 && percentile <= 100 && unit != null;
+        ensures \result >= 0;
+     */
+    /*@ pure */ public long getWaitPercentile(double percentile, TimeUnit unit) {
+        long[] samples;
+        synchronized (waitTimes) {
+            samples = Arrays.copyOf(waitTimes, (int) Math.min(waitCount, WAIT_SAMPLES));
+        }
+        long result = 0;
+        if (samples.length > 0) {
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+            result = unit.convert(samples[Math.max(0, index)], TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Starts pairing the waiting clients every {@value #MATCH_INTERVAL} milliseconds.
+     */
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Matchmaker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        scheduler.scheduleWithFixedDelay(this::match, MATCH_INTERVAL, MATCH_INTERVAL,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops pairing clients.
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Lets a client wait for a game.
+     *
+     * @param client The client which is ready to play.
+     * @return false if the client was already waiting.
+     */
+    /*@
+        requires client != null;
+        ensures isWaiting(client);
+     */
+    public boolean enqueue(ClientHandler client) {
+        Ticket ticket = new Ticket(client, bucketOf(client), null, 0);
+        boolean added = !paired.contains(client) && waiting.putIfAbsent(client, ticket) == null;
+        if (added) {
+            addToBucket(ticket);
+        }
+        return added;
+    }
+
+    /**
+     * Lets a client wait for a game with one partner. When the partner does not wait for
+     * this client within the given time, the client waits for any game.
+     *
+     * @param client   The client which is ready to play.
+     * @param partner  The name of the client it should be paired with.
+     * @param patience The amount of milliseconds to wait for the partner.
+     * @return false if the client was already waiting.
+     */
+    /*@
+        requires client != null && partner != null && patience >= 0;
+        ensures isWaiting(client);
+     */
+    public boolean enqueue(ClientHandler client, String partner, long patience) {
+        Ticket ticket = new Ticket(client, bucketOf(client), partner,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(patience));
+        boolean added = !paired.contains(client) && waiting.putIfAbsent(client, ticket) == null;
+        if (added) {
+            parked.put(client.getName(), ticket);
+        }
+        return added;
+    }
+
+    /**
+     * Stops a client from waiting. A client which has already been paired is not removed.
+     *
+     * @param client The client.
+     * @return true if the client was waiting and will not be paired.
+     */
+    /*@
+        requires client != null;
+     */
+    public boolean remove(ClientHandler client) {
+        Ticket ticket = waiting.remove(client);
+        return ticket != null && ticket.cancel();
+    }
+
+    /**
+     * Stops holding a client which has been paired, after the starter has created its game
+     * or decided not to.
+     *
+     * @param client The paired client.
+     */
+    /*@
+        requires client != null;
+        ensures !isWaiting(client);
+     */
+    public void release(ClientHandler client) {
+        paired.remove(client);
+    }
+
+    /**
+     * Pairs the waiting clients, first within their buckets and then the clients which
+     * were left over. Clients are paired in the order in which they started waiting, so
+     * when an odd amount of clients is waiting the client which started waiting last is
+     * left over. It is put back at the front of its bucket and is the first to be paired
+     * in the next batch.
+     */
+    public void match() {
+        int pairs = matchPartners();
+        List<Ticket> leftovers = new ArrayList<>();
+        for (Deque<Ticket> bucket : buckets.values()) {
+            Ticket first = null;
+            Ticket next = bucket.poll();
+            while (next != null) {
+                first = pair(first, next);
+                if (first == null) {
+                    pairs++;
+                }
+                next = bucket.poll();
+            }
+            if (first != null) {
+                leftovers.add(first);
+            }
+        }
+
+        leftovers.sort(Comparator.comparingLong(ticket -> ticket.since));
+        Ticket first = null;
+        for (Ticket next : leftovers) {
+            first = pair(first, next);
+            if (first == null) {
+                pairs++;
+            }
+        }
+        if (first != null) {
+            buckets.get(first.bucket).addFirst(first);
+        }
+
+        if (pairs > 0) {
+            LOGGER.debug("Paired {} games, {} clients waiting, wait p50 {} ms p99 {} ms", pairs,
+                    getQueueDepth(), getWaitPercentile(50), getWaitPercentile(99));
+        }
+    }
+
+    /**
+     * Pairs the clients which wait for each other. The clients which have waited for their
+     * partner long enough are moved to their buckets.
+     *
+     * @return The amount of pairs.
+     */
+    private int matchPartners() {
+        int pairs = 0;
+        long now = System.nanoTime();
+        for (Ticket ticket : parked.values()) {
+            String name = ticket.client.getName();
+            Ticket partner = parked.get(ticket.partner);
+            // A ticket which is not parked anymore was paired earlier in this batch
+            if (ticket.isCancelled()) {
+                parked.remove(name, ticket);
+            } else if (parked.get(name) == ticket && partner != null
+                    && name.equals(partner.partner) && Ticket.claim(ticket, partner)) {
+                parked.remove(name, ticket);
+                parked.remove(ticket.partner, partner);
+                if (ticket.since <= partner.since) {
+                    start(ticket, partner);
+                } else {
+                    start(partner, ticket);
+                }
+                pairs++;
+            } else if (parked.get(name) == ticket && now - ticket.patientUntil >= 0) {
+                parked.remove(name, ticket);
+                addToBucket(ticket);
+            }
+        }
+        return pairs;
+    }
+
+    private static int bucketOf(ClientHandler client) {
+        return client.isChatEnabled() ? CHAT_BUCKET : DEFAULT_BUCKET;
+    }
+
+    private void addToBucket(Ticket ticket) {
+        buckets.computeIfAbsent(ticket.bucket, bucket -> new ConcurrentLinkedDeque<>())
+                .add(ticket);
+    }
+
+    /**
+     * Pairs the next ticket with the first unpaired ticket.
+     *
+     * @return The ticket which is still unpaired, null if both tickets are paired.
+     */
+    private Ticket pair(Ticket first, Ticket next) {
+        Ticket result;
+        if (next.isCancelled()) {
+            result = first;
+        } else if (first == null) {
+            result = next;
+        } else if (Ticket.claim(first, next)) {
+            result = null;
+            start(first, next);
+        } else {
+            result = first.isCancelled() ? next : first;
+        }
+        return result;
+    }
+
+    private void start(Ticket first, Ticket second) {
+        paired.add(first.client);
+        paired.add(second.client);
+        waiting.remove(first.client, first);
+        waiting.remove(second.client, second);
+        long now = System.nanoTime();
+        synchronized (waitTimes) {
+            waitTimes[(int) (waitCount % WAIT_SAMPLES)] = now - first.since;
+            waitCount++;
+            waitTimes[(int) (waitCount % WAIT_SAMPLES)] = now - second.since;
+            waitCount++;
+        }
+        try {
+            starter.accept(first.client, second.client);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Starting a game for {} and {} failed", first.client.getName(),
+                    second.client.getName(), e);
+            release(first.client);
+            release(second.client);
+        }
+    }
+
+    /**
+     * The place of a client in the queue of a bucket. The ticket of a client which stops
+     * waiting is cancelled and skipped when the bucket is paired. A client which waits for
+     * a partner has the name of the partner on its ticket.
+     */
+    private static final class Ticket {
+
+        private final ClientHandler client;
+        private final int bucket;
+        private final long since;
+        private final String partner;
+        private final long patientUntil;
+        private boolean matched;
+        private boolean cancelled;
+
+        private Ticket(ClientHandler client, int bucket, String partner, long patientUntil) {
+            this.client = client;
+            this.bucket = bucket;
+            this.partner = partner;
+            this.patientUntil = patientUntil;
+            since = System.nanoTime();
+        }
+
+        /**
+         * Claims two tickets for one game, unless one of them is cancelled. Only the thread
+         * which pairs the clients holds two tickets at once.
+         */
+        private static boolean claim(Ticket first, Ticket second) {
+            synchronized (first) {
+                synchronized (second) {
+                    boolean claimed = !first.cancelled && !second.cancelled;
+                    if (claimed) {
+                        first.matched = true;
+                        second.matched = true;
+                    }
+                    return claimed;
+                }
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized boolean cancel() {
+            cancelled = !matched;
+            return cancelled;
+        }
+    }
+}
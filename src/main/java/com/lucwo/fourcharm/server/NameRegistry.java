@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The names of all clients which have joined the server. A client reserves its name when it
+ * joins and keeps it while it moves between the lobby and games, until it disconnects and
+ * releases the name. Reserving is atomic, so two clients which join at the same time with
+ * the same name can never both get it, and checking a name does not depend on the amount
+ * of clients or games.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class NameRegistry {
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant names != null;
+    private final ConcurrentMap<String, ClientHandler> names;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs an empty registry.
+     */
+    public NameRegistry() {
+        names = new ConcurrentHashMap<>();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Checks whether a client has reserved the given name.
+     *
+     * @param name The name to check.
+     * @return true if the name is in use, false if it is free.
+     */
+    /*@
+        requires name != null;
+     */
+    /*@ pure */ public boolean isReserved(String name) {
+        return names.containsKey(name);
+    }
+
+    /**
+     * Returns the client which reserved a name.
+     *
+     * @param name The name of the client.
+     * @return The client, or null when the name is free.
+     */
+    /*@
+        requires name != null;
+     */
+    /*@ pure */ public ClientHandler getClient(String name) {
+        return names.get(name);
+    }
+
+    /**
+     * Returns the amount of reserved names.
+     *
+     * @return The amount of clients which have joined.
+     */
+    /*@ pure */ public int size() {
+        return names.size();
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Reserves a name for a client, if no other client has reserved it.
+     *
+     * @param name   The name the client wants to use.
+     * @param client The client.
+     * @return true if the client has the name now, false if another client has it.
+     */
+    /*@
+        requires name != null && client != null;
+        ensures \result ==> isReserved(name);
+     */
+    public boolean reserve(String name, ClientHandler client) {
+        ClientHandler owner = names.putIfAbsent(name, client);
+        return owner == null || owner == client;
+    }
+
+    /**
+     * Releases the name of a client. A name which another client has reserved is kept.
+     *
+     * @param name   The name of the client.
+     * @param client The client which releases its name.
+     * @return true if the name was released.
+     */
+    /*@
+        requires name != null && client != null;
+     */
+    public boolean release(String name, ClientHandler client) {
+        return names.remove(name, client);
+    }
+}
@@ -51,7 +51,8 @@ public class PreLobbyGroup extends ClientGroup {
     // ----------------------- Commands ---------------------
 
     /**
-     * The client wants to join the LobbyGroup.
+     * The client wants to join the LobbyGroup. The name is reserved with the server before
+     * the client joins, so clients which join at the same time are not handled one at a time.
      *
      * @param client  The client which performed this command.
      * @param pName   Player name
@@ -64,11 +65,13 @@ public class PreLobbyGroup extends ClientGroup {
         ensures getServer().hasClientWithName(pName);
      */
     @Override
-    public synchronized void join(ClientHandler client, String pName, int gNumber,
-                                  Set<Extension> exts) throws C4Exception {
-        if (getServer().hasClientWithName(pName)) {
+    public void join(ClientHandler client, String pName, int gNumber,
+                     Set<Extension> exts) throws C4Exception {
+        if (!getServer().reserveName(pName, client)) {
             throw new InvalidUsernameError("The username " + pName + " is already in use");
         } else {
+            // Remove the client while it is still known under the name of its connection
+            removeHandler(client);
             client.setName(pName);
             client.registerExtensions(exts);
             client.getCoreClient().accept(LUCWO_GROUP_NUMBER, extensions);
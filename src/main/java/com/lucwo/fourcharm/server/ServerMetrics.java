@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.util.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * The live metrics of a {@link FourCharmServer}: counters of the connections, games and
+ * commands, and histograms of the time needed to process a command, the turnaround of a
+ * move and the time needed to send a broadcast to every recipient. The counters are
+ * {@link LongAdder}s and the histograms do not take a lock, so recording costs the threads
+ * which handle the clients next to nothing.
+ * <p>
+ * The metrics are shown by the stats command of the server TUI and registered as an MBean
+ * under {@value #OBJECT_NAME} while the server is running.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    /**
+     * The name under which the metrics are registered with the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "com.lucwo.fourcharm:type=ServerMetrics";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerMetrics.class);
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant server != null;
+    private final FourCharmServer server;
+    private final AtomicLong connections;
+    private final LongAdder totalConnections;
+    private final LongAdder gamesStarted;
+    private final LongAdder gamesFinished;
+    private final LongAdder readyCommands;
+    private final LongAdder stateChanges;
+    //@ invariant commandTimes != null && moveTimes != null && broadcastTimes != null;
+    private final Histogram commandTimes;
+    private final Histogram moveTimes;
+    private final Histogram broadcastTimes;
+    private ObjectName name;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs the metrics of a server.
+     *
+     * @param server The server which is measured.
+     */
+    /*@
+        requires server != null;
+     */
+    public ServerMetrics(FourCharmServer server) {
+        this.server = server;
+        connections = new AtomicLong();
+        totalConnections = new LongAdder();
+        gamesStarted = new LongAdder();
+        gamesFinished = new LongAdder();
+        readyCommands = new LongAdder();
+        stateChanges = new LongAdder();
+        commandTimes = new Histogram();
+        moveTimes = new Histogram();
+        broadcastTimes = new Histogram();
+    }
+
+    // ----------------------- Queries ----------------------
+
+    @Override
+    public long getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return totalConnections.sum();
+    }
+
+    @Override
+    public long getActiveGames() {
+        return getGamesStarted() - getGamesFinished();
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.sum();
+    }
+
+    @Override
+    public long getGamesFinished() {
+        return gamesFinished.sum();
+    }
+
+    @Override
+    public long getCommands() {
+        return commandTimes.getCount();
+    }
+
+    @Override
+    public long getCommandP50() {
+        return commandTimes.getPercentile(50);
+    }
+
+    @Override
+    public long getCommandP99() {
+        return commandTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getMoves() {
+        return moveTimes.getCount();
+    }
+
+    @Override
+    public long getMoveP50() {
+        return moveTimes.getPercentile(50);
+    }
+
+    @Override
+    public long getMoveP99() {
+        return moveTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getBroadcasts() {
+        return broadcastTimes.getCount();
+    }
+
+    @Override
+    public long getBroadcastP50() {
+        return broadcastTimes.getPercentile(50);
+    }
+
+    @Override
+    public long getBroadcastP99() {
+        return broadcastTimes.getPercentile(99);
+    }
+
+    @Override
+    public long getReadyCommands() {
+        return readyCommands.sum();
+    }
+
+    @Override
+    public long getStateChanges() {
+        return stateChanges.sum();
+    }
+
+    @Override
+    public long getMatchQueueDepth() {
+        return server.getMatchmaker().getQueueDepth();
+    }
+
+    /**
+     * @return The 99th percentile of the time clients waited for a partner, in microseconds.
+     */
+    @Override
+    public long getMatchWaitP99() {
+        return server.getMatchmaker().getWaitPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @return The largest outbound queue of a connected client, in bytes.
+     */
+    @Override
+    public long getOutboundHighWaterMark() {
+        return maxOverClients(client -> client.getConnection().getHighWaterMark());
+    }
+
+    /**
+     * @return The sum of the frames dropped for the connected clients.
+     */
+    @Override
+    public long getDroppedFrames() {
+        LongAdder dropped = new LongAdder();
+        server.forEveryClient(client -> dropped.add(client.getConnection().getDropped()));
+        return dropped.sum();
+    }
+
+    private long maxOverClients(ToLongFunction<ClientHandler> value) {
+        AtomicLong max = new AtomicLong();
+        server.forEveryClient(client -> max.accumulateAndGet(value.applyAsLong(client),
+                Math::max));
+        return max.get();
+    }
+
+    /**
+     * @return A report of all metrics, one subject on each line.
+     */
+    @Override
+    public String toString() {
+        return "connections: " + getConnections() + " (" + getTotalConnections() + " total)\n"
+                + "games: " + getActiveGames() + " active, " + getGamesStarted()
+                + " started, " + getGamesFinished() + " finished\n"
+                + "commands: " + commandTimes + "\n"
+                + "move turnaround: " + moveTimes + "\n"
+                + "broadcast fan-out: " + broadcastTimes + "\n"
+                + "lobby: " + getReadyCommands() + " ready, " + getStateChanges()
+                + " state changes, " + getMatchQueueDepth() + " waiting, wait p99 "
+                + getMatchWaitP99() + " us\n"
+                + "outbound: high-water mark " + getOutboundHighWaterMark() + " bytes, "
+                + getDroppedFrames() + " frames dropped";
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Registers the metrics with the platform MBean server. A failure is logged, the server
+     * runs without JMX then.
+     */
+    public void register() {
+        try {
+            MBeanServer beanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME + ",port="
+                    + server.getSocketPort());
+            beanServer.registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the server metrics with JMX", e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server.
+     */
+    public void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                LOGGER.trace("unregister", e);
+            }
+            name = null;
+        }
+    }
+
+    void connectionOpened() {
+        connections.incrementAndGet();
+        totalConnections.increment();
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    void gameStarted() {
+        gamesStarted.increment();
+    }
+
+    void gameFinished() {
+        gamesFinished.increment();
+    }
+
+    void readyCommand() {
+        readyCommands.increment();
+    }
+
+    void stateChanged() {
+        stateChanges.increment();
+    }
+
+    void commandProcessed(long nanos) {
+        commandTimes.record(nanos);
+    }
+
+    void moveMade(long nanos) {
+        moveTimes.record(nanos);
+    }
+
+    void broadcastSent(long nanos) {
+        broadcastTimes.record(nanos);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+/**
+ * The management interface of the {@link ServerMetrics}, the attributes which are shown by
+ * JMX clients like JConsole. Latencies are in microseconds.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public interface ServerMetricsMBean {
+
+    long getConnections();
+
+    long getTotalConnections();
+
+    long getActiveGames();
+
+    long getGamesStarted();
+
+    long getGamesFinished();
+
+    long getCommands();
+
+    long getCommandP50();
+
+    long getCommandP99();
+
+    long getMoves();
+
+    long getMoveP50();
+
+    long getMoveP99();
+
+    long getBroadcasts();
+
+    long getBroadcastP50();
+
+    long getBroadcastP99();
+
+    long getReadyCommands();
+
+    long getStateChanges();
+
+    long getMatchQueueDepth();
+
+    long getMatchWaitP99();
+
+    long getOutboundHighWaterMark();
+
+    long getDroppedFrames();
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact encoding of the core game commands, used between a client and a server which
+ * both support the Binary extension. Every command is a frame of a type byte, the length of
+ * the payload in two bytes and the payload. Players are referred to by an id instead of their
+ * name, a {@link #PLAYER} frame tells which name belongs to an id before the id is used.
+ * <p>
+ * The type bytes are control characters which never start a text command, so frames and
+ * text lines can be mixed on one connection. Commands without a binary encoding are still
+ * sent as text.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class BinaryProtocol {
+
+    /**
+     * Tells the name of a player id: the id followed by the name.
+     */
+    public static final byte PLAYER = 1;
+    /**
+     * A move of the client: the column.
+     */
+    public static final byte DO_MOVE = 2;
+    /**
+     * A move made in the game: the id of the player followed by the column.
+     */
+    public static final byte DONE_MOVE = 3;
+    /**
+     * Asks a player for a move: the id of the player.
+     */
+    public static final byte REQUEST_MOVE = 4;
+    /**
+     * The end of a game: the id of the winner, {@link #NO_PLAYER} when there is none.
+     */
+    public static final byte GAME_END = 5;
+    /**
+     * A new lobby state: the id of the player followed by the ordinal of the state.
+     */
+    public static final byte STATE_CHANGE = 6;
+    /**
+     * Size of the type and the length in front of every payload.
+     */
+    public static final int HEADER_SIZE = 3;
+    /**
+     * Largest payload of a frame.
+     */
+    public static final int MAX_PAYLOAD = 0xFFFF;
+    /**
+     * The id which refers to no player.
+     */
+    public static final int NO_PLAYER = 0;
+
+    private static final int ID_SIZE = Integer.BYTES;
+
+    private BinaryProtocol() {
+        // Hide the public constructor
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns whether a message which starts with the given byte is a binary frame.
+     *
+     * @param first The first byte of the message.
+     * @return true if the byte is the type of a frame.
+     */
+    public static boolean isFrameType(byte first) {
+        return first >= PLAYER && first <= STATE_CHANGE;
+    }
+
+    /**
+     * Returns the size of the frame at the given index.
+     *
+     * @param bytes  The bytes which start with the frame.
+     * @param offset The index of the type of the frame.
+     * @param length The amount of bytes available from the offset on.
+     * @return The size of the frame including its header, -1 when the header is not complete.
+     */
+    /*@
+        requires bytes != null && 0 <= offset && 0 <= length && offset + length <= bytes.length;
+     */
+    public static int frameSize(byte[] bytes, int offset, int length) {
+        int size = -1;
+        if (length >= HEADER_SIZE) {
+            size = HEADER_SIZE + ((bytes[offset + 1] & 0xFF) << Byte.SIZE
+                    | bytes[offset + 2] & 0xFF);
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a frame which tells the name of a player id.
+     *
+     * @param id   The id of the player.
+     * @param name The name of the player.
+     * @return The encoded frame.
+     */
+    /*@
+        requires id != NO_PLAYER && name != null;
+     */
+    public static byte[] player(int id, String name) {
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        return frame(PLAYER, ID_SIZE + encodedName.length).putInt(id).put(encodedName).array();
+    }
+
+    /**
+     * Encodes a move of the client.
+     *
+     * @param col The column of the move.
+     * @return The encoded frame.
+     */
+    public static byte[] doMove(int col) {
+        return frame(DO_MOVE, 1).put((byte) col).array();
+    }
+
+    /**
+     * Encodes a move which was made in a game.
+     *
+     * @param id  The id of the player which made the move.
+     * @param col The column of the move.
+     * @return The encoded frame.
+     */
+    public static byte[] doneMove(int id, int col) {
+        return frame(DONE_MOVE, ID_SIZE + 1).putInt(id).put((byte) col).array();
+    }
+
+    /**
+     * Encodes the request for a move of a player.
+     *
+     * @param id The id of the player which should make a move.
+     * @return The encoded frame.
+     */
+    public static byte[] requestMove(int id) {
+        return frame(REQUEST_MOVE, ID_SIZE).putInt(id).array();
+    }
+
+    /**
+     * Encodes the end of a game.
+     *
+     * @param id The id of the winner, {@link #NO_PLAYER} when there is none.
+     * @return The encoded frame.
+     */
+    public static byte[] gameEnd(int id) {
+        return frame(GAME_END, ID_SIZE).putInt(id).array();
+    }
+
+    /**
+     * Encodes a new lobby state of a player.
+     *
+     * @param id    The id of the player.
+     * @param state The ordinal of the new state.
+     * @return The encoded frame.
+     */
+    public static byte[] stateChange(int id, int state) {
+        return frame(STATE_CHANGE, ID_SIZE + 1).putInt(id).put((byte) state).array();
+    }
+
+    /**
+     * Puts encoded frames after each other, so they can be sent as one message.
+     *
+     * @param frames The encoded frames.
+     * @return The frames in the given order.
+     */
+    public static byte[] concat(byte[]... frames) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            result.write(frame, 0, frame.length);
+        }
+        return result.toByteArray();
+    }
+
+    private static ByteBuffer frame(byte type, int payload) {
+        if (payload > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload of " + payload + " bytes is too long");
+        }
+        return ByteBuffer.allocate(HEADER_SIZE + payload).put(type).putShort((short) payload);
+    }
+}
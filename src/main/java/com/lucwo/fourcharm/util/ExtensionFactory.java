@@ -20,6 +20,7 @@ public class ExtensionFactory {
         Set<Extension> result = new HashSet<>();
         result.add(chat());
         result.add(lobby());
+        result.add(binary());
         return result;
     }
 
@@ -43,4 +44,14 @@ public class ExtensionFactory {
         return result;
     }
 
+    public static Extension binary() {
+        Extension result = new Extension();
+        try {
+            result.setValue("Binary");
+        } catch (InvalidParameterError invalidParameterError) {
+            LOGGER.trace("binary", invalidParameterError);
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in logarithmic buckets, so any amount of samples takes the same memory
+ * and can be recorded from many threads without a lock. Latencies below
+ * {@value #LINEAR_BUCKETS} microseconds are counted exactly, longer ones are rounded down to
+ * one of {@value #SUB_BUCKETS} steps between two powers of two, an error of less than 1%.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class Histogram {
+
+    /**
+     * Amount of microseconds which are counted exactly.
+     */
+    public static final int LINEAR_BUCKETS = 256;
+    /**
+     * Amount of buckets between two powers of two.
+     */
+    public static final int SUB_BUCKETS = 128;
+    private static final int SUB_BITS = 7;
+    private static final int SHIFTS = Long.SIZE - SUB_BITS;
+
+    // ------------------ Instance variables ----------------
+
+    //@ invariant counts != null;
+    private final AtomicLongArray counts;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public Histogram() {
+        counts = new AtomicLongArray(LINEAR_BUCKETS + SHIFTS * SUB_BUCKETS);
+    }
+
+    // ----------------------- Queries ----------------------
+
+    private static int index(long micros) {
+        int result;
+        if (micros < LINEAR_BUCKETS) {
+            result = (int) Math.max(0, micros);
+        } else {
+            int shift = Long.SIZE - Long.numberOfLeadingZeros(micros) - 1 - SUB_BITS;
+            result = LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS
+                    + (int) ((micros >>> shift) - SUB_BUCKETS);
+        }
+        return result;
+    }
+
+    private static long lowest(int index) {
+        long result;
+        if (index < LINEAR_BUCKETS) {
+            result = index;
+        } else {
+            int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+            result = (long) ((index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the amount of recorded latencies.
+     *
+     * @return The amount of samples.
+     */
+    //@ ensures \result >= 0;
+    /*@ pure */ public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns a percentile of the recorded latencies.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in microseconds, 0 when nothing has been recorded.
+     */
+    /*@
+        requires percentile >= 0 && percentile <= 100;
+        ensures \result >= 0;
+     */
+    /*@ pure */ public long getPercentile(double percentile) {
+        long rank = (long) Math.ceil(percentile / 100 * getCount());
+        long seen = 0;
+        long result = 0;
+        for (int i = 0; i < counts.length() && (seen < rank || seen == 0); i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                seen += count;
+                result = lowest(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The 50th, 99th and 99.9th percentile in microseconds.
+     */
+    @Override
+    public String toString() {
+        return "p50 " + getPercentile(50) + " us, p99 " + getPercentile(99) + " us, p999 "
+                + getPercentile(99.9) + " us (" + getCount() + " samples)";
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(index(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+}
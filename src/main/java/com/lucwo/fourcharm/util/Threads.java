@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the threads which wait for a single move. These threads spend nearly all of
+ * their time waiting, so when the virtual thread mode is enabled and the runtime supports
+ * it they are created as virtual threads. Otherwise normal platform threads are used.
+ * <p>
+ * The mode is enabled with the {@value #VIRTUAL_THREADS_PROPERTY} system property or with
+ * {@link #setVirtualThreads(boolean)}. Virtual threads need Java 21, the classes for Java 21
+ * are part of the multi-release jar built by the java21 profile.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public final class Threads {
+
+    /**
+     * System property which enables the virtual thread mode when set to {@code true}.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "fourcharm.virtualThreads";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Threads.class);
+
+    private static volatile boolean virtualThreads =
+            Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY) && VirtualThreads.isSupported();
+
+    private Threads() {
+        // Hide the public constructor
+    }
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * Returns whether new threads are virtual threads.
+     *
+     * @return {@code true} if the virtual thread mode is enabled.
+     */
+    public static boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Enables or disables the virtual thread mode. The mode stays disabled when the runtime
+     * does not support virtual threads.
+     *
+     * @param enabled Whether new threads should be virtual threads.
+     * @return {@code true} if the virtual thread mode is enabled after this call.
+     */
+    public static boolean setVirtualThreads(boolean enabled) {
+        if (enabled && !VirtualThreads.isSupported()) {
+            LOGGER.warn("Virtual threads need Java 21, using platform threads");
+        }
+        virtualThreads = enabled && VirtualThreads.isSupported();
+        return virtualThreads;
+    }
+
+    /**
+     * Creates a thread which is not started yet.
+     *
+     * @param task The task the thread will run.
+     * @param name The name of the thread.
+     * @return A virtual thread in the virtual thread mode, otherwise a platform thread.
+     */
+    /*@
+        requires task != null && name != null;
+     */
+    public static Thread newThread(Runnable task, String name) {
+        Thread thread;
+        if (virtualThreads) {
+            thread = VirtualThreads.newThread(task, name);
+        } else {
+            thread = new Thread(task, name);
+        }
+        return thread;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+/**
+ * Access to virtual threads. This version is used on runtimes older than Java 21, which
+ * have no virtual threads. The multi-release jar contains a version for Java 21 in
+ * META-INF/versions/21.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+        // Hide the public constructor
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads.
+     *
+     * @return {@code false}, this runtime has no virtual threads.
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Creates a thread which is not started yet. This runtime has no virtual threads, so
+     * a platform thread is created instead.
+     *
+     * @param task The task the thread will run.
+     * @param name The name of the thread.
+     * @return The new platform thread.
+     */
+    static Thread newThread(Runnable task, String name) {
+        return new Thread(task, name);
+    }
+}
@@ -172,6 +172,9 @@ public class FourCharmServerTUI implements Runnable {
             case LIST_PLAYER:
                 showError(NOT_IMPLEMENTED);
                 break;
+            case STATS:
+                controller.showStats();
+                break;
             default:
                 showError("Command not recognized");
                 break;
@@ -187,7 +190,8 @@ public class FourCharmServerTUI implements Runnable {
         EXIT(),
         CHANGE_PORT("port number"),
         HELP(),
-        LIST_PLAYER();
+        LIST_PLAYER(),
+        STATS();
 
 
         String[] parameterNames;
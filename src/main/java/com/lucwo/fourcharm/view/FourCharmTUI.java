@@ -8,10 +8,14 @@ import com.lucwo.fourcharm.controller.C4Server;
 import com.lucwo.fourcharm.controller.FourCharmController;
 import com.lucwo.fourcharm.exception.ServerConnectionException;
 import com.lucwo.fourcharm.model.Game;
+import com.lucwo.fourcharm.model.ai.BookStrategy;
 import com.lucwo.fourcharm.model.ai.GameStrategy;
+import com.lucwo.fourcharm.model.ai.LazySMPStrategy;
 import com.lucwo.fourcharm.model.ai.MTDfStrategy;
 import com.lucwo.fourcharm.model.ai.NegaMaxStrategy;
 import com.lucwo.fourcharm.model.ai.RandomStrategy;
+import com.lucwo.fourcharm.model.ai.SolverStrategy;
+import com.lucwo.fourcharm.model.ai.YBWCStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +34,8 @@ import java.util.concurrent.TimeUnit;
 public class FourCharmTUI implements FourCharmView, Observer, Runnable {
 
     private static final String NOT_IMPLEMENTED = "Not yet implemented";
+    private static final String AI_OPTIONS =
+            "-m (MTDF) | -l (Lazy SMP) | -y (YBWC) | -s (Solver) | -r (Random)";
     private static final Logger LOGGER = LoggerFactory.getLogger(FourCharmTUI.class);
 
 
@@ -205,6 +211,20 @@ public class FourCharmTUI implements FourCharmView, Observer, Runnable {
             if (p2Strat instanceof MTDfStrategy) {
                 p2Strat = new MTDfStrategy(turnTimeout);
             }
+            if (p1Strat instanceof LazySMPStrategy) {
+                p1Strat = new LazySMPStrategy(turnTimeout);
+            }
+            if (p2Strat instanceof LazySMPStrategy) {
+                p2Strat = new LazySMPStrategy(turnTimeout);
+            }
+            if (p1Strat instanceof SolverStrategy) {
+                p1Strat = new SolverStrategy(turnTimeout);
+            }
+            if (p2Strat instanceof SolverStrategy) {
+                p2Strat = new SolverStrategy(turnTimeout);
+            }
+            p1Strat = withBook(p1Strat);
+            p2Strat = withBook(p2Strat);
             if (p1Strat == null && p2Strat == null) {
                 controller.startLocalGame(args[0], args[1], null, null);
             } else if (p1Strat == null) {
@@ -223,13 +243,19 @@ public class FourCharmTUI implements FourCharmView, Observer, Runnable {
     /**
      * Parses the input string to a strategy.
      *
-     * @param strat The input String strategy (-m, -r).
+     * @param strat The input String strategy (-m, -l, -y, -s, -n, -r).
      * @return The strategy.
      */
     private GameStrategy parseStrategy(String strat) {
         GameStrategy strategy = null;
         if ("-m".equals(strat)) {
             strategy = new MTDfStrategy();
+        } else if ("-l".equals(strat)) {
+            strategy = new LazySMPStrategy();
+        } else if ("-y".equals(strat)) {
+            strategy = new YBWCStrategy();
+        } else if ("-s".equals(strat)) {
+            strategy = new SolverStrategy();
         } else if ("-n".equals(strat)) {
             strategy = new NegaMaxStrategy();
         } else if ("-r".equals(strat)) {
@@ -238,6 +264,20 @@ public class FourCharmTUI implements FourCharmView, Observer, Runnable {
         return strategy;
     }
 
+    /**
+     * Lets a searching strategy play from the default opening book when there is one.
+     *
+     * @param strat The strategy, may be {@code null}.
+     * @return The strategy which uses the opening book.
+     */
+    private GameStrategy withBook(GameStrategy strat) {
+        GameStrategy strategy = strat;
+        if (!(strat instanceof RandomStrategy)) {
+            strategy = BookStrategy.withDefaultBook(strat);
+        }
+        return strategy;
+    }
+
     /**
      * Connects a networkgame.
      *
@@ -252,7 +292,14 @@ public class FourCharmTUI implements FourCharmView, Observer, Runnable {
             if (strat instanceof MTDfStrategy) {
                 int time = Integer.parseInt(args[4]);
                 strat = new MTDfStrategy(time);
+            } else if (strat instanceof LazySMPStrategy) {
+                int time = Integer.parseInt(args[4]);
+                strat = new LazySMPStrategy(time);
+            } else if (strat instanceof SolverStrategy) {
+                int time = Integer.parseInt(args[4]);
+                strat = new SolverStrategy(time);
             }
+            strat = withBook(strat);
             controller.startNetworkGame(host, port, playerName, strat);
 
         } catch (NumberFormatException | ServerConnectionException e) {
@@ -418,10 +465,10 @@ public class FourCharmTUI implements FourCharmView, Observer, Runnable {
      */
     private enum Command {
         CHAT("Chatmessage"),
-        CONNECT("Host", "Port", "Playername", "| -m (MTDF) | -r (Random) | -h (Human)"
+        CONNECT("Host", "Port", "Playername", "| " + AI_OPTIONS + " | -h (Human)"
                 , "Thinking time (s)"),
-        LOCAL("Playername | -m (MTDF) | -n (NegaMax) | -r (Random)",
-                "Playername | -m (MTDF) | -n (NegaMax) | -r (Random)", "Thinking time (s)"),
+        LOCAL("Playername | " + AI_OPTIONS + " | -n (NegaMax)",
+                "Playername | " + AI_OPTIONS + " | -n (NegaMax)", "Thinking time (s)"),
         HINT(),
         READY(),
         DISCONNECT(),
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+/**
+ * Access to virtual threads. This version is compiled for Java 21 into META-INF/versions/21
+ * of the multi-release jar and replaces the version for older runtimes.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+        // Hide the public constructor
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads.
+     *
+     * @return {@code true}, Java 21 has virtual threads.
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates a virtual thread which is not started yet.
+     *
+     * @param task The task the thread will run.
+     * @param name The name of the thread.
+     * @return The new virtual thread.
+     */
+    static Thread newThread(Runnable task, String name) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+}
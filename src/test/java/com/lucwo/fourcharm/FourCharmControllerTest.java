@@ -15,12 +15,17 @@ import com.lucwo.fourcharm.model.player.LocalHumanPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
 import com.lucwo.fourcharm.view.FourCharmTUI;
 import com.lucwo.fourcharm.view.FourCharmView;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class FourCharmControllerTest {
 
@@ -131,6 +136,7 @@ public class FourCharmControllerTest {
 
         controller.setGame(game);
 
+        final CountDownLatch moveMade = new CountDownLatch(1);
         new Expectations() {
             {
                 game.getCurrent(); result = p1;
@@ -138,10 +144,18 @@ public class FourCharmControllerTest {
                 view.requestMove(); result = 2;
                 game.getBoard().getColumns(); result = 6;
                 game.getBoard().columnHasFreeSpace(anyInt); result = true;
+                view.disableHint();
+                result = new Delegate() {
+                    void disableHint() {
+                        moveMade.countDown();
+                    }
+                };
             }
         };
 
         controller.update(game, null);
+        // The human is asked for the move on a thread of its own
+        assertTrue(moveMade.await(1, TimeUnit.SECONDS));
 
     }
 
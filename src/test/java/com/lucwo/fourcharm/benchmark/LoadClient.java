@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.benchmark;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.ai.GameStrategy;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import com.lucwo.fourcharm.util.ExtensionFactory;
+import nl.woutertimmermans.connect4.protocol.exceptions.C4Exception;
+import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatClient;
+import nl.woutertimmermans.connect4.protocol.fgroup.chat.ChatServer;
+import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreClient;
+import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreServer;
+import nl.woutertimmermans.connect4.protocol.parameters.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * One simulated client of the {@link LoadTest}. It speaks the protocol with the same
+ * protocol classes as the {@link com.lucwo.fourcharm.client.ServerHandler}: it joins, plays
+ * its moves with a strategy, says it is ready again after every game and chats when asked.
+ * Everything it measures is recorded in the {@link LoadStats} shared by all clients. The
+ * commands it sends are synchronized, so chat sent by the load test never interleaves with
+ * a move.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class LoadClient implements CoreClient.Iface, ChatClient.Iface, Runnable {
+
+    private static final int GROUP_NUMBER = 23;
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadClient.class);
+
+    // ------------------ Instance variables ----------------
+
+    private final String name;
+    private final InetSocketAddress address;
+    private final GameStrategy strategy;
+    private final LoadStats stats;
+    private final boolean chat;
+    private Socket sock;
+    private BufferedReader in;
+    private CoreServer.Client coreServerClient;
+    private ChatServer.Client chatServerClient;
+    private CoreClient.Processor<LoadClient> coreProcessor;
+    private ChatClient.Processor<LoadClient> chatProcessor;
+    private volatile boolean running;
+    private long connectStart;
+    private long moveSent;
+    private Board board;
+    private String player1;
+
+    // --------------------- Constructors -------------------
+
+    /**
+     * Constructs a simulated client.
+     *
+     * @param name     The name the client joins with.
+     * @param address  The address of the server.
+     * @param strategy The strategy which determines the moves of the client.
+     * @param stats    The statistics of the load test.
+     * @param chat     Whether the client supports the chat extension.
+     */
+    public LoadClient(String name, InetSocketAddress address, GameStrategy strategy,
+                      LoadStats stats, boolean chat) {
+        this.name = name;
+        this.address = address;
+        this.strategy = strategy;
+        this.stats = stats;
+        this.chat = chat;
+        running = true;
+    }
+
+    // ----------------------- Commands ---------------------
+
+    /**
+     * Connects to the server, joins and handles the commands of the server until the client
+     * is stopped or disconnected.
+     */
+    @Override
+    public void run() {
+        try {
+            connectStart = System.nanoTime();
+            sock = new Socket(address.getAddress(), address.getPort());
+            in = new BufferedReader(new InputStreamReader(sock.getInputStream(),
+                    StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(
+                    new OutputStreamWriter(sock.getOutputStream(), StandardCharsets.UTF_8));
+            coreServerClient = new CoreServer.Client(out);
+            chatServerClient = new ChatServer.Client(chat ? out : null);
+            coreProcessor = new CoreClient.Processor<>(this);
+            chatProcessor = new ChatClient.Processor<>(this);
+
+            Set<Extension> extensions = chat
+                    ? new HashSet<>(Collections.singleton(ExtensionFactory.chat()))
+                    : new HashSet<>();
+            coreServerClient.join(name, GROUP_NUMBER, extensions);
+            handleServerCommands();
+        } catch (IOException | C4Exception e) {
+            LOGGER.trace("run", e);
+            if (running) {
+                stats.connectionFailed();
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private void handleServerCommands() throws IOException, C4Exception {
+        String input = in.readLine();
+        while (running && input != null) {
+            if (!coreProcessor.process(input)) {
+                chatProcessor.process(input);
+            }
+            input = in.readLine();
+        }
+        if (running) {
+            stats.connectionFailed();
+        }
+    }
+
+    /**
+     * Sends a global chat message, if the client supports chat.
+     *
+     * @param message The message.
+     */
+    public synchronized void chat(String message) {
+        if (chat && chatServerClient != null) {
+            try {
+                chatServerClient.chatGlobal(message);
+                stats.chatSent();
+            } catch (C4Exception e) {
+                LOGGER.trace("chat", e);
+            }
+        }
+    }
+
+    /**
+     * Disconnects from the server.
+     */
+    public void stop() {
+        running = false;
+        if (sock != null) {
+            try {
+                sock.close();
+            } catch (IOException e) {
+                LOGGER.trace("stop", e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void accept(int gNumber, Set<Extension> exts) throws C4Exception {
+        stats.connected(System.nanoTime() - connectStart);
+        coreServerClient.ready();
+    }
+
+    @Override
+    public void startGame(String p1, String p2) {
+        board = new BinaryBoard();
+        player1 = p1;
+    }
+
+    @Override
+    public synchronized void requestMove(String player) throws C4Exception {
+        if (name.equals(player)) {
+            int col = strategy.determineMove(board.deepCopy(), markOf(player));
+            moveSent = System.nanoTime();
+            coreServerClient.doMove(col);
+        }
+    }
+
+    @Override
+    public void doneMove(String player, int col) {
+        if (name.equals(player) && moveSent != 0) {
+            stats.moved(System.nanoTime() - moveSent);
+            moveSent = 0;
+        }
+        try {
+            board.makemove(col, markOf(player));
+        } catch (InvalidMoveException e) {
+            LOGGER.trace("doneMove", e);
+            stats.error();
+        }
+    }
+
+    @Override
+    public synchronized void gameEnd(String player) throws C4Exception {
+        // Both players are told, only the first player counts the game
+        if (name.equals(player1)) {
+            stats.gameEnded();
+        }
+        if (running) {
+            coreServerClient.ready();
+        }
+    }
+
+    @Override
+    public void error(int eCode, String message) {
+        LOGGER.debug("Error {} for {}: {}", eCode, name, message);
+        stats.error();
+    }
+
+    @Override
+    public void message(String playerName, String message) {
+        stats.chatReceived();
+    }
+
+    private Mark markOf(String player) {
+        return player.equals(player1) ? Mark.P1 : Mark.P2;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.benchmark;
+
+import com.lucwo.fourcharm.util.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The measurements of a {@link LoadTest}, shared by all its clients.
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class LoadStats {
+
+    private final Histogram connectTimes = new Histogram();
+    private final Histogram moveTimes = new Histogram();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong failedConnections = new AtomicLong();
+    private final AtomicLong chatsSent = new AtomicLong();
+    private final AtomicLong chatsReceived = new AtomicLong();
+
+    // ----------------------- Queries ----------------------
+
+    /**
+     * @return The times from opening a connection until the server accepted the join.
+     */
+    public Histogram getConnectTimes() {
+        return connectTimes;
+    }
+
+    /**
+     * @return The round-trip times from sending a move until the server confirmed it.
+     */
+    public Histogram getMoveTimes() {
+        return moveTimes;
+    }
+
+    /**
+     * @return The amount of games which have ended.
+     */
+    public long getGames() {
+        return games.get();
+    }
+
+    /**
+     * @return The amount of errors sent by the server and invalid moves it confirmed.
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return The amount of connections which failed or were closed by the server.
+     */
+    public long getFailedConnections() {
+        return failedConnections.get();
+    }
+
+    /**
+     * @return The amount of chat messages sent.
+     */
+    public long getChatsSent() {
+        return chatsSent.get();
+    }
+
+    /**
+     * @return The amount of chat messages received.
+     */
+    public long getChatsReceived() {
+        return chatsReceived.get();
+    }
+
+    // ----------------------- Commands ---------------------
+
+    void connected(long nanos) {
+        connectTimes.record(nanos);
+    }
+
+    void moved(long nanos) {
+        moveTimes.record(nanos);
+    }
+
+    void gameEnded() {
+        games.incrementAndGet();
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    void connectionFailed() {
+        failedConnections.incrementAndGet();
+    }
+
+    void chatSent() {
+        chatsSent.incrementAndGet();
+    }
+
+    void chatReceived() {
+        chatsReceived.incrementAndGet();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.benchmark;
+
+import com.lucwo.fourcharm.exception.ServerStartException;
+import com.lucwo.fourcharm.model.ai.RandomStrategy;
+import com.lucwo.fourcharm.server.FourCharmServer;
+import com.lucwo.fourcharm.util.Threads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates many clients which play games against each other on one server, to measure how
+ * the server behaves under load. Every client plays random moves and is ready for a new game
+ * as soon as its game has ended, half of the clients support chat and send global chat
+ * messages at the given total rate. When no host is given a server is started in this
+ * process on a free port.
+ * <p>
+ * The test reports the time needed to connect and join, the round-trip time of the moves,
+ * the amount of games per second and the errors sent by the server. The clients use one
+ * thread each, start the test with {@code -Dfourcharm.virtualThreads=true} on Java 21 to
+ * simulate thousands of clients.
+ * <p>
+ * Usage: LoadTest [clients] [seconds] [chat messages per second] [host port]
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class LoadTest {
+
+    /**
+     * Default amount of clients.
+     */
+    public static final int DEF_CLIENTS = 1000;
+    /**
+     * Default duration of the test in seconds.
+     */
+    public static final int DEF_SECONDS = 30;
+    /**
+     * Default amount of chat messages per second.
+     */
+    public static final int DEF_CHAT_RATE = 100;
+    private static final long SEED = 2015L;
+    private static Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    private LoadTest() {
+        super();
+        // Hide the public constructor
+    }
+
+    private static FourCharmServer startServer() throws ServerStartException {
+        FourCharmServer server = new FourCharmServer(0);
+        server.openSocket();
+        Thread thread = new Thread(server::startServer, "LoadTestServer");
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+
+    private static ScheduledExecutorService startChat(List<LoadClient> clients, int rate) {
+        ScheduledExecutorService chat = Executors.newSingleThreadScheduledExecutor();
+        if (rate > 0) {
+            Random random = new Random(SEED);
+            chat.scheduleAtFixedRate(() ->
+                    clients.get(random.nextInt(clients.size())).chat("load test"),
+                    0, TimeUnit.SECONDS.toMicros(1) / rate, TimeUnit.MICROSECONDS);
+        }
+        return chat;
+    }
+
+    /**
+     * Run the load test.
+     *
+     * @param args The amount of clients, the duration in seconds, the chat rate and the host
+     *             and port of the server.
+     * @throws Exception When the server can not be started or the test is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : DEF_CLIENTS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEF_SECONDS;
+        int chatRate = args.length > 2 ? Integer.parseInt(args[2]) : DEF_CHAT_RATE;
+        FourCharmServer server = null;
+        InetSocketAddress address;
+        if (args.length > 4) {
+            address = new InetSocketAddress(args[3], Integer.parseInt(args[4]));
+        } else {
+            server = startServer();
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    server.getSocketPort());
+        }
+
+        LoadStats stats = new LoadStats();
+        List<LoadClient> clients = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < clientCount; i++) {
+            LoadClient client = new LoadClient("load" + i, address, new RandomStrategy(),
+                    stats, i % 2 == 0);
+            clients.add(client);
+            Threads.newThread(client, "LoadClient-" + i).start();
+        }
+        ScheduledExecutorService chat = startChat(clients, chatRate);
+
+        TimeUnit.SECONDS.sleep(seconds);
+        chat.shutdownNow();
+        clients.forEach(LoadClient::stop);
+        if (server != null) {
+            server.stop();
+        }
+        double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+
+        logger.info("clients: {} seconds: {} chat rate: {}/s", clientCount, seconds, chatRate);
+        logger.info("connect: {}", stats.getConnectTimes());
+        logger.info("move round trip: {}", stats.getMoveTimes());
+        logger.info("games: {} ({} games/s)", stats.getGames(),
+                String.format("%.1f", stats.getGames() / elapsed));
+        logger.info("chat sent: {} received: {}", stats.getChatsSent(),
+                stats.getChatsReceived());
+        logger.info("errors: {} failed connections: {}", stats.getErrors(),
+                stats.getFailedConnections());
+    }
+}
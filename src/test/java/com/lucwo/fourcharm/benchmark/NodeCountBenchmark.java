@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.benchmark;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.ai.NegaMaxStrategy;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Counts the nodes the {@link NegaMaxStrategy} evaluates on a fixed suite of positions,
+ * to measure how well the search orders its moves. Every position is searched to the same
+ * depth starting with an empty transposition table, so the counts of two versions of the
+ * search can be compared directly.
+ * <p>
+ * Usage: NodeCountBenchmark [depth]
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class NodeCountBenchmark {
+
+    /**
+     * Amount of positions of every opening length.
+     */
+    public static final int POSITIONS = 8;
+    /**
+     * Amounts of random moves played to create the positions.
+     */
+    public static final int[] OPENING_PLIES = {4, 8, 12};
+    /**
+     * Default search depth.
+     */
+    public static final int DEF_DEPTH = 10;
+    private static final long SEED = 2015L;
+    private static Logger logger = LoggerFactory.getLogger(NodeCountBenchmark.class);
+
+    private NodeCountBenchmark() {
+        super();
+        // Hide the public constructor
+    }
+
+    private static List<Board> createPositions(int plies) throws InvalidMoveException {
+        Random random = new Random(SEED + plies);
+        List<Board> positions = new ArrayList<>();
+
+        while (positions.size() < POSITIONS) {
+            Board board = new BinaryBoard();
+            Mark mark = Mark.P1;
+            while (board.getPlieCount() < plies && !board.hasWon(mark.other())) {
+                int col = random.nextInt(board.getColumns());
+                if (board.columnHasFreeSpace(col)) {
+                    board.makemove(col, mark);
+                    mark = mark.other();
+                }
+            }
+            if (!board.hasWon(mark.other())) {
+                positions.add(board);
+            }
+        }
+
+        return positions;
+    }
+
+    private static long runBenchmark(List<Board> positions, int depth) {
+        NegaMaxStrategy strategy = new NegaMaxStrategy(depth);
+        long nodes = 0;
+
+        for (Board position : positions) {
+            Mark mark = position.getPlieCount() % 2 == 0 ? Mark.P1 : Mark.P2;
+            strategy.clearTable();
+            strategy.determineMove(position.deepCopy(), mark, depth);
+            nodes += strategy.getCounter();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The search depth.
+     * @throws InvalidMoveException
+     */
+    public static void main(String[] args) throws InvalidMoveException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEF_DEPTH;
+        long totalNodes = 0;
+        long start = System.currentTimeMillis();
+
+        for (int plies : OPENING_PLIES) {
+            long nodes = runBenchmark(createPositions(plies), depth);
+            totalNodes += nodes;
+            logger.info("plies: {} depth: {} nodes: {}", plies, depth, nodes);
+        }
+
+        logger.info("total nodes: {} time: {} ms", totalNodes,
+                System.currentTimeMillis() - start);
+    }
+}
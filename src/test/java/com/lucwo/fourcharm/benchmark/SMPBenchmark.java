@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.benchmark;
+
+import com.lucwo.fourcharm.exception.InvalidMoveException;
+import com.lucwo.fourcharm.model.ai.LazySMPStrategy;
+import com.lucwo.fourcharm.model.ai.NegaMaxStrategy;
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the speedup of the {@link LazySMPStrategy} for different amounts of threads.
+ * Every thread count searches the same set of positions to a fixed depth, starting with
+ * an empty transposition table.
+ * <p>
+ * Usage: SMPBenchmark [depth] [thread count]...
+ *
+ * @author Luce Sandfort and Wouter Timmermans
+ */
+public class SMPBenchmark {
+
+    /**
+     * Amount of positions that are searched for every thread count.
+     */
+    public static final int POSITIONS = 10;
+    /**
+     * Amount of random moves played to create a position.
+     */
+    public static final int OPENING_PLIES = 6;
+    /**
+     * Default search depth.
+     */
+    public static final int DEF_DEPTH = 12;
+    /**
+     * Thinking time which is long enough for every search to complete its depth.
+     */
+    public static final long TIME = 3600;
+    private static final int[] DEF_THREADS = {1, 2, 4, 8, 16};
+    private static final long SEED = 2015L;
+    private static Logger logger = LoggerFactory.getLogger(SMPBenchmark.class);
+
+    private SMPBenchmark() {
+        super();
+        // Hide the public constructor
+    }
+
+    private static List<Board> createPositions() throws InvalidMoveException {
+        Random random = new Random(SEED);
+        List<Board> positions = new ArrayList<>();
+
+        while (positions.size() < POSITIONS) {
+            Board board = new BinaryBoard();
+            Mark mark = Mark.P1;
+            while (board.getPlieCount() < OPENING_PLIES && !board.hasWon(mark.other())) {
+                int col = random.nextInt(board.getColumns());
+                if (board.columnHasFreeSpace(col)) {
+                    board.makemove(col, mark);
+                    mark = mark.other();
+                }
+            }
+            if (!board.hasWon(mark.other())) {
+                positions.add(board);
+            }
+        }
+
+        return positions;
+    }
+
+    private static long runBenchmark(List<Board> positions, int depth, int threads) {
+        LazySMPStrategy strategy = new LazySMPStrategy(TIME, threads);
+        new NegaMaxStrategy().clearTable();
+        long nodes = 0;
+        long start = System.currentTimeMillis();
+
+        for (Board position : positions) {
+            Mark mark = position.getPlieCount() % 2 == 0 ? Mark.P1 : Mark.P2;
+            strategy.determineMove(position, mark, depth);
+            nodes += strategy.getNodeCount();
+        }
+
+        long duration = System.currentTimeMillis() - start;
+        logger.info("threads: {} time: {} ms nodes: {}", threads, duration, nodes);
+        return duration;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args The search depth followed by the thread counts to measure.
+     * @throws InvalidMoveException
+     */
+    public static void main(String[] args) throws InvalidMoveException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEF_DEPTH;
+        int[] threadCounts = DEF_THREADS;
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<Board> positions = createPositions();
+        // Warm up the JIT before measuring
+        runBenchmark(positions, depth / 2, 1);
+
+        long baseline = 0;
+        for (int threads : threadCounts) {
+            long duration = runBenchmark(positions, depth, threads);
+            if (baseline == 0) {
+                baseline = duration;
+            }
+            logger.info("speedup with {} threads: {}", threads,
+                    (double) baseline / Math.max(1, duration));
+        }
+    }
+}
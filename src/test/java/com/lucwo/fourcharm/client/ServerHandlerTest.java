@@ -17,7 +17,7 @@ import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreServer;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.net.Socket;
 import java.util.HashSet;
 
@@ -59,11 +59,11 @@ public class ServerHandlerTest {
     }
 
     @Test
-    public void testHandleServerCommands(@Mocked BufferedReader anyReader) throws Exception {
+    public void testHandleServerCommands(@Mocked DataInputStream anyStream) throws Exception {
 
         new Expectations() {{
-            anyReader.readLine();
-            returns("hoi", "hallo", (Object) null);
+            anyStream.read();
+            returns((int) 'h', (int) 'o', (int) 'i', (int) '\n', -1);
 
         }};
 
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.ASyncPlayer;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ASyncPlayerTest {
+
+    ASyncPlayer player;
+    Board board;
+
+    @Before
+    public void setUp() throws Exception {
+        player = new ASyncPlayer("Wouter", Mark.P1);
+        board = new BinaryBoard();
+    }
+
+    @Test
+    public void testQueueMoveCompletesRequest() throws Exception {
+        CompletableFuture<Integer> move = player.determineMoveAsync(board);
+        assertFalse(move.isDone());
+
+        player.queueMove(4);
+        assertTrue(move.isDone());
+        assertEquals(4, (int) move.get());
+    }
+
+    @Test
+    public void testQueueMoveBeforeRequest() throws Exception {
+        player.queueMove(2);
+
+        assertEquals(2, player.determineMove(board));
+        assertFalse(player.determineMoveAsync(board).isDone());
+    }
+
+    @Test
+    public void testAbortMove() throws Exception {
+        CompletableFuture<Integer> move = player.determineMoveAsync(board);
+        player.abortMove();
+
+        assertEquals(ASyncPlayer.ABORTED_MOVE, (int) move.get());
+    }
+}
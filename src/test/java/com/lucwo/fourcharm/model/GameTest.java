@@ -4,14 +4,21 @@
 
 package com.lucwo.fourcharm.model;
 
+import com.lucwo.fourcharm.exception.InvalidMoveException;
 import com.lucwo.fourcharm.model.ai.RandomStrategy;
 import com.lucwo.fourcharm.model.board.ReferenceBoard;
+import com.lucwo.fourcharm.model.player.ASyncPlayer;
 import com.lucwo.fourcharm.model.player.LocalAIPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
 import com.lucwo.fourcharm.model.player.Player;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.Assert.*;
 
 public class GameTest {
@@ -72,4 +79,87 @@ public class GameTest {
         game.play();
         assertNotNull(game.getCurrent());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStartAndMakeMove() throws Exception {
+        List<Player> turns = new ArrayList<>();
+        game.addObserver((o, arg) -> turns.add(game.getCurrent()));
+
+        game.start();
+        assertEquals(p1, game.getCurrent());
+        assertFalse(game.isValidMove(-1));
+        assertTrue(game.isValidMove(3));
+
+        game.makeMove(p1, 3);
+        assertEquals(p2, game.getCurrent());
+        assertEquals(1, game.plieCount());
+        assertEquals(Arrays.asList(p1, p2), turns);
+    }
+
+    @Test(expected = InvalidMoveException.class)
+    public void testMakeMoveWrongPlayer() throws Exception {
+        game.start();
+        game.makeMove(p2, 3);
+    }
+
+    @Test(expected = InvalidMoveException.class)
+    public void testMakeMoveBeforeStart() throws Exception {
+        game.makeMove(p1, 3);
+    }
+
+    @Test
+    public void testMakeMoveWins() throws Exception {
+        List<Boolean> finished = new ArrayList<>();
+        game.addObserver((o, arg) -> finished.add(game.hasFinished()));
+        game.start();
+
+        for (int i = 0; i < 3; i++) {
+            game.makeMove(p1, 0);
+            game.makeMove(p2, 1);
+        }
+        game.makeMove(p1, 0);
+
+        assertTrue(game.hasFinished());
+        assertEquals(p1, game.getWinner());
+        assertTrue(finished.get(finished.size() - 1));
+        assertFalse(game.isValidMove(2));
+    }
+
+    @Test
+    public void testShutdownStopsMoves() throws Exception {
+        game.start();
+        game.shutdown();
+
+        assertFalse(game.isValidMove(3));
+    }
+
+    @Test
+    public void testPlayAsync() throws Exception {
+        ASyncPlayer human1 = new ASyncPlayer("Wouter", Mark.P1);
+        ASyncPlayer human2 = new ASyncPlayer("Luce", Mark.P2);
+        game = new Game(ReferenceBoard.class, human1, human2);
+
+        CompletableFuture<Player> result = game.playAsync();
+        for (int i = 0; i < 3; i++) {
+            human1.queueMove(0);
+            human2.queueMove(1);
+        }
+        assertFalse(result.isDone());
+        human1.queueMove(0);
+
+        assertTrue(result.isDone());
+        assertEquals(human1, result.get());
+    }
+
+    @Test
+    public void testPlayAsyncShutdown() throws Exception {
+        ASyncPlayer human = new ASyncPlayer("Wouter", Mark.P1);
+        game = new Game(ReferenceBoard.class, human, p2);
+
+        CompletableFuture<Player> result = game.playAsync();
+        game.shutdown();
+
+        assertTrue(result.isDone());
+        assertNull(result.get());
+    }
+}
@@ -12,6 +12,8 @@ import com.lucwo.fourcharm.model.player.Mark;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -37,6 +39,14 @@ public class LocalAIPlayerTest {
 
     }
 
+    @Test
+    public void testDetermineMoveAsync() throws Exception {
+
+        int move = player.determineMoveAsync(board).get(1, TimeUnit.SECONDS);
+        assertTrue(board.columnHasFreeSpace(move));
+
+    }
+
     @Test
     public void testGetMark() throws Exception {
         assertEquals(player.getMark(), Mark.P1);
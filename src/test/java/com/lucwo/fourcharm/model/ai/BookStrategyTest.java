@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class BookStrategyTest {
+
+    public static final int FALLBACK_MOVE = 6;
+
+    private Path file;
+    private BookStrategy strat;
+
+    @Before
+    public void setUp() throws Exception {
+        SortedMap<Long, NegaMaxStrategy.Result> entries = new TreeMap<>();
+        entries.put(OpeningBookGenerator.canonicalCode(new BinaryBoard()),
+                new NegaMaxStrategy.Result(3, 1));
+
+        file = Files.createTempFile("fourcharm", ".book");
+        OpeningBook.write(file, 1, entries);
+        strat = new BookStrategy(OpeningBook.open(file), (b, m) -> FALLBACK_MOVE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testBookHitAndMiss() throws Exception {
+        Board board = new BinaryBoard();
+        assertEquals(3, strat.determineMove(board, Mark.P1));
+
+        board.makemove(3, Mark.P1);
+        board.makemove(3, Mark.P2);
+        assertEquals(FALLBACK_MOVE, strat.determineMove(board, Mark.P1));
+
+        assertEquals(1, strat.getHits());
+        assertEquals(2, strat.getLookups());
+        assertEquals(0.5, strat.getHitRate(), 0);
+    }
+
+    @Test
+    public void testCountersResetOnNewGame() throws Exception {
+        Board board = new BinaryBoard();
+        board.makemove(0, Mark.P1);
+        strat.determineMove(board, Mark.P2);
+        board.makemove(0, Mark.P2);
+        strat.determineMove(board, Mark.P1);
+
+        strat.determineMove(new BinaryBoard(), Mark.P1);
+
+        assertEquals(1, strat.getHits());
+        assertEquals(1, strat.getLookups());
+    }
+}
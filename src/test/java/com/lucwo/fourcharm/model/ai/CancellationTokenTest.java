@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testCancel() throws Exception {
+        CancellationToken token = new CancellationToken();
+        assertFalse(token.isCancelled());
+        assertFalse(token.checkDeadline());
+
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertEquals(0, token.remaining());
+    }
+
+    @Test
+    public void testDeadlinePassed() throws Exception {
+        CancellationToken token = new CancellationToken(System.currentTimeMillis() - 1);
+        // The deadline is only noticed when it is checked
+        assertFalse(token.isCancelled());
+
+        assertTrue(token.checkDeadline());
+        assertTrue(token.isCancelled());
+    }
+
+    @Test
+    public void testDeadlineNotPassed() throws Exception {
+        CancellationToken token = new CancellationToken(System.currentTimeMillis() + 60_000);
+
+        assertFalse(token.checkDeadline());
+        assertTrue(token.remaining() > 0);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LazySMPStrategyTest {
+
+    public static final int THREADS = 4;
+    public static final int DEPTH = 6;
+
+    private LazySMPStrategy strat;
+    private Board board;
+
+    @Before
+    public void setUp() throws Exception {
+        strat = new LazySMPStrategy(10, THREADS);
+        board = new BinaryBoard();
+    }
+
+    @Test
+    public void testDoMove() throws Exception {
+        assertTrue(board.columnHasFreeSpace(strat.determineMove(board, Mark.P1, DEPTH)));
+        assertEquals(DEPTH, strat.getAchievedDepth());
+    }
+
+    @Test
+    public void testBoardUnchanged() throws Exception {
+        board.makemove(3, Mark.P1);
+        board.makemove(3, Mark.P2);
+        strat.determineMove(board, Mark.P1, DEPTH);
+
+        assertEquals(2, board.getPlieCount());
+    }
+
+    @Test
+    public void testFindsWinningMove() throws Exception {
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(2, Mark.P1);
+            board.makemove(5, Mark.P2);
+        }
+
+        assertEquals(2, strat.determineMove(board, Mark.P1));
+    }
+
+    @Test
+    public void testBlocksLosingMove() throws Exception {
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(i == 0 ? 0 : 6, Mark.P1);
+            board.makemove(4, Mark.P2);
+        }
+
+        assertEquals(4, strat.determineMove(board, Mark.P1, DEPTH));
+    }
+}
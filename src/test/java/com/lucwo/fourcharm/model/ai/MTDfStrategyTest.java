@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MTDfStrategyTest {
+
+    public static final int TIME = 1;
+    /**
+     * Time in milliseconds determineMove may take after the deadline of its token.
+     */
+    public static final long MAX_OVERTIME = 5;
+    /**
+     * Thinking time in milliseconds of the timed searches.
+     */
+    public static final long SEARCH_TIME = 200;
+    /**
+     * Amount of timed searches of which the fastest has to stop in time, so a thread which
+     * is not scheduled for a moment does not fail the test. The first search also compiles
+     * the search code.
+     */
+    public static final int ATTEMPTS = 3;
+
+    private ThreadPoolExecutor pool;
+    private MTDfStrategy strat;
+    private Board board;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        strat = new MTDfStrategy(TIME, pool);
+        board = new BinaryBoard();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testReturnsBeforeDeadline() throws Exception {
+        long overtime = Long.MAX_VALUE;
+        for (int i = 0; i < ATTEMPTS && overtime > MAX_OVERTIME; i++) {
+            long deadline = System.currentTimeMillis() + SEARCH_TIME;
+            int move = strat.determineMove(board, Mark.P1, new CancellationToken(deadline));
+            overtime = Math.min(overtime, System.currentTimeMillis() - deadline);
+
+            assertTrue(board.columnHasFreeSpace(move));
+        }
+
+        assertTrue("Took " + overtime + " ms too long", overtime <= MAX_OVERTIME);
+    }
+
+    @Test
+    public void testStopsRunningSearches() throws Exception {
+        strat.determineMove(board, Mark.P1, new CancellationToken(System.currentTimeMillis()
+                + SEARCH_TIME));
+        long idleDeadline = System.currentTimeMillis() + MAX_OVERTIME;
+        while (pool.getActiveCount() > 0 && System.currentTimeMillis() < idleDeadline) {
+            Thread.yield();
+        }
+
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void testCancelsToken() throws Exception {
+        CancellationToken cancellation = new CancellationToken(System.currentTimeMillis()
+                + TIME * 1000L);
+        int move = strat.determineMove(board, Mark.P1, cancellation);
+
+        assertTrue(board.columnHasFreeSpace(move));
+        assertTrue(cancellation.isCancelled());
+        assertEquals(0, cancellation.remaining());
+    }
+
+    @Test
+    public void testCancelledTokenStopsSearch() throws Exception {
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+
+        assertTrue(board.columnHasFreeSpace(strat.determineMove(board, Mark.P1, cancellation)));
+    }
+
+    @Test
+    public void testFindsWinningMove() throws Exception {
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(2, Mark.P1);
+            board.makemove(5, Mark.P2);
+        }
+
+        assertEquals(2, strat.determineMove(board, Mark.P1));
+    }
+
+    @Test(timeout = 10000)
+    public void testStopsWhenFullySearched() throws Exception {
+        int[] moves = {0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 2, 2, 4, 3, 3, 3, 3,
+            3, 3, 4, 4, 4, 4, 4, 5, 5, 5, 5, 5, 5, 6, 6};
+        Mark mark = Mark.P1;
+        for (int move : moves) {
+            board.makemove(move, mark);
+            mark = mark.other();
+        }
+        // Without a deadline the search only stops because the board has been searched
+        strat.determineMove(board, mark, new CancellationToken());
+    }
+}
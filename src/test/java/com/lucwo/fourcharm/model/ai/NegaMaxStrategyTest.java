@@ -6,10 +6,12 @@ package com.lucwo.fourcharm.model.ai;
 
 import com.lucwo.fourcharm.model.board.BinaryBoard;
 import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.board.ReferenceBoard;
 import com.lucwo.fourcharm.model.player.Mark;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class NegaMaxStrategyTest {
@@ -36,4 +38,101 @@ public class NegaMaxStrategyTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNegaMaxRestoresBoard() throws Exception {
+        board.makemove(3, Mark.P1);
+        board.makemove(2, Mark.P2);
+        Board before = board.deepCopy();
+
+        strat.negaMax(board, Mark.P1, -NegaMaxStrategy.INFINITY,
+                NegaMaxStrategy.INFINITY, NEGA_DEPT);
+
+        assertTrue(board.equals(before));
+        assertTrue(board.getPlieCount() == before.getPlieCount());
+    }
+
+    @Test
+    public void testBitboardValueEqualsSpotValue() throws Exception {
+        Board reference = new ReferenceBoard();
+        int[] moves = {3, 3, 4, 2, 2, 4, 5, 1, 0, 6, 6, 5};
+
+        Mark mark = Mark.P1;
+        for (int col : moves) {
+            board.makemove(col, mark);
+            reference.makemove(col, mark);
+            mark = mark.other();
+
+            assertEquals(strat.nodeValue(reference, Mark.P1), strat.nodeValue(board, Mark.P1));
+            assertEquals(strat.nodeValue(reference, Mark.P2), strat.nodeValue(board, Mark.P2));
+        }
+    }
+
+    @Test
+    public void testWonBoardValue() throws Exception {
+        for (int i = 0; i < board.getWinStreak(); i++) {
+            board.makemove(0, Mark.P1);
+        }
+
+        assertEquals(NegaMaxStrategy.WIN_SCORE, strat.nodeValue(board, Mark.P1));
+        assertEquals(-NegaMaxStrategy.WIN_SCORE, strat.nodeValue(board, Mark.P2));
+    }
+
+    @Test
+    public void testImmediateWinIsPreferred() throws Exception {
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(0, Mark.P1);
+            board.makemove(6, Mark.P2);
+        }
+        NegaMaxStrategy.Result result = strat.negaMax(board, Mark.P1,
+                -NegaMaxStrategy.INFINITY, NegaMaxStrategy.INFINITY, NEGA_DEPT);
+
+        assertEquals(0, result.column);
+        assertEquals(NegaMaxStrategy.WIN_SCORE - 1, result.value);
+    }
+
+    @Test
+    public void testForcedBlockIsPlayed() throws Exception {
+        int[] moves = {0, 6, 2, 6, 4, 6};
+        Mark mark = Mark.P1;
+        for (int col : moves) {
+            board.makemove(col, mark);
+            mark = mark.other();
+        }
+
+        assertEquals(6, strat.determineMove(board, Mark.P1));
+    }
+
+    @Test
+    public void testMoveOrderDoesNotChangeValue() throws Exception {
+        int[] moves = {3, 3, 4, 2, 2, 4, 5, 1};
+        Mark mark = Mark.P1;
+        for (int col : moves) {
+            board.makemove(col, mark);
+            mark = mark.other();
+        }
+        strat.clearTable();
+        int value = strat.negaMax(board, mark, -NegaMaxStrategy.INFINITY,
+                NegaMaxStrategy.INFINITY, NEGA_DEPT).value;
+
+        for (int offset = 1; offset < board.getColumns(); offset++) {
+            NegaMaxStrategy rotated = new NegaMaxStrategy(NEGA_DEPT, offset);
+            rotated.clearTable();
+            assertEquals(value, rotated.negaMax(board, mark, -NegaMaxStrategy.INFINITY,
+                    NegaMaxStrategy.INFINITY, NEGA_DEPT).value);
+        }
+    }
+
+    @Test
+    public void testExpiredTokenStopsSearch() throws Exception {
+        CancellationToken token = new CancellationToken(System.currentTimeMillis());
+        NegaMaxStrategy aborted = new NegaMaxStrategy(board.getSpotCount(), 0, token);
+        long start = System.currentTimeMillis();
+        aborted.negaMax(board, Mark.P1, -NegaMaxStrategy.INFINITY, NegaMaxStrategy.INFINITY,
+                board.getSpotCount());
+
+        assertTrue(aborted.isAborted());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(0, board.getPlieCount());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.board.ReferenceBoard;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpeningBookTest {
+
+    private Path file;
+    private OpeningBook book;
+
+    @Before
+    public void setUp() throws Exception {
+        SortedMap<Long, NegaMaxStrategy.Result> entries = new TreeMap<>();
+        entries.put(OpeningBookGenerator.canonicalCode(new BinaryBoard()),
+                new NegaMaxStrategy.Result(3, 1));
+        Board board = new BinaryBoard();
+        board.makemove(1, Mark.P1);
+        entries.put(OpeningBookGenerator.canonicalCode(board),
+                new NegaMaxStrategy.Result(2, -2));
+
+        file = Files.createTempFile("fourcharm", ".book");
+        OpeningBook.write(file, 1, entries);
+        book = OpeningBook.open(file);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        assertEquals(1, book.getPlies());
+        assertEquals(2, book.size());
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Board board = new BinaryBoard();
+        assertEquals(3, book.lookup(board));
+
+        board.makemove(1, Mark.P1);
+        assertEquals(2, book.lookup(board));
+    }
+
+    @Test
+    public void testLookupMirrored() throws Exception {
+        Board board = new BinaryBoard();
+        board.makemove(5, Mark.P1);
+
+        assertEquals(4, book.lookup(board));
+    }
+
+    @Test
+    public void testLookupMiss() throws Exception {
+        Board board = new BinaryBoard();
+        board.makemove(3, Mark.P1);
+        assertEquals(-1, book.lookup(board));
+
+        board.makemove(3, Mark.P2);
+        assertEquals(-1, book.lookup(board));
+        assertEquals(-1, book.lookup(new ReferenceBoard()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenInvalidFile() throws Exception {
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        OpeningBook.open(file);
+    }
+
+    @Test
+    public void testMirrorPositionCode() throws Exception {
+        Board board = new BinaryBoard();
+        Board mirror = new BinaryBoard();
+        int[] moves = {0, 1, 1, 3, 6, 6, 2, 2, 2};
+        Mark mark = Mark.P1;
+        for (int move : moves) {
+            board.makemove(move, mark);
+            mirror.makemove(board.getColumns() - 1 - move, mark);
+            mark = mark.other();
+        }
+
+        assertEquals(mirror.positionCode(), BinaryBoard.mirrorPositionCode(board.positionCode()));
+        assertEquals(board.positionCode(), BinaryBoard.mirrorPositionCode(mirror.positionCode()));
+    }
+
+    @Test
+    public void testCollectPositions() throws Exception {
+        List<List<Board>> positions = OpeningBookGenerator.collectPositions(2);
+
+        assertEquals(1, positions.get(0).size());
+        assertEquals(4, positions.get(1).size());
+        // 49 positions of which only both stones in the center column is symmetric
+        assertEquals((49 - 1) / 2 + 1, positions.get(2).size());
+    }
+
+    @Test
+    public void testGeneratedBookRoundTrip() throws Exception {
+        Board root = new BinaryBoard();
+        int[] opening = {5, 5, 6, 4, 0, 1, 5, 3, 1, 6, 4, 0, 4, 5, 5, 3, 6, 3, 5, 4};
+        Mark mark = Mark.P1;
+        for (int move : opening) {
+            root.makemove(move, mark);
+            mark = mark.other();
+        }
+        int plies = 2;
+        OpeningBook.write(file, root.getPlieCount() + plies,
+                OpeningBookGenerator.solvePositions(root, plies));
+        OpeningBook generated = OpeningBook.open(file);
+        SolverStrategy solver = new SolverStrategy();
+
+        List<List<Board>> positions = OpeningBookGenerator.collectPositions(root, plies);
+        for (int ply = 0; ply <= plies; ply++) {
+            Mark current = (root.getPlieCount() + ply) % 2 == 0 ? Mark.P1 : Mark.P2;
+            for (Board board : positions.get(ply)) {
+                assertBestMove(solver, board, current, generated.lookup(board));
+                Board mirror = mirror(board);
+                assertBestMove(solver, mirror, current, generated.lookup(mirror));
+            }
+        }
+    }
+
+    private static void assertBestMove(SolverStrategy solver, Board board, Mark mark, int move)
+            throws Exception {
+        int score = solver.solve(board, mark);
+        assertTrue(board.columnHasFreeSpace(move));
+        Board child = board.deepCopy();
+        child.makemove(move, mark);
+        if (child.hasWon(mark)) {
+            assertTrue(score > 0);
+        } else {
+            assertEquals(score, -solver.solve(child, mark.other()));
+        }
+    }
+
+    private static Board mirror(Board board) throws Exception {
+        Board mirror = new BinaryBoard();
+        for (int row = 0; row < board.getRows(); row++) {
+            for (int col = 0; col < board.getColumns(); col++) {
+                Mark mark = board.getMark(col, row);
+                if (mark != Mark.EMPTY) {
+                    mirror.makemove(board.getColumns() - 1 - col, mark);
+                }
+            }
+        }
+        return mirror;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.board.ReferenceBoard;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SolverStrategyTest {
+
+    public static final int FALLBACK_MOVE = 6;
+
+    private SolverStrategy strat;
+    private Board board;
+
+    @Before
+    public void setUp() throws Exception {
+        strat = new SolverStrategy(SolverStrategy.DEF_SOLVE_TIME, new RandomStrategy());
+        board = new BinaryBoard();
+    }
+
+    private Mark play(Board target, int... moves) throws Exception {
+        Mark mark = Mark.P1;
+        for (int move : moves) {
+            target.makemove(move, mark);
+            mark = mark.other();
+        }
+        return mark;
+    }
+
+    @Test
+    public void testFindsWinningMove() throws Exception {
+        Mark mark = play(board, 2, 5, 2, 5, 2, 6);
+
+        assertEquals(2, strat.determineMove(board, mark));
+        assertEquals((board.getSpotCount() + 1 - board.getPlieCount()) / 2,
+                strat.solve(board, mark));
+    }
+
+    @Test
+    public void testBlocksLosingMove() throws Exception {
+        Mark mark = play(board, 4, 0, 4, 6, 4);
+
+        assertEquals(4, strat.determineMove(board, mark));
+    }
+
+    @Test
+    public void testSolveLostPosition() throws Exception {
+        // P1 threatens to win in column 1 and in column 5, P2 can only block one
+        Mark mark = play(board, 2, 2, 3, 3, 4);
+
+        assertEquals(-(board.getSpotCount() - board.getPlieCount() - 1) / 2,
+                strat.solve(board, mark));
+    }
+
+    @Test
+    public void testBoardUnchanged() throws Exception {
+        Mark mark = play(board, 3, 3, 2, 4, 4, 2, 5, 1, 1, 0, 6, 3, 3, 2);
+        Board copy = board.deepCopy();
+        strat.determineMove(board, mark);
+
+        assertEquals(copy, board);
+    }
+
+    @Test
+    public void testSameScoreOnReferenceBoard() throws Exception {
+        int[] moves = {3, 3, 2, 4, 4, 2, 5, 1, 1, 0, 6, 3, 3, 2};
+        Mark mark = play(board, moves);
+        Board reference = new ReferenceBoard();
+        play(reference, moves);
+
+        assertEquals(strat.solve(board, mark), strat.solve(reference, mark));
+    }
+
+    @Test
+    public void testUsesFallbackWhenOutOfTime() throws Exception {
+        strat = new SolverStrategy(0, (b, m) -> FALLBACK_MOVE);
+
+        assertEquals(FALLBACK_MOVE, strat.determineMove(board, Mark.P1));
+    }
+
+    @Test
+    public void testSolvedMoveIsLegal() throws Exception {
+        Mark mark = play(board, 3, 3, 3, 3, 3, 3, 2, 4, 2, 4);
+
+        assertTrue(board.columnHasFreeSpace(strat.determineMove(board, mark)));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.ai.TranspositionTable.Flag;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TranspositionTableTest {
+
+    private static final int BUCKET_BITS = 4;
+
+    private TranspositionTable table;
+
+    @Before
+    public void setUp() throws Exception {
+
+        table = new TranspositionTable(BUCKET_BITS);
+
+    }
+
+    @Test
+    public void testStoreAndProbe() throws Exception {
+        table.store(12345L, Flag.LOWER_BOUND, 7, -4020, 3);
+        long data = table.probe(12345L);
+
+        assertTrue(data != 0);
+        assertEquals(Flag.LOWER_BOUND, TranspositionTable.flag(data));
+        assertEquals(7, TranspositionTable.depth(data));
+        assertEquals(-4020, TranspositionTable.score(data));
+        assertEquals(3, TranspositionTable.move(data));
+    }
+
+    @Test
+    public void testLossScoreAndNoMove() throws Exception {
+        table.store(42L, Flag.EXACT, 1, -NegaMaxStrategy.WIN_SCORE, -1);
+        long data = table.probe(42L);
+
+        assertEquals(-NegaMaxStrategy.WIN_SCORE, TranspositionTable.score(data));
+        assertEquals(-1, TranspositionTable.move(data));
+    }
+
+    @Test
+    public void testMissingKey() throws Exception {
+        table.store(1L, Flag.EXACT, 3, 10, 0);
+
+        assertEquals(0, table.probe(2L));
+    }
+
+    @Test
+    public void testDeeperEntryIsKept() throws Exception {
+        table.store(99L, Flag.EXACT, 8, 10, 2);
+        table.store(99L, Flag.EXACT, 2, 20, 5);
+
+        assertEquals(8, TranspositionTable.depth(table.probe(99L)));
+
+        table.newSearch();
+        table.store(99L, Flag.EXACT, 2, 20, 5);
+
+        assertEquals(2, TranspositionTable.depth(table.probe(99L)));
+    }
+
+    @Test
+    public void testTableIsBounded() throws Exception {
+        int capacity = table.capacity();
+        for (long key = 1; key <= capacity * 4; key++) {
+            table.store(key, Flag.EXACT, 1, (int) key, 0);
+        }
+
+        int found = 0;
+        for (long key = 1; key <= capacity * 4; key++) {
+            if (table.probe(key) != 0) {
+                found++;
+            }
+        }
+        assertTrue(found <= capacity);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        table.store(7L, Flag.UPPER_BOUND, 4, 1, 1);
+        table.clear();
+
+        assertEquals(0, table.probe(7L));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.model.ai;
+
+import com.lucwo.fourcharm.model.board.BinaryBoard;
+import com.lucwo.fourcharm.model.board.Board;
+import com.lucwo.fourcharm.model.player.Mark;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class YBWCStrategyTest {
+
+    public static final int THREADS = 4;
+    public static final int DEPTH = 7;
+
+    private YBWCStrategy strat;
+    private Board board;
+
+    @Before
+    public void setUp() throws Exception {
+        strat = new YBWCStrategy(DEPTH, THREADS);
+        board = new BinaryBoard();
+    }
+
+    @Test
+    public void testDoMove() throws Exception {
+        assertTrue(board.columnHasFreeSpace(strat.determineMove(board, Mark.P1)));
+        assertEquals(0, board.getPlieCount());
+    }
+
+    @Test
+    public void testFindsWinningMove() throws Exception {
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(2, Mark.P1);
+            board.makemove(5, Mark.P2);
+        }
+
+        assertEquals(2, strat.determineMove(board, Mark.P1));
+    }
+
+    @Test
+    public void testSameMoveAsNegaMax() throws Exception {
+        int[] moves = {3, 3, 4, 2, 2, 4, 5, 1};
+        Mark mark = Mark.P1;
+        for (int move : moves) {
+            board.makemove(move, mark);
+            mark = mark.other();
+        }
+        NegaMaxStrategy nega = new NegaMaxStrategy(DEPTH);
+        nega.clearTable();
+        int expected = nega.determineMove(board.deepCopy(), mark, DEPTH);
+        nega.clearTable();
+
+        assertEquals(expected, strat.determineMove(board, mark));
+    }
+}
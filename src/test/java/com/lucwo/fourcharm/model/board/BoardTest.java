@@ -174,6 +174,32 @@ public class BoardTest {
         }
     }
 
+    @Test
+    public void testIsWinningMove() throws Exception {
+        Mark mark = Mark.P1;
+        for (int i = 0; i < board.getWinStreak() - 1; i++) {
+            board.makemove(1, mark);
+            board.makemove(2, mark.other());
+        }
+        Board before = board.deepCopy();
+
+        assertTrue(board.isWinningMove(1, mark));
+        assertFalse(board.isWinningMove(0, mark));
+        assertTrue(board.isWinningMove(2, mark.other()));
+        assertFalse(board.isWinningMove(1, mark.other()));
+        assertTrue(board.equals(before));
+        assertTrue(board.getPlieCount() == before.getPlieCount());
+    }
+
+    @Test
+    public void fullColumnIsNoWinningMove() throws Exception {
+        int col = board.getColumns() - 1;
+        fillColumn(col);
+
+        assertFalse(board.isWinningMove(col, Mark.P1));
+        assertFalse(board.isWinningMove(col, Mark.P2));
+    }
+
     @Test
     public void testLeftdownRightUpDiagonal() throws InvalidMoveException {
         Mark winner = Mark.P1;
@@ -244,6 +270,38 @@ public class BoardTest {
         assertTrue(board.getPlieCount() == moves);
     }
 
+    @Test
+    public void testUnmakemove() throws Exception {
+        Board before = board.deepCopy();
+        long code = board.positionCode();
+
+        board.makemove(3, Mark.P1);
+        board.makemove(3, Mark.P2);
+        board.makemove(4, Mark.P1);
+        board.unmakemove();
+        board.unmakemove();
+        board.unmakemove();
+
+        assertTrue(board.equals(before));
+        assertTrue(board.positionCode() == code);
+        assertTrue(board.getPlieCount() == 0);
+    }
+
+    @Test
+    public void testUnmakemoveFullColumn() throws Exception {
+        int col = board.getColumns() - 1;
+        fillColumn(col);
+        board.unmakemove();
+        assertTrue(board.columnHasFreeSpace(col));
+        assertTrue(board.getMark(col, board.getRows() - 1) == Mark.EMPTY);
+        assertTrue(board.getMark(col, board.getRows() - 2) != Mark.EMPTY);
+    }
+
+    @Test(expected = InvalidMoveException.class)
+    public void emptyBoardCannotUnmakemove() throws Exception {
+        board.unmakemove();
+    }
+
     @Test
     public void testGetColumns() throws Exception {
 
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientConnectionTest {
+
+    public static final long TIMEOUT = 5;
+
+    private EventLoop loop;
+    private ServerSocketChannel serverChannel;
+    private Socket socket;
+    private ClientConnection connection;
+    private RecordingHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        loop = new EventLoop("TestLoop");
+        loop.start();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socket = new Socket(InetAddress.getLoopbackAddress(),
+                serverChannel.socket().getLocalPort());
+        connection = new ClientConnection(serverChannel.accept(), loop);
+        handler = new RecordingHandler(connection);
+        connection.register(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        socket.close();
+        connection.close();
+        loop.shutdown();
+        serverChannel.close();
+    }
+
+    private void write(byte[] bytes) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(bytes);
+        out.flush();
+    }
+
+    private String nextLine() throws Exception {
+        return handler.lines.poll(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLinesAreFramed() throws Exception {
+        write("ready_for_game\r\njoin Wou".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ready_for_game", nextLine());
+
+        write("ter 23\n\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("join Wouter 23", nextLine());
+        assertEquals("", nextLine());
+    }
+
+    @Test
+    public void testSplitUtf8Character() throws Exception {
+        byte[] line = "chat_global h\u00e9\n".getBytes(StandardCharsets.UTF_8);
+        // Split the line halfway the two bytes of the last character
+        write(Arrays.copyOfRange(line, 0, line.length - 2));
+        Thread.sleep(100);
+        write(Arrays.copyOfRange(line, line.length - 2, line.length));
+
+        assertEquals("chat_global h\u00e9", nextLine());
+    }
+
+    @Test
+    public void testBinaryFrames() throws Exception {
+        byte[] move = {2, 0, 1, 4};
+        write(new byte[]{move[0], move[1]});
+        Thread.sleep(100);
+        write(new byte[]{move[2], move[3], 'r', 'e', 'a', 'd', 'y', '_', 'f', 'o', 'r', '_'});
+        write("game\n".getBytes(StandardCharsets.UTF_8));
+        write(new byte[]{move[0], move[1], move[2], move[3]});
+
+        assertEquals("frame " + Arrays.toString(move), nextLine());
+        assertEquals("ready_for_game", nextLine());
+        assertEquals("frame " + Arrays.toString(move), nextLine());
+    }
+
+    @Test
+    public void testWriterSendsLines() throws Exception {
+        BufferedWriter out = connection.createWriter();
+        out.write("request_move Wouter\n");
+        out.flush();
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+
+        assertEquals("request_move Wouter", in.readLine());
+    }
+
+    @Test
+    public void testSendFrames() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("done_move Wouter 3\n"));
+        int frames = ClientConnection.MAX_GATHER * 3;
+        for (int i = 0; i < frames; i++) {
+            connection.send(frame.getBytes());
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals("done_move Wouter 3", in.readLine());
+        }
+    }
+
+    @Test
+    public void testMoveTo() throws Exception {
+        EventLoop other = new EventLoop("OtherLoop");
+        other.start();
+        try {
+            connection.moveTo(other);
+            write("ready_for_game\n".getBytes(StandardCharsets.UTF_8));
+
+            assertEquals("ready_for_game", nextLine());
+            assertEquals("OtherLoop", handler.threads.poll(TIMEOUT, TimeUnit.SECONDS));
+            assertTrue(other == connection.getEventLoop());
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        socket.close();
+
+        assertTrue(handler.disconnected.await(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testTooLongLineCloses() throws Exception {
+        byte[] line = new byte[ClientConnection.MAX_LINE_LENGTH + 1];
+        Arrays.fill(line, (byte) 'a');
+        write(line);
+
+        assertTrue(handler.disconnected.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOutboundLimits() throws Exception {
+        // The loop is never started, so nothing is written
+        ClientConnection idle = new ClientConnection(SocketChannel.open(),
+                new EventLoop("IdleLoop"), 16, 40);
+        Frame frame = Frame.encode(out -> out.write("message a b\n"));
+
+        idle.send(frame.getBytes());
+        assertFalse(idle.isCongested());
+        idle.send(frame.getBytes());
+        assertTrue(idle.isCongested());
+        assertFalse(idle.trySend(frame.getBytes(), Lane.CHAT));
+        assertEquals(1, idle.getDropped());
+
+        idle.send(frame.getBytes());
+        idle.send(frame.getBytes());
+        assertEquals(3 * frame.size(), idle.getQueuedBytes());
+        assertEquals(3 * frame.size(), idle.getHighWaterMark());
+        assertEquals(2, idle.getDropped());
+    }
+
+    @Test
+    public void testQueuedBytesAreWritten() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("done_move Wouter 3\n"));
+        connection.send(frame.getBytes());
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+
+        assertEquals("done_move Wouter 3", in.readLine());
+        // The bytes are counted as written after the write has returned
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while (connection.getQueuedBytes() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, connection.getQueuedBytes());
+        assertEquals(frame.size(), connection.getHighWaterMark());
+    }
+
+    private ClientConnection idleConnection(SocketChannel[] client) throws Exception {
+        client[0] = SocketChannel.open(serverChannel.getLocalAddress());
+        return new ClientConnection(serverChannel.accept(), new EventLoop("IdleLoop"));
+    }
+
+    private static Frame line(String text) throws Exception {
+        return Frame.encode(out -> out.write(text + "\n"));
+    }
+
+    @Test
+    public void testLanesInPriorityOrder() throws Exception {
+        SocketChannel[] client = new SocketChannel[1];
+        ClientConnection idle = idleConnection(client);
+        try {
+            idle.send(line("message Luce hoi").getBytes(), Lane.CHAT);
+            idle.send(line("state_change Luce 1").getBytes(), Lane.LOBBY);
+            idle.send(line("done_move Wouter 3").getBytes(), Lane.GAME);
+            idle.flushOutbound();
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    client[0].socket().getInputStream(), StandardCharsets.UTF_8));
+
+            assertEquals("done_move Wouter 3", in.readLine());
+            assertEquals("state_change Luce 1", in.readLine());
+            assertEquals("message Luce hoi", in.readLine());
+        } finally {
+            client[0].close();
+        }
+    }
+
+    @Test
+    public void testLowerLaneDoesNotStarve() throws Exception {
+        SocketChannel[] client = new SocketChannel[1];
+        ClientConnection idle = idleConnection(client);
+        try {
+            idle.send(line("message Luce hoi").getBytes(), Lane.CHAT);
+            for (int i = 0; i < ClientConnection.MAX_GATHER * 2; i++) {
+                idle.send(line("done_move Wouter " + i).getBytes(), Lane.GAME);
+            }
+            idle.flushOutbound();
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    client[0].socket().getInputStream(), StandardCharsets.UTF_8));
+
+            for (int i = 0; i < ClientConnection.MAX_GATHER - ClientConnection.LANE_SHARE; i++) {
+                assertEquals("done_move Wouter " + i, in.readLine());
+            }
+            assertEquals("message Luce hoi", in.readLine());
+        } finally {
+            client[0].close();
+        }
+    }
+
+    /**
+     * Handler which records the lines it receives.
+     */
+    private static class RecordingHandler extends ClientHandler {
+
+        final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+        final CountDownLatch disconnected = new CountDownLatch(1);
+
+        RecordingHandler(ClientConnection connection) {
+            super(connection, new FourCharmServer(0, 1));
+        }
+
+        @Override
+        public void processLine(byte[] line, int offset, int length) {
+            threads.add(Thread.currentThread().getName());
+            lines.add(new String(line, offset, length, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void processFrame(byte[] frame, int offset, int size) {
+            lines.add("frame " + Arrays.toString(Arrays.copyOfRange(frame, offset,
+                    offset + size)));
+        }
+
+        @Override
+        public void disconnected() {
+            disconnected.countDown();
+        }
+    }
+}
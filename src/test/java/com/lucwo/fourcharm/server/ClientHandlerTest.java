@@ -4,14 +4,19 @@
 
 package com.lucwo.fourcharm.server;
 
+import com.lucwo.fourcharm.util.BinaryProtocol;
+import com.lucwo.fourcharm.util.ExtensionFactory;
 import mockit.Expectations;
 import mockit.Injectable;
 import mockit.Mocked;
+import mockit.Verifications;
+import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreServer;
+import nl.woutertimmermans.connect4.protocol.parameters.LobbyState;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -19,7 +24,7 @@ import static org.junit.Assert.assertNotNull;
 public class ClientHandlerTest {
 
     @Mocked
-    Socket socket;
+    ClientConnection connection;
     private ClientHandler clientHandler;
     @Injectable
     private ClientGroup group;
@@ -28,7 +33,7 @@ public class ClientHandlerTest {
 
     @Before
     public void setup() throws Exception {
-        clientHandler = new ClientHandler(socket, server);
+        clientHandler = new ClientHandler(connection, server);
         clientHandler.setClientGroup(group);
         clientHandler.init();
     }
@@ -92,15 +97,132 @@ public class ClientHandlerTest {
     }
 
     @Test
-    public void testHandleClient(@Mocked BufferedReader anyReader) throws Exception {
+    public void testProcessLine() throws Exception {
+
+        new Expectations() {{
+            group.ready(clientHandler);
+        }};
+
+        clientHandler.processLine("ready_for_game");
+
+    }
+
+    @Test
+    public void testProcessLineMove() throws Exception {
+
+        new Expectations() {{
+            group.doMove(clientHandler, 4);
+        }};
+
+        clientHandler.processLine("do_move 4");
+
+    }
+
+    @Test
+    public void testProcessLineInvalidMove() throws Exception {
+
+        clientHandler.processLine("do_move 7");
+
+        new Verifications() {{
+            group.doMove(clientHandler, anyInt); times = 0;
+        }};
+
+    }
+
+    @Test
+    public void testProcessFrame() throws Exception {
+
+        new Expectations() {{
+            group.doMove(clientHandler, 3);
+        }};
+
+        clientHandler.registerExtensions(Collections.singleton(ExtensionFactory.binary()));
+        clientHandler.processFrame(BinaryProtocol.doMove(3), 0, BinaryProtocol.HEADER_SIZE + 1);
+
+    }
+
+    @Test
+    public void testProcessFrameWithoutExtension() throws Exception {
+
+        clientHandler.processFrame(BinaryProtocol.doMove(3), 0, BinaryProtocol.HEADER_SIZE + 1);
+
+        new Verifications() {{
+            group.doMove(clientHandler, anyInt); times = 0;
+        }};
+
+    }
+
+    @Test
+    public void testProcessLineJoin(@Mocked CoreServer.Processor<ClientHandler> processor)
+            throws Exception {
+
+        new Expectations() {{
+            processor.process("join Frits 23"); result = true;
+        }};
+
+        clientHandler.processLine("join Frits 23");
+
+    }
+
+    @Test
+    public void testDisconnected() throws Exception {
 
         new Expectations() {{
-            anyReader.readLine(); returns("hallo", "hoi", (String) null);
             group.removeHandler(clientHandler);
+            server.stateChange(clientHandler, LobbyState.OFFLINE);
+        }};
+
+        clientHandler.disconnected();
+
+    }
+
+    @Test
+    public void testMoveTo(@Mocked EventLoop loop) throws Exception {
+
+        new Expectations() {{
+            connection.moveTo(loop);
+        }};
+
+        clientHandler.moveTo(loop);
+
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        new Expectations() {{
+            connection.close();
         }};
 
+        clientHandler.shutdown();
 
-        clientHandler.handleClient();
+    }
+
+    @Test
+    public void testSend() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("request_move Frits\n"));
 
+        clientHandler.send(frame);
+
+        new Verifications() {{
+            connection.send((ByteBuffer) any);
+        }};
+    }
+
+    @Test
+    public void testSendChatWithoutExtension() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("message Frits hoi\n"));
+
+        clientHandler.sendChat(frame);
+        clientHandler.sendLobby(frame);
+
+        new Verifications() {{
+            connection.send((ByteBuffer) any);
+            times = 0;
+            connection.trySend((ByteBuffer) any, (Lane) any);
+            times = 0;
+            connection.send((ByteBuffer) any, (Lane) any);
+            times = 0;
+        }};
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.server.CommandParser.Command;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommandParserTest {
+
+    private static byte[] bytes(String line) {
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Command parse(String line) {
+        byte[] bytes = bytes(line);
+        return CommandParser.parseCommand(bytes, 0, bytes.length);
+    }
+
+    private static int column(String line) {
+        byte[] bytes = bytes(line);
+        int start = CommandParser.argumentStart(bytes, 0, bytes.length);
+        return CommandParser.parseColumn(bytes, start, bytes.length);
+    }
+
+    @Test
+    public void testParseCommand() {
+        assertEquals(Command.JOIN, parse("join Wouter 23"));
+        assertEquals(Command.READY_FOR_GAME, parse("ready_for_game"));
+        assertEquals(Command.DO_MOVE, parse("do_move 4"));
+        assertEquals(Command.ERROR, parse("error 8 Argument 7 is not valid"));
+        assertEquals(Command.CHAT_GLOBAL, parse("chat_global hoi"));
+        assertEquals(Command.CHAT_LOCAL, parse("chat_local hoi"));
+    }
+
+    @Test
+    public void testParseUnknownCommand() {
+        assertNull(parse(""));
+        assertNull(parse("ready"));
+        assertNull(parse("ready_for_games"));
+        assertNull(parse("DO_MOVE 4"));
+    }
+
+    @Test
+    public void testParseCommandWithOffset() {
+        byte[] bytes = bytes("xxdo_move 3\r\n");
+        assertEquals(Command.DO_MOVE, CommandParser.parseCommand(bytes, 2, 9));
+        assertEquals(3, CommandParser.parseColumn(bytes,
+                CommandParser.argumentStart(bytes, 2, 9), 11));
+    }
+
+    @Test
+    public void testParseColumn() {
+        assertEquals(0, column("do_move 0"));
+        assertEquals(6, column("do_move 6"));
+        assertEquals(6, column("do_move 06"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move 7"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move -1"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move a"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move 3 4"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move"));
+        assertEquals(CommandParser.INVALID_COLUMN, column("do_move "));
+    }
+
+    @Test
+    public void testIsChat() {
+        assertTrue(Command.CHAT_GLOBAL.isChat());
+        assertTrue(Command.CHAT_LOCAL.isChat());
+        assertFalse(Command.JOIN.isChat());
+        assertFalse(Command.DO_MOVE.isChat());
+    }
+}
@@ -4,15 +4,24 @@
 
 package com.lucwo.fourcharm.server;
 
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class FourCharmServerTest {
@@ -25,7 +34,13 @@ public class FourCharmServerTest {
     @Mocked
     private GameGroup game;
     @Mocked
-    private ServerSocket socket;
+    private ServerSocketChannel socket;
+    @Mocked
+    private EventLoop eventLoop;
+    @Mocked
+    private ClientHandler client;
+    @Mocked
+    private ClientHandler other;
 
     @Before
     public void setUp() throws Exception {
@@ -41,48 +56,57 @@ public class FourCharmServerTest {
     }
 
     @Test
-    public void testHasClientWithNameGame() throws Exception {
-
-        new Expectations() {{
-            game.clientNameExists("aapje");
-            result = true;
-        }};
+    public void testHasClientWithName() throws Exception {
 
+        assertFalse(server.hasClientWithName("aapje"));
+        assertTrue(server.reserveName("aapje", client));
         assertTrue(server.hasClientWithName("aapje"));
 
     }
 
     @Test
-    public void testHasClientWithNameLobby() throws Exception {
+    public void testReserveNameInUse() throws Exception {
+
+        assertTrue(server.reserveName("aapje", client));
+        assertTrue(server.reserveName("aapje", client));
+        assertFalse(server.reserveName("aapje", other));
+
+    }
+
+    @Test
+    public void testReleaseName() throws Exception {
 
         new Expectations() {{
-            lobby.clientNameExists("aapje");
-            result = true;
+            client.getName();
+            result = "aapje";
         }};
 
-        assertTrue(server.hasClientWithName("aapje"));
+        server.reserveName("aapje", client);
+        server.releaseName(client);
+        assertFalse(server.hasClientWithName("aapje"));
     }
 
     @Test
-    public void testOpenSocket(@Mocked ServerSocket anySocket) throws Exception {
+    public void testOpenSocket() throws Exception {
 
         new Expectations() {{
-            new ServerSocket(0, anyInt, null);
+            ServerSocketChannel.open(); result = socket;
+            socket.bind((SocketAddress) any, anyInt);
         }};
 
         server.openSocket();
     }
 
     @Test
-    public void testStartServer(@Mocked ClientHandler anyClient) throws Exception {
-
-        final Socket sock = new Socket();
+    public void testStartServer(@Mocked ClientHandler anyClient,
+                                @Mocked ClientConnection anyConnection,
+                                @Mocked SocketChannel channel) throws Exception {
 
         new Expectations() {{
 
-            ServerSocket socket1 = new ServerSocket(0, anyInt, null);
-            socket1.accept();
-            result = sock;
+            ServerSocketChannel.open(); result = socket;
+            socket.accept();
+            result = channel;
             //preLobby.removeHandler(null);
             //anyClient.getClientGroup(); result = preLobby;
 
@@ -98,6 +122,80 @@ public class FourCharmServerTest {
     }
 
 
+    @Test
+    public void testStartGameRequeuesRemainingClient() throws Exception {
+
+        new Expectations() {{
+            eventLoop.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                void execute(Runnable task) {
+                    task.run();
+                }
+            };
+            client.getClientGroup(); result = server.getLobby();
+            other.getClientGroup(); result = null;
+        }};
+
+        server.startGame(client, other);
+        assertTrue(server.getMatchmaker().isWaiting(client));
+        assertFalse(server.getMatchmaker().isWaiting(other));
+    }
+
+    @Test
+    public void testResumeGame() throws Exception {
+
+        Path directory = Files.createTempDirectory("journal");
+        GameJournal previous = new GameJournal();
+        previous.open(directory);
+        previous.moveMade(previous.gameStarted("Wouter", "Luce"), 0, 3);
+        previous.close();
+
+        new Expectations() {{
+            ServerSocketChannel.open(); result = socket;
+            eventLoop.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                void execute(Runnable task) {
+                    task.run();
+                }
+            };
+            client.getName(); result = "Luce";
+            other.getName(); result = "Wouter";
+            client.getClientGroup(); result = server.getLobby();
+            other.getClientGroup(); result = server.getLobby();
+        }};
+
+        System.setProperty(FourCharmServer.JOURNAL_PROPERTY, directory.toString());
+        try {
+            server.openSocket();
+            Matchmaker matchmaker = server.getMatchmaker();
+            matchmaker.stop();
+
+            // Luce waits for Wouter instead of being paired with anyone else
+            server.waitForGame(client);
+            matchmaker.match();
+            assertTrue(matchmaker.isWaiting(client));
+
+            server.waitForGame(other);
+            matchmaker.match();
+            assertFalse(matchmaker.isWaiting(client));
+            assertFalse(matchmaker.isWaiting(other));
+            assertNull(server.getJournal().getRecoveredGame("Luce"));
+
+            new Verifications() {{
+                new GameGroup(server, other, client, Collections.singletonList(3));
+            }};
+        } finally {
+            System.clearProperty(FourCharmServer.JOURNAL_PROPERTY);
+            server.stop();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
     @Test
     public void testGetLobby() throws Exception {
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameTest {
+
+    @Test
+    public void testEncode() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("done_move Wouter 3\n"));
+
+        assertEquals("done_move Wouter 3\n", frame.toString());
+        assertEquals(19, frame.size());
+    }
+
+    @Test
+    public void testEncodeUtf8() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("message Luce h\u00e9\n"));
+
+        assertEquals(17, frame.size());
+    }
+
+    @Test
+    public void testGetBytesIsIndependent() throws Exception {
+        Frame frame = Frame.encode(out -> out.write("request_move Luce\n"));
+        ByteBuffer first = frame.getBytes();
+        first.get(new byte[5]);
+        ByteBuffer second = frame.getBytes();
+
+        assertTrue(second.isReadOnly());
+        assertEquals(frame.size(), second.remaining());
+        assertEquals(frame.size() - 5, first.remaining());
+    }
+
+    @Test
+    public void testWithBinary() throws Exception {
+        Frame text = Frame.encode(out -> out.write("request_move Luce\n"));
+        Frame frame = text.withBinary(new byte[]{4, 0, 4, 0, 0, 0, 1});
+
+        assertFalse(text.hasBinary());
+        assertTrue(frame.hasBinary());
+        assertEquals(frame.size(), frame.getBytes(false).remaining());
+        assertEquals(7, frame.getBytes(true).remaining());
+        assertEquals(text.size(), text.getBytes(true).remaining());
+        assertEquals("request_move Luce\n", frame.toString());
+    }
+
+    @Test
+    public void testBinaryOnly() throws Exception {
+        Frame frame = Frame.binaryOnly(new byte[]{4, 0, 4, 0, 0, 0, 1});
+
+        assertTrue(frame.hasBinary());
+        assertEquals(0, frame.size());
+        assertEquals(7, frame.getBytes(true).remaining());
+    }
+}
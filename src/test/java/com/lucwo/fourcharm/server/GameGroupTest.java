@@ -7,13 +7,17 @@ package com.lucwo.fourcharm.server;
 import com.lucwo.fourcharm.model.Game;
 import com.lucwo.fourcharm.model.player.ASyncPlayer;
 import com.lucwo.fourcharm.model.player.Mark;
+import com.lucwo.fourcharm.model.player.Player;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidCommandError;
 import nl.woutertimmermans.connect4.protocol.exceptions.InvalidMoveError;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class GameGroupTest {
 
 
@@ -52,18 +56,28 @@ public class GameGroupTest {
     public void testDoMove() throws Exception {
 
         new Expectations() {{
-            game.getBoard().columnHasFreeSpace(5);
-            result = true;
             game.getCurrent();
             result = new ASyncPlayer("Wouter", Mark.P1);
+            game.isValidMove(5);
+            result = true;
         }};
 
         gameGroup.doMove(c1, 5);
 
+        new Verifications() {{
+            game.makeMove((Player) any, 5);
+        }};
+
     }
 
     @Test(expected = InvalidMoveError.class)
     public void testDoMoveInvalidMove() throws Exception {
+
+        new Expectations() {{
+            game.getCurrent();
+            result = new ASyncPlayer("Wouter", Mark.P1);
+        }};
+
         gameGroup.doMove(c1, 8);
     }
 
@@ -71,8 +85,6 @@ public class GameGroupTest {
     public void testDoMoveWrongPlayer() throws Exception {
 
         new Expectations() {{
-            game.getBoard().columnHasFreeSpace(5);
-            result = true;
             game.getCurrent();
             result = new ASyncPlayer("Frits", Mark.P1);
         }};
@@ -95,6 +107,28 @@ public class GameGroupTest {
 
     }
 
+    @Test
+    public void testStartGame() throws Exception {
+
+        gameGroup.startGame();
+
+        new Verifications() {{
+            game.start();
+        }};
+    }
+
+    @Test
+    public void testResumeGame() throws Exception {
+
+        new GameGroup(server, c1, c2, Arrays.asList(3, 4));
+
+        new Verifications() {{
+            game.makeMove((Player) any, 3);
+            game.makeMove((Player) any, 4);
+            server.getJournal().moveMade(anyInt, anyInt, 4);
+        }};
+    }
+
     @Test
     public void testUpdate() throws Exception {
 
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GameJournalTest {
+
+    private Path directory;
+    private GameJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("journal");
+        journal = new GameJournal();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private List<GameJournal.RecoveredGame> reopen() throws Exception {
+        journal.close();
+        journal = new GameJournal();
+        return journal.open(directory);
+    }
+
+    @Test
+    public void testRecoverGameInProgress() throws Exception {
+        assertTrue(journal.open(directory).isEmpty());
+        int playing = journal.gameStarted("Wouter", "Luce");
+        journal.moveMade(playing, 0, 3);
+        int ended = journal.gameStarted("Frits", "Henk");
+        journal.moveMade(playing, 1, 4);
+        journal.moveMade(ended, 0, 0);
+        journal.gameEnded(ended);
+        journal.moveMade(playing, 2, 3);
+
+        List<GameJournal.RecoveredGame> recovered = reopen();
+
+        assertEquals(1, recovered.size());
+        GameJournal.RecoveredGame game = recovered.get(0);
+        assertEquals(playing, game.getId());
+        assertEquals("Wouter", game.getPlayer1());
+        assertEquals("Wouter", game.getOpponent("Luce"));
+        assertEquals(Arrays.asList(3, 4, 3), game.getMoves());
+        assertTrue(journal.gameStarted("Frits", "Henk") > ended);
+    }
+
+    @Test
+    public void testFinishedGameIsNotRecovered() throws Exception {
+        journal.open(directory);
+        int game = journal.gameStarted("Wouter", "Luce");
+        int[] moves = {0, 1, 0, 1, 0, 1, 0};
+        for (int ply = 0; ply < moves.length; ply++) {
+            journal.moveMade(game, ply, moves[ply]);
+        }
+
+        assertTrue(reopen().isEmpty());
+    }
+
+    @Test
+    public void testDamagedGameIsNotRecovered() throws Exception {
+        journal.open(directory);
+        int game = journal.gameStarted("Wouter", "Luce");
+        journal.moveMade(game, 0, 3);
+        journal.moveMade(game, 2, 3);
+
+        assertTrue(reopen().isEmpty());
+    }
+
+    @Test
+    public void testResumeGame() throws Exception {
+        journal.open(directory);
+        journal.gameStarted("Wouter", "Luce");
+        GameJournal.RecoveredGame game = reopen().get(0);
+
+        assertSame(game, journal.getRecoveredGame("Luce"));
+        assertTrue(journal.resumeGame(game));
+        assertFalse(journal.resumeGame(game));
+        assertNull(journal.getRecoveredGame("Wouter"));
+        assertTrue(reopen().isEmpty());
+    }
+
+    @Test
+    public void testUnresumedGamesExpire() throws Exception {
+        journal = new GameJournal(64, 0);
+        journal.open(directory);
+        journal.gameStarted("Wouter", "Luce");
+        journal.close();
+        journal = new GameJournal(64, 0);
+        assertEquals(1, journal.open(directory).size());
+
+        journal.commit();
+
+        assertNull(journal.getRecoveredGame("Wouter"));
+        assertEquals(1, journal.getSegmentCount());
+        assertTrue(reopen().isEmpty());
+    }
+
+    @Test
+    public void testSegmentsRollAndAreDeleted() throws Exception {
+        journal = new GameJournal(64);
+        journal.open(directory);
+        int playing = journal.gameStarted("Wouter", "Luce");
+        for (int i = 0; i < 10; i++) {
+            int game = journal.gameStarted("Frits", "Henk");
+            journal.moveMade(game, 0, 1);
+            journal.gameEnded(game);
+        }
+        journal.moveMade(playing, 0, 5);
+        assertTrue(journal.getSegmentCount() > 2);
+
+        journal.gameEnded(playing);
+        journal.commit();
+
+        assertEquals(1, journal.getSegmentCount());
+    }
+
+    @Test
+    public void testRecordsSpanningSegments() throws Exception {
+        journal = new GameJournal(64);
+        journal.open(directory);
+        int game = journal.gameStarted("Wouter", "Luce");
+        for (int ply = 0; ply < 6; ply++) {
+            journal.moveMade(game, ply, ply);
+        }
+        journal.close();
+        journal = new GameJournal(64);
+
+        List<GameJournal.RecoveredGame> recovered = journal.open(directory);
+        assertEquals(1, recovered.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), recovered.get(0).getMoves());
+    }
+
+    @Test
+    public void testClosedJournalRecordsNothing() throws Exception {
+        int game = journal.gameStarted("Wouter", "Luce");
+        journal.moveMade(game, 0, 3);
+
+        assertFalse(journal.isOpen());
+        assertTrue(journal.open(directory).isEmpty());
+        assertTrue(journal.isOpen());
+    }
+}
@@ -10,8 +10,6 @@ import nl.woutertimmermans.connect4.protocol.exceptions.InvalidCommandError;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.net.Socket;
-
 public class LobbyGroupTest {
 
     ClientGroup lobbyGroup;
@@ -21,15 +19,16 @@ public class LobbyGroupTest {
     ClientHandler clientje1;
     @Mocked
     ClientHandler clientje2;
-    Socket sock;
+    @Mocked
+    ClientConnection connection;
+    @Mocked
+    Matchmaker matchmaker;
 
     @Before
     public void setUp() throws Exception {
-        sock = new Socket();
         lobbyGroup = new LobbyGroup(theServer);
-        clientje1 = new ClientHandler(sock, theServer);
-        clientje2 = new ClientHandler(sock, theServer);
-        lobbyGroup.ready(clientje2);
+        clientje1 = new ClientHandler(connection, theServer);
+        clientje2 = new ClientHandler(connection, theServer);
     }
 
     @Test(expected = InvalidCommandError.class)
@@ -43,10 +42,14 @@ public class LobbyGroupTest {
     }
 
     @Test
-    public void testReady(@Mocked GameGroup anyGameGroup) throws Exception {
+    public void testReady() throws Exception {
         new Expectations() {
             {
-                new GameGroup(theServer, clientje2, clientje1);// expect constructor
+                theServer.getMatchmaker();
+                result = matchmaker;
+                matchmaker.isWaiting(clientje1);
+                result = false;
+                theServer.waitForGame(clientje1);
             }
         };
         lobbyGroup.ready(clientje1);
@@ -54,6 +57,26 @@ public class LobbyGroupTest {
 
     @Test(expected = InvalidCommandError.class)
     public void testSameNameReady() throws Exception {
+        new Expectations() {
+            {
+                theServer.getMatchmaker();
+                result = matchmaker;
+                matchmaker.isWaiting(clientje2);
+                result = true;
+            }
+        };
         lobbyGroup.ready(clientje2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRemoveWaiting() throws Exception {
+        new Expectations() {
+            {
+                theServer.getMatchmaker();
+                result = matchmaker;
+                matchmaker.remove(clientje2);
+            }
+        };
+        lobbyGroup.removeHandler(clientje2);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.util.BinaryProtocol;
+import com.lucwo.fourcharm.util.ExtensionFactory;
+import nl.woutertimmermans.connect4.protocol.parameters.LobbyState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LobbyStatesTest {
+
+    private EventLoop loop;
+    private BlockingQueue<Frame> broadcasts;
+    private LobbyStates states;
+    private RecordingHandler wouter;
+    private RecordingHandler luce;
+
+    @Before
+    public void setUp() throws Exception {
+        loop = new EventLoop("TestLoop");
+        broadcasts = new LinkedBlockingQueue<>();
+        states = new LobbyStates(broadcasts::add);
+        wouter = new RecordingHandler(loop, "Wouter");
+        luce = new RecordingHandler(loop, "Luce");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        states.stop();
+    }
+
+    private static int lines(Frame frame) {
+        return frame.toString().split("\n", -1).length - 1;
+    }
+
+    @Test
+    public void testChangesAreBatched() throws Exception {
+        states.stateChange(wouter, LobbyState.LOBBY);
+        states.stateChange(wouter, LobbyState.LOBBY_READY);
+        states.stateChange(luce, LobbyState.LOBBY);
+        assertTrue(broadcasts.isEmpty());
+
+        states.flush();
+
+        Frame delta = broadcasts.poll();
+        assertNotNull(delta);
+        assertEquals(2, lines(delta));
+        assertTrue(broadcasts.isEmpty());
+        assertEquals(LobbyState.LOBBY_READY, states.getState(wouter));
+        assertEquals(3, states.getVersion());
+    }
+
+    @Test
+    public void testFlushWithoutChanges() throws Exception {
+        states.flush();
+
+        assertTrue(broadcasts.isEmpty());
+    }
+
+    @Test
+    public void testOfflineRemovesState() throws Exception {
+        states.stateChange(wouter, LobbyState.LOBBY);
+        states.stateChange(wouter, LobbyState.OFFLINE);
+        states.flush();
+
+        assertEquals(LobbyState.OFFLINE, states.getState(wouter));
+        assertEquals(1, lines(broadcasts.poll()));
+
+        states.sendSnapshot(luce);
+        assertTrue(luce.frames.isEmpty());
+    }
+
+    @Test
+    public void testSnapshotIsShared() throws Exception {
+        states.stateChange(wouter, LobbyState.LOBBY);
+        states.stateChange(luce, LobbyState.GAME);
+        states.flush();
+
+        RecordingHandler frits = new RecordingHandler(loop, "Frits");
+        states.sendSnapshot(frits);
+        states.sendSnapshot(wouter);
+
+        assertEquals(1, frits.frames.size());
+        assertEquals(2, lines(frits.frames.get(0)));
+        assertSame(frits.frames.get(0), wouter.frames.get(0));
+    }
+
+    @Test
+    public void testCatchUp() throws Exception {
+        states.stateChange(wouter, LobbyState.LOBBY);
+        states.stateChange(luce, LobbyState.LOBBY);
+        states.flush();
+        Set<ClientHandler> known = states.getKnownClients();
+        states.stateChange(wouter, LobbyState.OFFLINE);
+        states.stateChange(luce, LobbyState.GAME);
+        states.flush();
+
+        assertTrue(states.getKnownClients().contains(wouter));
+        Frame catchUp = states.catchUp(known);
+        assertEquals(2, lines(catchUp));
+        assertTrue(catchUp.toString().contains("Wouter " + LobbyState.OFFLINE.ordinal()));
+        assertTrue(catchUp.toString().contains("Luce " + LobbyState.GAME.ordinal()));
+    }
+
+    @Test
+    public void testBinaryAnnouncesNewClients() throws Exception {
+        states.stateChange(wouter, LobbyState.LOBBY);
+        states.flush();
+        states.stateChange(wouter, LobbyState.GAME);
+        states.stateChange(luce, LobbyState.LOBBY);
+        states.flush();
+
+        byte[] first = binary(broadcasts.poll());
+        byte[] second = binary(broadcasts.poll());
+        // A name and a state
+        assertEquals(BinaryProtocol.PLAYER, first[0]);
+        assertEquals(BinaryProtocol.HEADER_SIZE * 2 + 4 + "Wouter".length() + 5, first.length);
+        // Two states and the name of the new client only
+        assertEquals(BinaryProtocol.HEADER_SIZE * 3 + 4 + "Luce".length() + 5 * 2,
+                second.length);
+
+        states.sendSnapshot(wouter);
+        byte[] snapshot = binary(wouter.frames.get(0));
+        assertEquals(BinaryProtocol.HEADER_SIZE * 4 + 4 * 2 + "WouterLuce".length() + 5 * 2,
+                snapshot.length);
+    }
+
+    private static byte[] binary(Frame frame) {
+        ByteBuffer bytes = frame.getBytes(true);
+        byte[] result = new byte[bytes.remaining()];
+        bytes.get(result);
+        return result;
+    }
+
+    @Test
+    public void testSnapshotOrderedWithDeltas() throws Exception {
+        FourCharmServer server = new FourCharmServer(0, 1);
+        LobbyStates serverStates = server.getLobbyStates();
+        RecordingConnection connection = new RecordingConnection(loop);
+        ClientHandler frits = new ClientHandler(connection, server);
+        frits.init();
+        frits.registerExtensions(Collections.singleton(ExtensionFactory.lobby()));
+        Frame delta = Frame.encode(out -> out.write("state_change Luce 1\n"));
+        serverStates.stateChange(wouter, LobbyState.LOBBY);
+        serverStates.flush();
+        serverStates.stateChange(luce, LobbyState.LOBBY);
+        serverStates.flush();
+
+        // The delta reaches the client before its snapshot, it gets the snapshot instead
+        frits.sendLobby(delta);
+        serverStates.sendSnapshot(frits);
+        assertEquals(1, connection.sent.size());
+        assertEquals(2, connection.sent.get(0).split("\n").length);
+
+        serverStates.stateChange(luce, LobbyState.GAME);
+        serverStates.flush();
+        frits.sendLobby(delta);
+        frits.sendLobby(delta);
+        serverStates.sendSnapshot(frits);
+        assertEquals(2, connection.sent.size());
+        assertEquals(delta.toString(), connection.sent.get(1));
+    }
+
+    @Test
+    public void testStart() throws Exception {
+        states.start();
+        states.stateChange(wouter, LobbyState.LOBBY);
+
+        assertNotNull(broadcasts.poll(LobbyStates.FLUSH_INTERVAL * 20, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Handler which records the lobby frames it is sent.
+     */
+    private static class RecordingHandler extends ClientHandler {
+
+        final List<Frame> frames = new ArrayList<>();
+
+        RecordingHandler(EventLoop loop, String name) throws Exception {
+            super(new ClientConnection(SocketChannel.open(), loop), new FourCharmServer(0, 1));
+            setName(name);
+        }
+
+        @Override
+        public void sendLobby(Frame frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void sendLobbySnapshot(Frame snapshot, long batch) {
+            if (snapshot.size() > 0) {
+                frames.add(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Connection which records the lobby frames it is asked to send.
+     */
+    private static class RecordingConnection extends ClientConnection {
+
+        final List<String> sent = new ArrayList<>();
+
+        RecordingConnection(EventLoop loop) throws Exception {
+            super(SocketChannel.open(), loop);
+        }
+
+        @Override
+        public void send(ByteBuffer bytes, Lane lane) {
+            sent.add(StandardCharsets.UTF_8.decode(bytes).toString());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import com.lucwo.fourcharm.util.ExtensionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MatchmakerTest {
+
+    private Matchmaker matchmaker;
+    private List<ClientHandler[]> games;
+    private EventLoop loop;
+    private FourCharmServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        games = new ArrayList<>();
+        matchmaker = new Matchmaker((client1, client2) ->
+                games.add(new ClientHandler[]{client1, client2}));
+        loop = new EventLoop("TestLoop");
+        server = new FourCharmServer(0, 1);
+    }
+
+    private ClientHandler client(boolean chat) throws Exception {
+        ClientHandler client = new ClientHandler(
+                new ClientConnection(SocketChannel.open(), loop), server);
+        client.init();
+        if (chat) {
+            client.registerExtensions(Collections.singleton(ExtensionFactory.chat()));
+        }
+        return client;
+    }
+
+    private void assertGame(int index, ClientHandler client1, ClientHandler client2) {
+        assertSame(client1, games.get(index)[0]);
+        assertSame(client2, games.get(index)[1]);
+    }
+
+    @Test
+    public void testPairsInOrder() throws Exception {
+        ClientHandler wouter = client(false);
+        ClientHandler luce = client(false);
+        ClientHandler aapje = client(false);
+        matchmaker.enqueue(wouter);
+        matchmaker.enqueue(luce);
+        matchmaker.enqueue(aapje);
+
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertGame(0, wouter, luce);
+        assertTrue(matchmaker.isWaiting(aapje));
+        assertEquals(1, matchmaker.getQueueDepth());
+    }
+
+    @Test
+    public void testEnqueueTwice() throws Exception {
+        ClientHandler wouter = client(false);
+
+        assertTrue(matchmaker.enqueue(wouter));
+        assertFalse(matchmaker.enqueue(wouter));
+        matchmaker.match();
+
+        assertTrue(games.isEmpty());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        ClientHandler wouter = client(false);
+        ClientHandler luce = client(false);
+        ClientHandler aapje = client(false);
+        matchmaker.enqueue(wouter);
+        matchmaker.enqueue(luce);
+        matchmaker.enqueue(aapje);
+
+        assertTrue(matchmaker.remove(luce));
+        assertFalse(matchmaker.remove(luce));
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertGame(0, wouter, aapje);
+        assertEquals(0, matchmaker.getQueueDepth());
+    }
+
+    @Test
+    public void testPairedUntilReleased() throws Exception {
+        ClientHandler wouter = client(false);
+        ClientHandler luce = client(false);
+        matchmaker.enqueue(wouter);
+        matchmaker.enqueue(luce);
+        matchmaker.match();
+
+        assertTrue(matchmaker.isWaiting(wouter));
+        assertFalse(matchmaker.enqueue(wouter));
+        assertFalse(matchmaker.remove(wouter));
+        assertEquals(0, matchmaker.getQueueDepth());
+
+        matchmaker.release(wouter);
+        assertFalse(matchmaker.isWaiting(wouter));
+        assertTrue(matchmaker.enqueue(wouter));
+    }
+
+    @Test
+    public void testPartnersWaitForEachOther() throws Exception {
+        ClientHandler wouter = client(false);
+        wouter.setName("Wouter");
+        ClientHandler luce = client(false);
+        luce.setName("Luce");
+        ClientHandler aapje = client(false);
+        matchmaker.enqueue(wouter, "Luce", 1000);
+        matchmaker.enqueue(aapje);
+        matchmaker.match();
+
+        assertTrue(games.isEmpty());
+        assertTrue(matchmaker.isWaiting(wouter));
+
+        matchmaker.enqueue(luce, "Wouter", 1000);
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertGame(0, wouter, luce);
+        assertTrue(matchmaker.isWaiting(aapje));
+    }
+
+    @Test
+    public void testPatienceRunsOut() throws Exception {
+        ClientHandler wouter = client(false);
+        wouter.setName("Wouter");
+        ClientHandler aapje = client(false);
+        ClientHandler luce = client(false);
+        luce.setName("Luce");
+        matchmaker.enqueue(wouter, "Luce", 0);
+        matchmaker.enqueue(aapje);
+        matchmaker.enqueue(luce, "Wouter", 1000);
+        matchmaker.remove(luce);
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertTrue(Arrays.asList(games.get(0)).containsAll(Arrays.asList(wouter, aapje)));
+        assertEquals(0, matchmaker.getQueueDepth());
+    }
+
+    @Test
+    public void testChatClientsPairedFirst() throws Exception {
+        ClientHandler plain1 = client(false);
+        ClientHandler chat1 = client(true);
+        ClientHandler plain2 = client(false);
+        ClientHandler chat2 = client(true);
+        matchmaker.enqueue(plain1);
+        matchmaker.enqueue(chat1);
+        matchmaker.enqueue(plain2);
+        matchmaker.enqueue(chat2);
+
+        matchmaker.match();
+
+        assertEquals(2, games.size());
+        for (ClientHandler[] game : games) {
+            assertEquals(game[0].isChatEnabled(), game[1].isChatEnabled());
+        }
+    }
+
+    @Test
+    public void testLeftoversPaired() throws Exception {
+        ClientHandler plain = client(false);
+        ClientHandler chat = client(true);
+        matchmaker.enqueue(plain);
+        matchmaker.enqueue(chat);
+
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertGame(0, plain, chat);
+    }
+
+    @Test
+    public void testLongestWaitingKeepsTurn() throws Exception {
+        ClientHandler wouter = client(false);
+        ClientHandler luce = client(false);
+        matchmaker.enqueue(wouter);
+        matchmaker.match();
+        matchmaker.enqueue(luce);
+        matchmaker.match();
+
+        assertEquals(1, games.size());
+        assertGame(0, wouter, luce);
+    }
+
+    @Test
+    public void testWaitPercentile() throws Exception {
+        assertEquals(0, matchmaker.getWaitPercentile(50));
+        matchmaker.enqueue(client(false));
+        Thread.sleep(20);
+        matchmaker.enqueue(client(false));
+        matchmaker.match();
+
+        assertTrue(matchmaker.getWaitPercentile(100) >= 20);
+        assertTrue(matchmaker.getWaitPercentile(0) <= matchmaker.getWaitPercentile(100));
+        long micros = matchmaker.getWaitPercentile(100, TimeUnit.MICROSECONDS);
+        assertTrue(micros >= 20000);
+        assertTrue(micros / 1000 == matchmaker.getWaitPercentile(100));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NameRegistryTest {
+
+    private static final int THREADS = 8;
+
+    private NameRegistry registry;
+    private ClientHandler wouter;
+    private ClientHandler luce;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new NameRegistry();
+        FourCharmServer server = new FourCharmServer(0, 1);
+        EventLoop loop = new EventLoop("TestLoop");
+        wouter = new ClientHandler(new ClientConnection(SocketChannel.open(), loop), server);
+        luce = new ClientHandler(new ClientConnection(SocketChannel.open(), loop), server);
+    }
+
+    @Test
+    public void testReserve() {
+        assertFalse(registry.isReserved("Wouter"));
+        assertTrue(registry.reserve("Wouter", wouter));
+        assertTrue(registry.isReserved("Wouter"));
+        assertSame(wouter, registry.getClient("Wouter"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testReserveTaken() {
+        registry.reserve("Wouter", wouter);
+
+        assertTrue(registry.reserve("Wouter", wouter));
+        assertFalse(registry.reserve("Wouter", luce));
+        assertSame(wouter, registry.getClient("Wouter"));
+    }
+
+    @Test
+    public void testRelease() {
+        registry.reserve("Wouter", wouter);
+
+        assertFalse(registry.release("Wouter", luce));
+        assertTrue(registry.isReserved("Wouter"));
+        assertTrue(registry.release("Wouter", wouter));
+        assertFalse(registry.isReserved("Wouter"));
+        assertNull(registry.getClient("Wouter"));
+        assertTrue(registry.reserve("Wouter", luce));
+    }
+
+    @Test
+    public void testConcurrentReserve() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reserved = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            ClientHandler client = i % 2 == 0 ? wouter : luce;
+            Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        if (registry.reserve("Luce", client)) {
+                            reserved.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Only the threads of the client which got the name succeed
+        assertEquals(THREADS / 2, reserved.get());
+    }
+}
@@ -12,8 +12,6 @@ import nl.woutertimmermans.connect4.protocol.fgroup.core.CoreClient;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.net.Socket;
-
 import static org.junit.Assert.assertEquals;
 
 public class PreLobbyGroupTest {
@@ -24,17 +22,17 @@ public class PreLobbyGroupTest {
     @Mocked CoreClient.Client c1Client;
     ClientHandler clientje2;
     ClientGroup lobbyGroup;
-    Socket sock;
+    @Mocked
+    ClientConnection connection;
 
     @Before
     public void setUp() throws Exception {
 
         theServer = new FourCharmServer(8080);
-        sock = new Socket();
         lobbyGroup = new LobbyGroup(theServer);
         preLobbyGroup = new PreLobbyGroup(lobbyGroup, theServer);
-        clientje1 = new ClientHandler(sock, theServer);
-        clientje2 = new ClientHandler(sock, theServer);
+        clientje1 = new ClientHandler(connection, theServer);
+        clientje2 = new ClientHandler(connection, theServer);
         clientje1.init();
         clientje2.init();
     }
@@ -53,8 +51,8 @@ public class PreLobbyGroupTest {
     public void testJoin() throws Exception {
         new Expectations() {
             {
-                theServer.hasClientWithName("Wouter");
-                result = false;
+                theServer.reserveName("Wouter", clientje1);
+                result = true;
             }
         };
         preLobbyGroup.join(clientje1, "Wouter", 23, null);
@@ -65,8 +63,8 @@ public class PreLobbyGroupTest {
     public void testJoinExistingName() throws Exception {
         new Expectations() {
             {
-                theServer.hasClientWithName("Luce");
-                result = true;
+                theServer.reserveName("Luce", clientje2);
+                result = false;
             }
         };
         preLobbyGroup.join(clientje2, "Luce", 23, null);
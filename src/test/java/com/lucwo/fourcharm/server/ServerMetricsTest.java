@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServerMetricsTest {
+
+    private ServerMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new ServerMetrics(new FourCharmServer(0, 1));
+    }
+
+    @Test
+    public void testConnections() {
+        metrics.connectionOpened();
+        metrics.connectionOpened();
+        metrics.connectionClosed();
+
+        assertEquals(1, metrics.getConnections());
+        assertEquals(2, metrics.getTotalConnections());
+    }
+
+    @Test
+    public void testGames() {
+        metrics.gameStarted();
+        metrics.gameStarted();
+        metrics.gameFinished();
+
+        assertEquals(2, metrics.getGamesStarted());
+        assertEquals(1, metrics.getGamesFinished());
+        assertEquals(1, metrics.getActiveGames());
+    }
+
+    @Test
+    public void testLatencies() {
+        metrics.commandProcessed(TimeUnit.MICROSECONDS.toNanos(10));
+        metrics.moveMade(TimeUnit.MICROSECONDS.toNanos(100));
+        metrics.moveMade(TimeUnit.MICROSECONDS.toNanos(100));
+        metrics.broadcastSent(TimeUnit.MICROSECONDS.toNanos(20));
+
+        assertEquals(1, metrics.getCommands());
+        assertEquals(10, metrics.getCommandP99());
+        assertEquals(2, metrics.getMoves());
+        assertEquals(100, metrics.getMoveP50());
+        assertEquals(1, metrics.getBroadcasts());
+        assertEquals(20, metrics.getBroadcastP50());
+    }
+
+    @Test
+    public void testLobby() {
+        metrics.readyCommand();
+        metrics.stateChanged();
+        metrics.stateChanged();
+
+        assertEquals(1, metrics.getReadyCommands());
+        assertEquals(2, metrics.getStateChanges());
+        assertEquals(0, metrics.getMatchQueueDepth());
+        assertEquals(0, metrics.getOutboundHighWaterMark());
+        assertEquals(0, metrics.getDroppedFrames());
+    }
+
+    @Test
+    public void testReport() {
+        metrics.connectionOpened();
+
+        String report = metrics.toString();
+        assertTrue(report.contains("connections: 1 (1 total)"));
+        assertTrue(report.contains("move turnaround"));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryProtocolTest {
+
+    @Test
+    public void testDoneMove() {
+        byte[] frame = BinaryProtocol.doneMove(258, 3);
+
+        assertArrayEquals(new byte[]{BinaryProtocol.DONE_MOVE, 0, 5, 0, 0, 1, 2, 3}, frame);
+        assertEquals(frame.length, BinaryProtocol.frameSize(frame, 0, frame.length));
+        assertTrue(frame.length < "done_move Wouter 3\n".length());
+    }
+
+    @Test
+    public void testPlayer() {
+        byte[] frame = BinaryProtocol.player(7, "Lu\u00e9");
+        ByteBuffer payload = ByteBuffer.wrap(frame, BinaryProtocol.HEADER_SIZE,
+                frame.length - BinaryProtocol.HEADER_SIZE);
+
+        assertEquals(BinaryProtocol.PLAYER, frame[0]);
+        assertEquals(7, payload.getInt());
+        assertEquals("Lu\u00e9", StandardCharsets.UTF_8.decode(payload).toString());
+    }
+
+    @Test
+    public void testFrameSize() {
+        byte[] frame = BinaryProtocol.concat(BinaryProtocol.requestMove(1),
+                BinaryProtocol.doMove(4));
+
+        assertEquals(-1, BinaryProtocol.frameSize(frame, 0, 2));
+        assertEquals(7, BinaryProtocol.frameSize(frame, 0, 3));
+        assertEquals(4, BinaryProtocol.frameSize(frame, 7, 4));
+        assertEquals(4, frame[10]);
+    }
+
+    @Test
+    public void testIsFrameType() {
+        assertTrue(BinaryProtocol.isFrameType(BinaryProtocol.PLAYER));
+        assertTrue(BinaryProtocol.isFrameType(BinaryProtocol.STATE_CHANGE));
+        assertFalse(BinaryProtocol.isFrameType((byte) 'd'));
+        assertFalse(BinaryProtocol.isFrameType((byte) '\n'));
+        assertFalse(BinaryProtocol.isFrameType((byte) '\r'));
+        assertFalse(BinaryProtocol.isFrameType((byte) 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLongPlayerName() {
+        BinaryProtocol.player(1, new String(new char[BinaryProtocol.MAX_PAYLOAD]));
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    private Histogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new Histogram();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testShortLatenciesAreExact() {
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(200));
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(200, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertWithinOnePercent(500_000, histogram.getPercentile(50));
+        assertWithinOnePercent(990_000, histogram.getPercentile(99));
+        assertWithinOnePercent(999_000, histogram.getPercentile(99.9));
+    }
+
+    @Test
+    public void testLongLatency() {
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+
+        assertWithinOnePercent(TimeUnit.HOURS.toMicros(1), histogram.getPercentile(50));
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(actual + " is not close to " + expected,
+                Math.abs(expected - actual) <= expected / 100);
+    }
+}
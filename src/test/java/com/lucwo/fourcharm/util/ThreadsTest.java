@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2015. Luce Sandfort and Wouter Timmermans
+ */
+
+package com.lucwo.fourcharm.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadsTest {
+
+    @After
+    public void tearDown() {
+        Threads.setVirtualThreads(false);
+    }
+
+    @Test
+    public void testNewThread() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread thread = Threads.newThread(ran::countDown, "TestThread");
+
+        assertEquals("TestThread", thread.getName());
+        assertEquals(Thread.State.NEW, thread.getState());
+        thread.start();
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSetVirtualThreads() {
+        assertEquals(VirtualThreads.isSupported(), Threads.setVirtualThreads(true));
+        assertEquals(VirtualThreads.isSupported(), Threads.usesVirtualThreads());
+        assertFalse(Threads.setVirtualThreads(false));
+        assertFalse(Threads.usesVirtualThreads());
+    }
+}